@@ -0,0 +1,105 @@
+package benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+final class BenchmarkData {
+    private static final String RESOURCES_PROPERTY = "benchmarks.resources";
+    private static final String DEFAULT_RESOURCES = "../src/main/resources";
+    private static final String COMPANY_FILE = "data/company.json";
+    private static final String INVOICE_FILE = "data/invoice.json";
+    private static final String NOTIFICATION_FILE = "data/notification.json";
+    private static final String LOGO_FILE = "images/logo.png";
+    private static final String LETTERING_FILE = "images/lettering.png";
+    private static final String[] COUNTRIES = {"DE", "AT", "CH", "NL", "FR"};
+
+    private BenchmarkData() {
+    }
+
+    static Path resources() {
+        return Path.of(System.getProperty(RESOURCES_PROPERTY, DEFAULT_RESOURCES)).toAbsolutePath();
+    }
+
+    static Path companyFile() {
+        return resources().resolve(COMPANY_FILE);
+    }
+
+    static Path notificationFile() {
+        return resources().resolve(NOTIFICATION_FILE);
+    }
+
+    // the shipped invoice.json only holds placeholder paths, so point it at the bundled images and the given directory
+    static Path writeInvoiceConfiguration(Path directory) throws IOException {
+        JSONObject config = new JSONObject(Files.readString(resources().resolve(INVOICE_FILE)));
+        config.put("outputPath", directory.toAbsolutePath() + "/");
+        config.put("logoPath", resources().resolve(LOGO_FILE).toString());
+        config.put("letteringPath", resources().resolve(LETTERING_FILE).toString());
+        config.put("signaturePath", resources().resolve(LOGO_FILE).toString());
+
+        Path file = directory.resolve("invoice.json");
+        Files.writeString(file, config.toString(2), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    // writes a WooCommerce export with the same fields as the plugin output, filled deterministically
+    static Path writeOrders(Path directory, int orderCount, int productCount) throws IOException {
+        JSONArray orders = new JSONArray();
+        for (int i = 0; i < orderCount; i++) {
+            orders.put(order(i, productCount));
+        }
+
+        Path file = directory.resolve("orders-" + orderCount + "x" + productCount + ".json");
+        Files.writeString(file, orders.toString(2), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static JSONObject order(int index, int productCount) {
+        JSONObject order = new JSONObject();
+        order.put("order_number", String.valueOf(10000 + index));
+        order.put("order_status", "Abgeschlossen");
+        order.put("order_date", String.format("2022-%02d-%02d 18:21", index % 12 + 1, index % 28 + 1));
+        order.put("customer_note", "");
+        order.put("billing_first_name", "Firstname" + index);
+        order.put("billing_last_name", "Lastname" + index);
+        order.put("billing_company", "");
+        order.put("billing_address", "Examplestreet " + (index % 200 + 1));
+        order.put("billing_city", "City" + index % 50);
+        order.put("billing_state", "");
+        order.put("billing_postcode", String.valueOf(10000 + index % 90000));
+        order.put("billing_country", COUNTRIES[index % COUNTRIES.length]);
+        order.put("billing_email", "customer" + index + "@example.org");
+        order.put("billing_phone", "+49 170 " + (1000000 + index));
+        order.put("payment_method_title", "PayPal");
+        order.put("order_shipping", "4.90");
+        order.put("order_refund", 0);
+
+        JSONArray products = new JSONArray();
+        for (int line = 0; line < productCount; line++) {
+            JSONObject product = new JSONObject();
+            product.put("sku", String.format("%04d", line));
+            product.put("line_id", line + 1);
+            product.put("name", "PRODUCT " + line);
+            product.put("qty", String.valueOf(line % 5 + 1));
+            product.put("item_price", 1.5 + line % 20);
+            products.put(product);
+        }
+        order.put("products", products);
+        return order;
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) return;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import data.CompanyDataDeserializer;
+import data.InvoiceConfigurationDataDeserializer;
+import data.NotDeserializedYetException;
+import data.WooCommerceDataDeserializer;
+import data.WooCommerceOrderStream;
+import document.InvoiceConfiguration;
+import model.Company;
+import model.Order;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeserializationBenchmark {
+    @Param({"100", "1000"})
+    public int orders;
+
+    @Param({"2", "20"})
+    public int products;
+
+    private Path directory;
+    private String ordersFile;
+    private String companyFile;
+    private String invoiceFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("deserialization-benchmark");
+        ordersFile = BenchmarkData.writeOrders(directory, orders, products).toString();
+        companyFile = BenchmarkData.companyFile().toString();
+        invoiceFile = BenchmarkData.writeInvoiceConfiguration(directory).toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<Order> wooCommerceDeserialize() throws IOException, NotDeserializedYetException {
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer(ordersFile);
+        deserializer.deserialize();
+        return deserializer.getData();
+    }
+
+    @Benchmark
+    public void wooCommerceStream(Blackhole blackhole) throws IOException {
+        try (WooCommerceOrderStream stream = new WooCommerceDataDeserializer(ordersFile).stream()) {
+            while (stream.hasNext()) {
+                blackhole.consume(stream.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public Company companyDeserialize() throws IOException, NotDeserializedYetException {
+        CompanyDataDeserializer deserializer = new CompanyDataDeserializer(companyFile);
+        deserializer.deserialize();
+        return deserializer.getData();
+    }
+
+    @Benchmark
+    public InvoiceConfiguration invoiceConfigurationDeserialize() throws IOException, NotDeserializedYetException {
+        InvoiceConfigurationDataDeserializer deserializer = new InvoiceConfigurationDataDeserializer(invoiceFile);
+        deserializer.deserialize();
+        return deserializer.getData();
+    }
+}
@@ -0,0 +1,93 @@
+package benchmark;
+
+import com.itextpdf.text.DocumentException;
+import data.CompanyDataDeserializer;
+import data.InvoiceConfigurationDataDeserializer;
+import data.NotDeserializedYetException;
+import data.NotificationDataDeserializer;
+import data.WooCommerceDataDeserializer;
+import document.InvoiceGenerator;
+import document.InvoiceTemplate;
+import model.Order;
+import notification.EmailService;
+import notification.PdfAttachment;
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimeBenchmark {
+    @Param({"2", "200"})
+    public int products;
+
+    private Path directory;
+    private EmailService emailService;
+    private Order order;
+    private String id;
+    private byte[] pdf;
+    private OutputStream sink;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, DocumentException, NotDeserializedYetException {
+        directory = Files.createTempDirectory("mime-benchmark");
+
+        NotificationDataDeserializer notification =
+                new NotificationDataDeserializer(BenchmarkData.notificationFile().toString());
+        notification.deserialize();
+        emailService = notification.getData();
+
+        CompanyDataDeserializer company = new CompanyDataDeserializer(BenchmarkData.companyFile().toString());
+        company.deserialize();
+        InvoiceConfigurationDataDeserializer config =
+                new InvoiceConfigurationDataDeserializer(BenchmarkData.writeInvoiceConfiguration(directory).toString());
+        config.deserialize();
+        InvoiceTemplate template = new InvoiceTemplate(config.getData(), company.getData());
+
+        WooCommerceDataDeserializer deserializer =
+                new WooCommerceDataDeserializer(BenchmarkData.writeOrders(directory, 1, products).toString());
+        deserializer.deserialize();
+        order = deserializer.getData().get(0);
+
+        // the attachment is rendered once, only the message assembly is measured
+        InvoiceGenerator generator = new InvoiceGenerator(template, order, LocalDate.now());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        generator.generate(buffer);
+        id = generator.getId();
+        pdf = buffer.toByteArray();
+        sink = OutputStream.nullOutputStream();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        emailService.close();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Message createMessage() throws MessagingException {
+        return emailService.createAttachedMimeMessage("customer@example.org", order.customer().getLastName(), id,
+                new PdfAttachment(id + ".pdf", pdf, pdf.length));
+    }
+
+    // includes the header update and the base64 encoding of the attachment that happen right before sending
+    @Benchmark
+    public Message createAndEncodeMessage() throws MessagingException, IOException {
+        Message message = createMessage();
+        message.saveChanges();
+        message.writeTo(sink);
+        return message;
+    }
+}
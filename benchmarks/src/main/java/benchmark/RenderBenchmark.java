@@ -0,0 +1,82 @@
+package benchmark;
+
+import com.itextpdf.text.DocumentException;
+import data.CompanyDataDeserializer;
+import data.InvoiceConfigurationDataDeserializer;
+import data.NotDeserializedYetException;
+import data.WooCommerceDataDeserializer;
+import document.InvoiceGenerator;
+import document.InvoiceTemplate;
+import model.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+    private static final int ORDER_COUNT = 16;
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    @Param({"2", "20", "200"})
+    public int products;
+
+    private Path directory;
+    private InvoiceTemplate template;
+    private List<Order> orders;
+    private LocalDate performanceDate;
+    private ByteArrayOutputStream buffer;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, DocumentException, NotDeserializedYetException {
+        directory = Files.createTempDirectory("render-benchmark");
+
+        CompanyDataDeserializer company = new CompanyDataDeserializer(BenchmarkData.companyFile().toString());
+        company.deserialize();
+        InvoiceConfigurationDataDeserializer config =
+                new InvoiceConfigurationDataDeserializer(BenchmarkData.writeInvoiceConfiguration(directory).toString());
+        config.deserialize();
+        template = new InvoiceTemplate(config.getData(), company.getData());
+
+        WooCommerceDataDeserializer deserializer =
+                new WooCommerceDataDeserializer(BenchmarkData.writeOrders(directory, ORDER_COUNT, products).toString());
+        deserializer.deserialize();
+        orders = deserializer.getData();
+
+        performanceDate = LocalDate.now();
+        buffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    // one invocation renders one invoice, so throughput and -prof gc read as per invoice
+    @Benchmark
+    public int generate() throws IOException, DocumentException {
+        Order order = orders.get(next++ % orders.size());
+        buffer.reset();
+        new InvoiceGenerator(template, order, performanceDate).generate(buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public int generateWithPerInvoiceTemplate() throws IOException, DocumentException {
+        Order order = orders.get(next++ % orders.size());
+        buffer.reset();
+        new InvoiceGenerator(template.getConfig(), template.getCompany(), order, performanceDate).generate(buffer);
+        return buffer.size();
+    }
+}
@@ -0,0 +1,21 @@
+#!/usr/bin/env bash
+# Records the classes that a run of the invoice generator loads in an application class data sharing archive,
+# which scripts/run.sh maps into every later run instead of loading and verifying the classes again.
+# The training run is a dry run over the given files: it renders the invoices and creates the emails, but neither
+# writes nor sends them. Repeat it after every build, the JVM ignores an archive whose jars have changed.
+#
+# usage: scripts/cds-archive.sh <COMPANY> <ORDERS> <INVOICE> <NOTIFICATION> [OPTIONS]
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="$ROOT/target/invoice-generator.jar"
+ARCHIVE="${CDS_ARCHIVE:-$ROOT/target/invoice-generator.jsa}"
+
+if [ ! -f "$JAR" ]; then
+    echo "$JAR is missing, build it with: mvn -Pfast-start package" >&2
+    exit 1
+fi
+
+rm -f "$ARCHIVE"
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -jar "$JAR" "$@" --dry-run
+echo "Wrote the class data sharing archive $ARCHIVE"
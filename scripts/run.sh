@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+# Runs the invoice generator from the fast-start jar with the class data sharing archive of scripts/cds-archive.sh,
+# or without it if there is none. JAVA_OPTS defaults to compiling with C1 only, which spares a small batch the C2
+# compilations it does not live long enough to profit from; pass JAVA_OPTS= for large exports.
+#
+# usage: scripts/run.sh <COMPANY> <ORDERS> <INVOICE> <NOTIFICATION> [OPTIONS]
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="$ROOT/target/invoice-generator.jar"
+ARCHIVE="${CDS_ARCHIVE:-$ROOT/target/invoice-generator.jsa}"
+
+SHARING=()
+if [ -f "$ARCHIVE" ]; then
+    SHARING=(-XX:SharedArchiveFile="$ARCHIVE")
+fi
+
+JAVA_OPTS="${JAVA_OPTS--XX:TieredStopAtLevel=1}"
+# shellcheck disable=SC2086
+exec java $JAVA_OPTS "${SHARING[@]}" -jar "$JAR" "$@"
@@ -0,0 +1,50 @@
+#!/usr/bin/env bash
+# Measures the wall clock time of whole dry runs of the invoice generator: plain, with the class data sharing archive
+# of scripts/cds-archive.sh and with the archive and the JIT options of scripts/run.sh. Reports the fastest, the
+# median and the slowest of RUNS runs of each (default: 10) after one discarded warm-up run that fills the page cache.
+# Dry runs neither write nor send anything, so the SMTP server adds no noise and the runs can be repeated.
+#
+# usage: [RUNS=N] scripts/startup-bench.sh <COMPANY> <ORDERS> <INVOICE> <NOTIFICATION> [OPTIONS]
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="$ROOT/target/invoice-generator.jar"
+ARCHIVE="${CDS_ARCHIVE:-$ROOT/target/invoice-generator.jsa}"
+RUNS="${RUNS:-10}"
+JAVA_OPTS="${JAVA_OPTS--XX:TieredStopAtLevel=1}"
+
+if [ ! -f "$JAR" ]; then
+    echo "$JAR is missing, build it with: mvn -Pfast-start package" >&2
+    exit 1
+fi
+
+# prints the wall clock milliseconds of every run, one per line
+measure() {
+    java "$@" >/dev/null 2>&1
+    for _ in $(seq "$RUNS"); do
+        local start end
+        start=$(date +%s%N)
+        java "$@" >/dev/null 2>&1
+        end=$(date +%s%N)
+        echo $(((end - start) / 1000000))
+    done
+}
+
+report() {
+    sort -n | awk -v label="$1" '{ times[NR] = $1 }
+        END { printf "%-16s min %5d ms   median %5d ms   max %5d ms   (%d runs)\n",
+              label, times[1], times[int((NR + 1) / 2)], times[NR], NR }'
+}
+
+measure -jar "$JAR" "$@" --dry-run | report "plain"
+if [ -f "$ARCHIVE" ]; then
+    measure -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR" "$@" --dry-run | report "CDS"
+    # shellcheck disable=SC2086
+    measure $JAVA_OPTS -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR" "$@" --dry-run | report "scripts/run.sh"
+    # the classes that a single run took from the archives instead of the jars
+    java -XX:SharedArchiveFile="$ARCHIVE" -Xlog:class+load=info -jar "$JAR" "$@" --dry-run 2>/dev/null \
+        | awk '/source: shared objects file/ { shared++ } /source: (jar|file):/ { loaded++ }
+               END { printf "classes          %d from the archives, %d loaded from the jars\n", shared, loaded }'
+else
+    echo "No archive at $ARCHIVE, create it with scripts/cds-archive.sh to compare"
+fi
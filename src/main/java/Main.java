@@ -1,15 +1,42 @@
+import cli.CommandLineArguments;
+import cli.OptionsHelp;
 import com.itextpdf.text.*;
+import daemon.InboxWatcher;
 import data.*;
-import document.InvoiceGenerator;
-import document.InvoiceConfiguration;
-import model.*;
+import document.PdfBufferPool;
+import ledger.OrderLedger;
+import metrics.MetricRegistry;
+import metrics.MetricsExporter;
+import metrics.MetricsMerger;
+import metrics.MetricsServer;
+import metrics.Stopwatch;
 import notification.EmailService;
+import notification.Outbox;
+import notification.OutboxDispatcher;
+import org.json.JSONException;
+import processing.ExportProcessor;
+import processing.InvoiceArchive;
+import processing.InvoiceBundle;
+import processing.InvoiceProcessor;
+import processing.Shard;
+import processing.Threads;
+import server.InvoiceServer;
+import tenant.ReloadableTenant;
+import tenant.Tenant;
+import tenant.TenantCache;
+import tenant.TenantFiles;
 
 import javax.mail.MessagingException;
 import java.io.*;
-import java.time.LocalDate;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,13 +48,80 @@ public class Main {
 
     private static final String INFO_TEXT_0 = "Invoice Generator by Max Erler (https://www.maxerler.com)";
     private static final String INFO_TEXT_1 = "This is a free tool for semi-automation of invoice generation for small businesses.";
-    private static final String INFO_TEXT_2 = "Command line arguments: <PATH_TO_COMPANY_CONFIG> <PATH_TO_ORDERS_CONFIG> <PATH_TO_INVOICE_CONFIG>";
+    private static final String INFO_TEXT_2 = "Command line arguments: <PATH_TO_COMPANY_CONFIG> <PATH_TO_ORDERS_CONFIG> <PATH_TO_INVOICE_CONFIG> <PATH_TO_NOTIFICATION_CONFIG> [OPTIONS]";
     private static final String INFO_TEXT_3 = "PATH_TO_COMPANY_CONFIG: relative or absolute path to the company configuration file of type .json (e.g. C:/Users/Public/Documents/company.json)";
     private static final String INFO_TEXT_4 = "PATH_TO_ORDERS_CONFIG: relative or absolute path to the orders data file of type .json (e.g. C:/Users/Public/Documents/company.json)";
     private static final String INFO_TEXT_5 = "PATH_TO_INVOICE_CONFIG: relative or absolute path to the invoice configuration file of type .json (e.g. C:/Users/Public/Documents/company.json)";
     private static final String INFO_TEXT_6 = "Example configurations with the required formats can be found in src/main/resources/data";
     private static final String HELP_TEXT = "Pass [h]elp as a command line argument for usage details";
 
+    private static final String OPTION_STREAM = "stream";
+    private static final String OPTION_PIPELINE = "pipeline";
+    private static final String OPTION_RENDER_WORKERS = "render-workers";
+    private static final String OPTION_MAIL_WORKERS = "mail-workers";
+    private static final String OPTION_QUEUE_CAPACITY = "queue-capacity";
+    private static final int DEFAULT_MAIL_WORKERS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final String OPTION_IN_MEMORY = "in-memory";
+    private static final String OPTION_ARCHIVE = "archive";
+    private static final String DEFAULT_ARCHIVE_MODE = "async";
+    private static final int SEQUENTIAL_PDF_BUFFERS = 2;
+    private static final String OPTION_LEDGER = "ledger";
+    private static final String OPTION_METRICS_FILE = "metrics-file";
+    private static final String OPTION_METRICS_FORMAT = "metrics-format";
+    private static final String OPTION_METRICS_PORT = "metrics-port";
+    private static final String DEFAULT_METRICS_FORMAT = "json";
+    private static final String OPTION_OUTBOX = "outbox";
+    private static final String OPTION_OUTBOX_WORKERS = "outbox-workers";
+    private static final String OPTION_OUTBOX_RATE = "outbox-rate";
+    private static final String OPTION_OUTBOX_MAX_ATTEMPTS = "outbox-max-attempts";
+    private static final String OPTION_OUTBOX_DRAIN_TIMEOUT = "outbox-drain-timeout";
+    private static final int DEFAULT_OUTBOX_WORKERS = 2;
+    private static final double DEFAULT_OUTBOX_RATE = 0;
+    private static final int DEFAULT_OUTBOX_MAX_ATTEMPTS = 8;
+    private static final int DEFAULT_OUTBOX_DRAIN_TIMEOUT_SECONDS = 300;
+    private static final String OPTION_WATCH = "watch";
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 60_000;
+    private static final String OPTION_SERVE = "serve";
+    private static final String OPTION_SERVE_CONCURRENCY = "serve-concurrency";
+    private static final int NO_SERVE_PORT = -1;
+    private static final String OPTION_VIRTUAL_THREADS = "virtual-threads";
+    private static final String OPTION_DISK_WRITERS = "disk-writers";
+    private static final String OPTION_SMTP_CONNECTIONS = "smtp-connections";
+    private static final String OPTION_MAX_IN_FLIGHT = "max-in-flight";
+    private static final int DEFAULT_DISK_WRITERS = 4;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 10_000;
+    private static final int NO_METRICS_PORT = -1;
+    private static final String OPTION_BUNDLE = "bundle";
+    private static final String OPTION_SNAPSHOT = "snapshot";
+    private static final String OPTION_SHARD = "shard";
+    private static final String OPTION_SHARD_RANGE = "shard-range";
+    private static final String OPTION_MERGE_METRICS = "merge-metrics";
+    private static final String PATH_LIST_SEPARATOR = ",";
+    private static final String OPTION_CUSTOMER_INDEX = "customer-index";
+    private static final String OPTION_QUARANTINE = "quarantine";
+    private static final String OPTION_NO_VALIDATION = "no-validation";
+    private static final String OPTION_FORCE_RENDER = "force-render";
+    private static final String OPTION_DRY_RUN = "dry-run";
+    private static final String OPTION_TENANTS = "tenants";
+    private static final String OPTION_TENANT_CACHE_SIZE = "tenant-cache-size";
+    private static final int DEFAULT_TENANT_CACHE_SIZE = 8;
+    // the shop of a run without a tenants file
+    private static final String SINGLE_TENANT_NAME = "default";
+    // they are bound to a single configuration or shop
+    private static final List<String> SINGLE_TENANT_OPTIONS = List.of(OPTION_OUTBOX, OPTION_WATCH,
+            OPTION_CUSTOMER_INDEX);
+    // they would record or write something of a run that sends nothing
+    private static final List<String> DRY_RUN_EXCLUDED_OPTIONS = List.of(OPTION_LEDGER, OPTION_OUTBOX,
+            OPTION_CUSTOMER_INDEX, OPTION_BUNDLE, OPTION_WATCH, OPTION_SERVE, OPTION_TENANTS);
+
+    private static final List<String> PORT_OPTIONS = List.of(OPTION_METRICS_PORT, OPTION_SERVE);
+    private static final List<String> POSITIVE_INT_OPTIONS = List.of(OPTION_RENDER_WORKERS, OPTION_MAIL_WORKERS,
+            OPTION_QUEUE_CAPACITY, OPTION_OUTBOX_WORKERS, OPTION_OUTBOX_MAX_ATTEMPTS, OPTION_SERVE_CONCURRENCY,
+            OPTION_DISK_WRITERS, OPTION_SMTP_CONNECTIONS, OPTION_MAX_IN_FLIGHT, OPTION_TENANT_CACHE_SIZE);
+    private static final List<String> NON_NEGATIVE_INT_OPTIONS = List.of(OPTION_OUTBOX_DRAIN_TIMEOUT);
+    private static final int MAX_PORT = 65_535;
+
     private static final String[] helpKeys = new String[]{"help", "h", "info", "hel", "he"};
 
     public static void main(String[] args) {
@@ -42,6 +136,7 @@ public class Main {
             logger.info(INFO_TEXT_4);
             logger.info(INFO_TEXT_5);
             logger.info(INFO_TEXT_6);
+            OptionsHelp.LINES.forEach(logger::info);
             return;
         } else {
             logger.info(HELP_TEXT);
@@ -53,43 +148,416 @@ public class Main {
                 INVOICE_CONFIGURATION_DATA_FILE_PATH,
                 NOTIFICATION_DATA_FILE_PATH};
 
-        if (args.length == 4) {
-            paths = args;
+        CommandLineArguments arguments = new CommandLineArguments(args);
+        // every option is checked before anything is read, written or sent
+        String error = findInvalidOption(arguments);
+        if (error == null) error = findConflictingOptions(arguments);
+        if (error != null) {
+            logger.severe(error);
+            return;
+        }
+        if (arguments.hasOption(OPTION_MERGE_METRICS)) {
+            mergeMetrics(arguments, logger);
+            return;
+        }
+        Shard shard;
+        Map<String, TenantFiles> tenantFiles;
+        try {
+            shard = parseShard(arguments);
+            tenantFiles = parseTenants(arguments);
+        } catch (IOException e) {
+            logger.severe("Could not read the tenants file " + arguments.getString(OPTION_TENANTS, null) + ": " + e);
+            return;
+        } catch (NotDeserializedYetException | IllegalArgumentException | JSONException e) {
+            logger.severe(e.getMessage());
+            return;
+        }
+
+        if (arguments.getPositionalArguments().size() == 4) {
+            paths = arguments.getPositionalArguments().toArray(new String[0]);
             logger.info("Using the command line arguments as file paths: " + Arrays.toString(paths));
-        } else {
+        } else if (!arguments.hasOption(OPTION_TENANTS)) {
             logger.info("Using the default file paths" + Arrays.toString(paths));
         }
 
+        Stopwatch run = new Stopwatch();
+        MetricRegistry.gauge("run_duration_seconds", "Wall clock time of the run", run::getElapsedSeconds);
+        MetricRegistry.gauge("orders_per_second", "Completed orders per second of wall clock time of the run",
+                () -> InvoiceProcessor.COMPLETED.get() / run.getElapsedSeconds());
+
+        int metricsPort = arguments.getInt(OPTION_METRICS_PORT, NO_METRICS_PORT);
         try {
-            CompanyDataDeserializer companyDataDeserializer = new CompanyDataDeserializer(paths[0]);
-            companyDataDeserializer.deserialize();
-            Company company = companyDataDeserializer.getData();
-
-            WooCommerceDataDeserializer wooCommerceDataDeserializer = new WooCommerceDataDeserializer(paths[1]);
-            wooCommerceDataDeserializer.deserialize();
-            List<Order> orders = wooCommerceDataDeserializer.getData();
-
-            InvoiceConfigurationDataDeserializer invoiceConfigurationDataDeserializer = new InvoiceConfigurationDataDeserializer(paths[2]);
-            invoiceConfigurationDataDeserializer.deserialize();
-            InvoiceConfiguration config = invoiceConfigurationDataDeserializer.getData();
-
-            NotificationDataDeserializer notificationDataDeserializer = new NotificationDataDeserializer(paths[3]);
-            notificationDataDeserializer.deserialize();
-            EmailService emailService = notificationDataDeserializer.getData();
-
-            for (Order order : orders) {
-                InvoiceGenerator baseDocument = new InvoiceGenerator(config, company, order, LocalDate.now());
-                baseDocument.generate();
-
-                String email = order.customer().getContact().email();
-                String lastName = order.customer().getLastName();
-                String id = baseDocument.getId();
-                String fileName = baseDocument.getFileName();
-                emailService.sendAttachedMimeMessage(email, lastName, id, fileName);
+            MetricsServer metricsServer = metricsPort == NO_METRICS_PORT ? null : new MetricsServer(metricsPort);
+            try (metricsServer) {
+                if (tenantFiles != null) {
+                    processTenants(tenantFiles, arguments, shard);
+                    return;
+                }
+                try (ReloadableTenant shop = new ReloadableTenant(new TenantFiles(SINGLE_TENANT_NAME, paths[0],
+                        paths[1], paths[2], paths[3]))) {
+                    if (arguments.hasOption(OPTION_DRY_RUN)) {
+                        try (Tenant tenant = shop.lease()) {
+                            tenant.getEmailService().setDryRun(true);
+                        }
+                    }
+                    process(arguments, shop, shard);
+                }
             }
         } catch (IOException | DocumentException | NotDeserializedYetException | MessagingException e) {
             logger.severe(e.getMessage());
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            logger.severe("Interrupted while processing the orders");
+            Thread.currentThread().interrupt();
+        } finally {
+            run.stop();
+            logger.info(String.format("Completed %d orders in %.1fs (%.2f orders/s)", InvoiceProcessor.COMPLETED.get(),
+                    run.getElapsedSeconds(), InvoiceProcessor.COMPLETED.get() / run.getElapsedSeconds()));
+            exportMetrics(arguments, shard, logger);
+        }
+    }
+
+    // the first option that is unknown or has a value that cannot be used, or null if there is none
+    private static String findInvalidOption(CommandLineArguments arguments) {
+        for (Map.Entry<String, String> option : arguments.getOptions().entrySet()) {
+            String name = option.getKey();
+            if (!OptionsHelp.isKnown(name)) return "Unknown option --" + name + ", pass help for the usage.";
+            if (OptionsHelp.takesValue(name) && option.getValue().isEmpty()) return "--" + name + " needs a value.";
+        }
+        try {
+            for (String option : PORT_OPTIONS) {
+                int port = arguments.getInt(option, 0);
+                if (port < 0 || port > MAX_PORT) return "--" + option + " expects a port but got: " + port;
+            }
+            for (String option : POSITIVE_INT_OPTIONS) {
+                if (arguments.getInt(option, 1) < 1) return "--" + option + " must be at least 1.";
+            }
+            for (String option : NON_NEGATIVE_INT_OPTIONS) {
+                if (arguments.getInt(option, 0) < 0) return "--" + option + " must not be negative.";
+            }
+            double rate = arguments.getDouble(OPTION_OUTBOX_RATE, DEFAULT_OUTBOX_RATE);
+            if (!(rate >= 0) || Double.isInfinite(rate)) return "--" + OPTION_OUTBOX_RATE + " must not be negative.";
+            InvoiceArchive.Mode.parse(arguments.getString(OPTION_ARCHIVE, DEFAULT_ARCHIVE_MODE));
+            String bundleFormats = arguments.getString(OPTION_BUNDLE, null);
+            if (bundleFormats != null) InvoiceBundle.Format.parse(bundleFormats);
+            MetricsExporter.Format.parse(arguments.getString(OPTION_METRICS_FORMAT, DEFAULT_METRICS_FORMAT));
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        if (arguments.hasOption(OPTION_VIRTUAL_THREADS) && !Threads.isVirtualThreadsSupported()) {
+            return "--" + OPTION_VIRTUAL_THREADS + " needs Java 21 or later, this is Java " +
+                    Runtime.version().feature();
+        }
+        return null;
+    }
+
+    // the first combination of options that cannot work together, or null if there is none
+    private static String findConflictingOptions(CommandLineArguments arguments) {
+        boolean sharded = arguments.hasOption(OPTION_SHARD) || arguments.hasOption(OPTION_SHARD_RANGE);
+        if (arguments.hasOption(OPTION_SHARD) && arguments.hasOption(OPTION_SHARD_RANGE)) {
+            return "Pass either --" + OPTION_SHARD + " or --" + OPTION_SHARD_RANGE + ".";
+        }
+        // the inbox and the port cannot be split between processes
+        if (sharded && (arguments.hasOption(OPTION_WATCH) || arguments.hasOption(OPTION_SERVE))) {
+            return "Shards cannot be combined with --" + OPTION_WATCH + " or --" + OPTION_SERVE + ".";
+        }
+        if (arguments.hasOption(OPTION_TENANTS)) {
+            for (String option : SINGLE_TENANT_OPTIONS) {
+                if (arguments.hasOption(option)) return "--" + option + " cannot be combined with --" + OPTION_TENANTS;
+            }
+        }
+        if (arguments.hasOption(OPTION_DRY_RUN)) {
+            for (String option : DRY_RUN_EXCLUDED_OPTIONS) {
+                if (arguments.hasOption(option)) return "--" + option + " cannot be combined with --" + OPTION_DRY_RUN;
+            }
+        }
+        return null;
+    }
+
+    private static Shard parseShard(CommandLineArguments arguments) {
+        String index = arguments.getString(OPTION_SHARD, null);
+        String range = arguments.getString(OPTION_SHARD_RANGE, null);
+        if (index == null && range == null) return null;
+        return index != null ? Shard.ofIndex(index) : Shard.ofRange(range);
+    }
+
+    // the shops of the tenants file, or null without one
+    private static Map<String, TenantFiles> parseTenants(CommandLineArguments arguments)
+            throws IOException, NotDeserializedYetException {
+        String tenantsPath = arguments.getString(OPTION_TENANTS, null);
+        if (tenantsPath == null) return null;
+        TenantDataDeserializer tenantDataDeserializer = new TenantDataDeserializer(tenantsPath);
+        tenantDataDeserializer.deserialize();
+        return tenantDataDeserializer.getData();
+    }
+
+    private static void mergeMetrics(CommandLineArguments arguments, Logger logger) {
+        String metricsFile = arguments.getString(OPTION_METRICS_FILE, null);
+        if (metricsFile == null) {
+            logger.severe("Pass the file of the merged report with --" + OPTION_METRICS_FILE);
+            return;
+        }
+        List<Path> reports = Arrays.stream(arguments.getString(OPTION_MERGE_METRICS, "").split(PATH_LIST_SEPARATOR))
+                .filter(report -> !report.isBlank()).map(Path::of).toList();
+        try {
+            MetricsMerger.merge(reports);
+            logger.info("Merged the metrics of " + reports.size() + " shards");
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Could not merge the metrics: " + e.getMessage());
+            return;
+        }
+        exportMetrics(arguments, null, logger);
+    }
+
+    private static void exportMetrics(CommandLineArguments arguments, Shard shard, Logger logger) {
+        String metricsFile = arguments.getString(OPTION_METRICS_FILE, null);
+        if (metricsFile == null) return;
+        if (shard != null) metricsFile = shard.qualify(Path.of(metricsFile)).toString();
+
+        try {
+            MetricsExporter.Format format = MetricsExporter.Format.parse(
+                    arguments.getString(OPTION_METRICS_FORMAT, DEFAULT_METRICS_FORMAT));
+            MetricsExporter.writeTo(Path.of(metricsFile), format);
+            logger.info("Wrote the metrics of the run to " + metricsFile);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.severe("Could not write the metrics to " + metricsFile + ": " + e.getMessage());
+        }
+    }
+
+    private static void process(CommandLineArguments arguments, ReloadableTenant shop, Shard shard)
+            throws IOException, DocumentException, MessagingException, NotDeserializedYetException,
+            InterruptedException {
+        String ledgerPath = arguments.getString(OPTION_LEDGER, null);
+        String outboxPath = arguments.getString(OPTION_OUTBOX, null);
+        if (shard != null) {
+            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).info("Processing the orders of " + shard.getName());
+            if (ledgerPath != null) ledgerPath = shard.qualify(Path.of(ledgerPath)).toString();
+            if (outboxPath != null) outboxPath = shard.qualify(Path.of(outboxPath)).toString();
+        }
+        // not qualified by the shard, the index is locked while a customer number is assigned
+        String customerIndexPath = arguments.getString(OPTION_CUSTOMER_INDEX, null);
+        String inboxPath = arguments.getString(OPTION_WATCH, null);
+        int servePort = arguments.getInt(OPTION_SERVE, NO_SERVE_PORT);
+        int serveConcurrency = arguments.getInt(OPTION_SERVE_CONCURRENCY, Runtime.getRuntime().availableProcessors());
+        // the outbox sends with its own lease, which is replaced when the configuration is reloaded
+        AtomicReference<Tenant> outboxLease = new AtomicReference<>(outboxPath == null ? null : shop.lease());
+
+        try (InvoiceArchive archive = new InvoiceArchive(archiveMode(arguments));
+             OrderLedger ledger = ledgerPath == null ? null : new OrderLedger(Path.of(ledgerPath));
+             CustomerIndex customerIndex = customerIndexPath == null ? null
+                     : new CustomerIndex(Path.of(customerIndexPath));
+             OutboxDispatcher dispatcher = outboxPath == null ? null : startOutbox(arguments, outboxPath,
+                     outboxLease.get().getEmailService(), ledger)) {
+            PdfBufferPool bufferPool;
+            try (Tenant tenant = shop.lease()) {
+                bufferPool = newBufferPool(arguments, servePort, serveConcurrency, arguments.getInt(
+                        OPTION_SMTP_CONNECTIONS, ExportProcessor.smtpConnections(tenant.getEmailService())));
+            }
+            ExportProcessor exports = newExportProcessor(arguments, archive, ledger, dispatcher, bufferPool, shard,
+                    customerIndex);
+
+            if (servePort != NO_SERVE_PORT) {
+                try (InvoiceServer server = new InvoiceServer(servePort, serveConcurrency, shop::lease,
+                        tenant -> exports.newProcessor(tenant.getTemplate(), tenant.getEmailService()))) {
+                    server.setCustomerIndex(customerIndex);
+                    if (inboxPath == null) {
+                        awaitShutdown();
+                    } else {
+                        watch(Path.of(inboxPath), arguments, shop, outboxLease, exports);
+                    }
+                }
+            } else if (inboxPath == null) {
+                try (Tenant tenant = shop.lease()) {
+                    exports.process(Path.of(shop.getFiles().ordersPath()), tenant.getTemplate(),
+                            tenant.getEmailService());
+                }
+                if (dispatcher != null) {
+                    int timeout = arguments.getInt(OPTION_OUTBOX_DRAIN_TIMEOUT, DEFAULT_OUTBOX_DRAIN_TIMEOUT_SECONDS);
+                    if (!dispatcher.awaitDrained(timeout, TimeUnit.SECONDS)) {
+                        Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).warning(dispatcher.getOutbox().getPendingCount() +
+                                " emails are still in the outbox " + outboxPath + " and are sent by the next run");
+                    }
+                }
+            } else {
+                watch(Path.of(inboxPath), arguments, shop, outboxLease, exports);
+            }
+        } finally {
+            if (outboxLease.get() != null) outboxLease.get().close();
+        }
+    }
+
+    // several shops in one process, each with its own ledger; a shop's configuration is loaded on its first use
+    private static void processTenants(Map<String, TenantFiles> tenantFiles, CommandLineArguments arguments,
+                                       Shard shard) throws IOException, InterruptedException {
+        Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+        String ledgerPath = arguments.getString(OPTION_LEDGER, null);
+        if (shard != null && ledgerPath != null) ledgerPath = shard.qualify(Path.of(ledgerPath)).toString();
+        int servePort = arguments.getInt(OPTION_SERVE, NO_SERVE_PORT);
+        int serveConcurrency = arguments.getInt(OPTION_SERVE_CONCURRENCY, Runtime.getRuntime().availableProcessors());
+
+        Map<String, ExportProcessor> exports = new HashMap<>();
+        try (InvoiceArchive archive = new InvoiceArchive(archiveMode(arguments));
+             TenantCache tenants = new TenantCache(tenantFiles, arguments.getInt(OPTION_TENANT_CACHE_SIZE,
+                     DEFAULT_TENANT_CACHE_SIZE))) {
+            // the shops' configurations are not loaded yet
+            PdfBufferPool bufferPool = newBufferPool(arguments, servePort, serveConcurrency,
+                    arguments.getInt(OPTION_SMTP_CONNECTIONS, ExportProcessor.DEFAULT_SMTP_CONNECTIONS));
+            for (TenantFiles files : tenantFiles.values()) {
+                // order numbers are only unique within a shop
+                OrderLedger ledger = ledgerPath == null ? null
+                        : new OrderLedger(Shard.qualify(Path.of(ledgerPath), files.name()));
+                exports.put(files.name(), newExportProcessor(arguments, archive, ledger, null, bufferPool, shard,
+                        null));
+            }
+
+            if (servePort != NO_SERVE_PORT) {
+                InvoiceServer server = new InvoiceServer(servePort, serveConcurrency, tenants,
+                        tenant -> exports.get(tenant.getName()).newProcessor(tenant.getTemplate(),
+                                tenant.getEmailService()));
+                try (server) {
+                    awaitShutdown();
+                }
+                return;
+            }
+            for (TenantFiles files : tenantFiles.values()) {
+                if (files.ordersPath() == null) {
+                    logger.warning("The tenant " + files.name() + " has no orders path and is skipped");
+                    continue;
+                }
+                // one shop's broken configuration or export does not stop the others
+                logger.info("Processing the orders of the tenant " + files.name());
+                try (Tenant tenant = tenants.lease(files.name())) {
+                    exports.get(files.name()).process(Path.of(files.ordersPath()), tenant.getTemplate(),
+                            tenant.getEmailService());
+                } catch (IOException | DocumentException | MessagingException | NotDeserializedYetException
+                         | RuntimeException e) {
+                    logger.severe("Could not process the orders of the tenant " + files.name() + ": " +
+                            e.getMessage());
+                }
+            }
+        } finally {
+            for (ExportProcessor processor : exports.values()) {
+                if (processor.getLedger() != null) processor.getLedger().close();
+            }
         }
     }
+
+    private static ExportProcessor newExportProcessor(CommandLineArguments arguments, InvoiceArchive archive,
+                                                      OrderLedger ledger, OutboxDispatcher dispatcher,
+                                                      PdfBufferPool bufferPool, Shard shard,
+                                                      CustomerIndex customerIndex) {
+        ExportProcessor exports = new ExportProcessor(archive, ledger, dispatcher, bufferPool, shard, customerIndex);
+        String snapshotDirectory = arguments.getString(OPTION_SNAPSHOT, null);
+        if (snapshotDirectory != null) exports.setSnapshotDirectory(Path.of(snapshotDirectory));
+        exports.setStream(arguments.hasOption(OPTION_STREAM));
+        exports.setValidate(!arguments.hasOption(OPTION_NO_VALIDATION));
+        exports.setQuarantineDirectory(arguments.getString(OPTION_QUARANTINE, null));
+        String bundleFormats = arguments.getString(OPTION_BUNDLE, null);
+        if (bundleFormats != null) exports.setBundleFormats(InvoiceBundle.Format.parse(bundleFormats));
+        // a dry run renders every invoice, as a run after a change of the inputs would
+        exports.setForceRender(arguments.hasOption(OPTION_FORCE_RENDER) || arguments.hasOption(OPTION_DRY_RUN));
+
+        int renderWorkers = arguments.getInt(OPTION_RENDER_WORKERS, Runtime.getRuntime().availableProcessors());
+        if (arguments.hasOption(OPTION_VIRTUAL_THREADS)) {
+            exports.setVirtualThreads(renderWorkers, arguments.getInt(OPTION_DISK_WRITERS, DEFAULT_DISK_WRITERS),
+                    arguments.hasOption(OPTION_SMTP_CONNECTIONS) ? arguments.getInt(OPTION_SMTP_CONNECTIONS, 0) : null,
+                    arguments.getInt(OPTION_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT));
+        } else if (arguments.hasOption(OPTION_PIPELINE)) {
+            exports.setPipeline(renderWorkers, arguments.getInt(OPTION_MAIL_WORKERS, DEFAULT_MAIL_WORKERS),
+                    arguments.getInt(OPTION_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY));
+        }
+        return exports;
+    }
+
+    private static InvoiceArchive.Mode archiveMode(CommandLineArguments arguments) {
+        if (arguments.hasOption(OPTION_DRY_RUN)) return InvoiceArchive.Mode.NONE;
+        return arguments.hasOption(OPTION_IN_MEMORY)
+                ? InvoiceArchive.Mode.parse(arguments.getString(OPTION_ARCHIVE, DEFAULT_ARCHIVE_MODE))
+                : InvoiceArchive.Mode.NONE;
+    }
+
+    private static PdfBufferPool newBufferPool(CommandLineArguments arguments, int servePort, int serveConcurrency,
+                                               int smtpConnections) {
+        if (!arguments.hasOption(OPTION_IN_MEMORY) && !arguments.hasOption(OPTION_DRY_RUN)) return null;
+        int renderWorkers = arguments.getInt(OPTION_RENDER_WORKERS, Runtime.getRuntime().availableProcessors());
+        int buffers = arguments.hasOption(OPTION_PIPELINE) ? arguments.getInt(OPTION_QUEUE_CAPACITY,
+                DEFAULT_QUEUE_CAPACITY) + renderWorkers + arguments.getInt(OPTION_MAIL_WORKERS, DEFAULT_MAIL_WORKERS)
+                : SEQUENTIAL_PDF_BUFFERS;
+        // with a thread per order, a buffer is held from the rendering until the send or the outbox write
+        if (arguments.hasOption(OPTION_VIRTUAL_THREADS)) {
+            buffers = renderWorkers + smtpConnections + arguments.getInt(OPTION_DISK_WRITERS, DEFAULT_DISK_WRITERS);
+        }
+        return new PdfBufferPool(servePort == NO_SERVE_PORT ? buffers : buffers + serveConcurrency);
+    }
+
+    // blocks the main thread until the JVM is asked to stop, e.g. by SIGTERM
+    private static void awaitShutdown() throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.countDown();
+            try {
+                main.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "invoice-server-shutdown"));
+        stopped.await();
+    }
+
+    // keeps the JVM, the configuration and the open ledger and outbox around for every export that lands in the inbox
+    private static void watch(Path inbox, CommandLineArguments arguments, ReloadableTenant shop,
+                              AtomicReference<Tenant> outboxLease, ExportProcessor exports)
+            throws IOException, InterruptedException {
+        TenantFiles files = shop.getFiles();
+        List<Path> configurationFiles = List.of(Path.of(files.companyPath()), Path.of(files.invoicePath()),
+                Path.of(files.notificationPath()));
+        Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+        InboxWatcher watcher = new InboxWatcher(inbox, configurationFiles);
+        try (watcher) {
+            Thread daemon = Thread.currentThread();
+            // lets an export that is being processed finish when the daemon is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    watcher.close();
+                    daemon.join(SHUTDOWN_TIMEOUT_MILLIS);
+                } catch (IOException | InterruptedException e) {
+                    logger.warning("Could not stop the daemon cleanly: " + e.getMessage());
+                }
+            }, "invoice-daemon-shutdown"));
+
+            watcher.run(new InboxWatcher.Listener() {
+                @Override
+                public void configurationChanged(Set<Path> files)
+                        throws IOException, DocumentException, NotDeserializedYetException {
+                    shop.reload();
+                    if (exports.getDispatcher() != null) {
+                        Tenant lease = shop.lease();
+                        exports.getDispatcher().setEmailService(lease.getEmailService());
+                        outboxLease.getAndSet(lease).close();
+                    }
+                }
+
+                @Override
+                public void exportArrived(Path export) throws IOException, DocumentException, MessagingException,
+                        NotDeserializedYetException, InterruptedException {
+                    try (Tenant tenant = shop.lease()) {
+                        exports.process(export, tenant.getTemplate(), tenant.getEmailService());
+                    }
+                    exportMetrics(arguments, null, logger);
+                }
+            });
+        }
+    }
+
+    private static OutboxDispatcher startOutbox(CommandLineArguments arguments, String outboxPath,
+                                                EmailService emailService, OrderLedger ledger) throws IOException {
+        OutboxDispatcher dispatcher = new OutboxDispatcher(new Outbox(Path.of(outboxPath)), emailService, ledger,
+                arguments.getInt(OPTION_OUTBOX_WORKERS, DEFAULT_OUTBOX_WORKERS),
+                arguments.getDouble(OPTION_OUTBOX_RATE, DEFAULT_OUTBOX_RATE),
+                arguments.getInt(OPTION_OUTBOX_MAX_ATTEMPTS, DEFAULT_OUTBOX_MAX_ATTEMPTS));
+        dispatcher.start();
+        return dispatcher;
+    }
 }
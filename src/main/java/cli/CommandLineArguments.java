@@ -0,0 +1,70 @@
+package cli;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CommandLineArguments {
+    private static final String OPTION_PREFIX = "--";
+    private static final String OPTION_VALUE_SEPARATOR = "=";
+
+    private final List<String> positionalArguments;
+    private final Map<String, String> options;
+
+    public CommandLineArguments(String[] args) {
+        this.positionalArguments = new ArrayList<>();
+        this.options = new HashMap<>();
+
+        for (String arg : args) {
+            if (arg.startsWith(OPTION_PREFIX)) {
+                String option = arg.substring(OPTION_PREFIX.length());
+                int separatorIndex = option.indexOf(OPTION_VALUE_SEPARATOR);
+                if (separatorIndex < 0) {
+                    options.put(option, "");
+                } else {
+                    options.put(option.substring(0, separatorIndex), option.substring(separatorIndex + 1));
+                }
+            } else {
+                positionalArguments.add(arg);
+            }
+        }
+    }
+
+    public List<String> getPositionalArguments() {
+        return positionalArguments;
+    }
+
+    public boolean hasOption(String name) {
+        return options.containsKey(name);
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The option --" + name + " expects an integer but got: " + value, e);
+        }
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The option --" + name + " expects a number but got: " + value, e);
+        }
+    }
+
+    public Map<String, String> getOptions() {
+        return options;
+    }
+}
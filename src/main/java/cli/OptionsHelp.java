@@ -0,0 +1,57 @@
+package cli;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// the usage of the options, one line per option or group of options that belong together
+public final class OptionsHelp {
+    private static final Pattern OPTION = Pattern.compile("--([a-z][a-z-]*)(=)?");
+
+    public static final List<String> LINES = List.of(
+            "--stream: read the orders data file order by order instead of loading it as a whole (recommended for large exports)",
+            "--pipeline [--render-workers=N] [--mail-workers=M] [--queue-capacity=K]: render and send invoices concurrently in separate stages",
+            "--in-memory [--archive=async|sync|none]: render the invoices into memory, attach them from there and write the copy in the output path asynchronously, synchronously or not at all",
+            "--ledger=<PATH>: record rendered and sent orders in the given ledger file and skip the orders that it shows as already sent",
+            "--metrics-file=<PATH> [--metrics-format=json|prometheus] [--metrics-port=P]: write counters and latency histograms of the run to the given file at its end and serve them on http://127.0.0.1:P/metrics while it runs",
+            "--outbox=<DIR> [--outbox-workers=N] [--outbox-rate=R] [--outbox-max-attempts=A] [--outbox-drain-timeout=S]: queue the emails in a durable outbox that N background workers send with at most R emails per second per SMTP host, retrying failures with exponential backoff up to A attempts and waiting at most S seconds for it at the end of the run",
+            "--watch=<DIR>: keep running and process every order export that lands in the given inbox directory, the orders path is not used and the configuration files are reloaded when they change (combine with --ledger to skip orders that are exported again)",
+            "--serve=<PORT> [--serve-concurrency=N]: keep running and render the orders POSTed to http://127.0.0.1:PORT/invoices, at most N at once, the orders path is not used",
+            "--virtual-threads [--render-workers=N] [--disk-writers=D] [--smtp-connections=S] [--max-in-flight=F]: run every order on its own virtual thread (Java 21 or later), with at most N renderings, D file writes and S SMTP sends at once (default: the poolSize of the notification configuration) and at most F orders in flight",
+            "--bundle=pdf|zip|both: additionally collect the invoices of every order export in one merged PDF and/or one ZIP archive named invoices-<DATE>-<EXPORT> in the output path (combine with --in-memory --archive=none to skip the single files)",
+            "--snapshot=<DIR>: keep a binary snapshot of every parsed order export in the given directory and load the orders from it instead of parsing the export again as long as the export is unchanged",
+            "--shard=<I>/<N> | --shard-range=<FIRST>-<LAST>: only process the orders of the export whose order number hashes to the I-th of N shards, or lies in the given range, and write the ledger, outbox, bundles and metrics under names qualified by the shard",
+            "--merge-metrics=<PATH>,<PATH>... --metrics-file=<PATH> [--metrics-format=json|prometheus]: merge the JSON metrics files of the shards of a run into one report and exit",
+            "--customer-index=<PATH>: number the customers by their email address and name from the given index file, so that a customer keeps the customer number across orders and runs (share the file between the shards of a run)",
+            "--quarantine=<DIR> | --no-validation: validate every order export before processing it and move the invalid orders with a report of all errors to the given directory (default: the quarantine directory in the output path), or skip the validation",
+            "--tenants=<PATH> [--tenant-cache-size=N]: process the order exports of all shops listed in the given tenants file in one process, or with --serve route every request to the shop named by its tenant query parameter, keeping the configurations of the N most recently used shops loaded; the configuration paths are not used",
+            "--force-render: render every invoice again, by default an invoice whose PDF in the output path was rendered from the same order, configuration and date is attached as it is",
+            "--dry-run: render every invoice into memory and create every email, but neither write the invoices nor send the emails (e.g. as the training run of a class data sharing archive)");
+
+    // every option named in the usage, and whether it is followed by a value anywhere in it
+    private static final Map<String, Boolean> OPTIONS = parseOptions();
+
+    private OptionsHelp() {
+    }
+
+    private static Map<String, Boolean> parseOptions() {
+        Map<String, Boolean> options = new HashMap<>();
+        for (String line : LINES) {
+            Matcher option = OPTION.matcher(line);
+            while (option.find()) {
+                options.merge(option.group(1), option.group(2) != null, Boolean::logicalOr);
+            }
+        }
+        return options;
+    }
+
+    public static boolean isKnown(String option) {
+        return OPTIONS.containsKey(option);
+    }
+
+    public static boolean takesValue(String option) {
+        return OPTIONS.getOrDefault(option, false);
+    }
+}
@@ -0,0 +1,187 @@
+package daemon;
+
+import com.itextpdf.text.DocumentException;
+import data.NotDeserializedYetException;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class InboxWatcher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String PROCESSED_DIRECTORY = "processed";
+    private static final String FAILED_DIRECTORY = "failed";
+    private static final String EXPORT_TYPE = ".json";
+    private static final DateTimeFormatter ARCHIVE_PREFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-");
+    private static final long POLL_MILLIS = 250;
+    // an export is only picked up once it has not changed for this long, so half uploaded files are left alone
+    private static final long SETTLE_MILLIS = 1_000;
+
+    public interface Listener {
+        void configurationChanged(Set<Path> files) throws IOException, DocumentException, NotDeserializedYetException;
+
+        void exportArrived(Path export) throws IOException, DocumentException, MessagingException,
+                NotDeserializedYetException, InterruptedException;
+    }
+
+    private final Path inbox;
+    private final Path processedDirectory;
+    private final Path failedDirectory;
+    private final Set<Path> configurationFiles;
+    private final WatchService watchService;
+    // last change of every file that is waiting to settle
+    private final Map<Path, Long> pendingExports;
+    private final Map<Path, Long> pendingConfigurationFiles;
+    private volatile boolean running;
+
+    public InboxWatcher(Path inbox, Collection<Path> configurationFiles) throws IOException {
+        this.inbox = inbox.toAbsolutePath().normalize();
+        this.processedDirectory = Files.createDirectories(this.inbox.resolve(PROCESSED_DIRECTORY));
+        this.failedDirectory = Files.createDirectories(this.inbox.resolve(FAILED_DIRECTORY));
+        this.configurationFiles = new HashSet<>();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.pendingExports = new HashMap<>();
+        this.pendingConfigurationFiles = new HashMap<>();
+        this.running = true;
+
+        Set<Path> directories = new HashSet<>();
+        directories.add(this.inbox);
+        for (Path file : configurationFiles) {
+            Path absolute = file.toAbsolutePath().normalize();
+            this.configurationFiles.add(absolute);
+            directories.add(absolute.getParent());
+        }
+        for (Path directory : directories) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    // blocks until the watcher is closed, the exports that are already in the inbox are processed first
+    public void run(Listener listener) throws InterruptedException {
+        LOGGER.info("Watching " + inbox + " for new order exports");
+        scanInbox(0);
+
+        try {
+            while (running) {
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (key != null) {
+                    collect(key, now);
+                }
+                reloadSettledConfiguration(listener, now);
+                processSettledExports(listener, now);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed by a shutdown while waiting for changes
+        }
+        LOGGER.info("Stopped watching " + inbox);
+    }
+
+    private void collect(WatchKey key, long now) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, so look at everything again
+                scanInbox(now);
+                pendingConfigurationFiles.putAll(toMap(configurationFiles, now));
+                continue;
+            }
+
+            Path file = directory.resolve((Path) event.context());
+            if (configurationFiles.contains(file)) {
+                pendingConfigurationFiles.put(file, now);
+            } else if (isExport(file)) {
+                pendingExports.put(file, now);
+            }
+        }
+        key.reset();
+    }
+
+    private void scanInbox(long now) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox, "*" + EXPORT_TYPE)) {
+            for (Path file : files) {
+                if (isExport(file)) pendingExports.putIfAbsent(file, now);
+            }
+        } catch (IOException e) {
+            LOGGER.severe("Could not list the inbox " + inbox + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isExport(Path file) {
+        String name = file.getFileName().toString();
+        return inbox.equals(file.getParent()) && name.endsWith(EXPORT_TYPE) && !name.startsWith(".")
+                && !configurationFiles.contains(file);
+    }
+
+    private void reloadSettledConfiguration(Listener listener, long now) {
+        if (pendingConfigurationFiles.isEmpty()) return;
+        // the files are reloaded together so that an edit of several of them is picked up as one change
+        for (long changed : pendingConfigurationFiles.values()) {
+            if (now - changed < SETTLE_MILLIS) return;
+        }
+
+        Set<Path> files = new HashSet<>(pendingConfigurationFiles.keySet());
+        pendingConfigurationFiles.clear();
+        try {
+            listener.configurationChanged(files);
+            LOGGER.info("Reloaded the configuration after a change of " + files);
+        } catch (IOException | DocumentException | NotDeserializedYetException | RuntimeException e) {
+            LOGGER.severe("Keeping the previous configuration, the changed one could not be loaded: " +
+                    e.getMessage());
+        }
+    }
+
+    private void processSettledExports(Listener listener, long now) throws InterruptedException {
+        Iterator<Map.Entry<Path, Long>> iterator = pendingExports.entrySet().iterator();
+        while (running && iterator.hasNext()) {
+            Map.Entry<Path, Long> pending = iterator.next();
+            if (now - pending.getValue() < SETTLE_MILLIS) continue;
+            iterator.remove();
+
+            Path export = pending.getKey();
+            if (!Files.exists(export)) continue;
+            process(listener, export);
+        }
+    }
+
+    private void process(Listener listener, Path export) throws InterruptedException {
+        LOGGER.info("Processing the order export " + export);
+        Path target;
+        try {
+            listener.exportArrived(export);
+            target = processedDirectory;
+        } catch (IOException | DocumentException | MessagingException | NotDeserializedYetException
+                 | RuntimeException e) {
+            LOGGER.severe("Could not process the order export " + export + ": " + e.getMessage());
+            target = failedDirectory;
+        }
+
+        // the timestamp keeps an export apart from an earlier one with the same name
+        Path archived = target.resolve(LocalDateTime.now().format(ARCHIVE_PREFIX) + export.getFileName());
+        try {
+            Files.move(export, archived, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.severe("Could not move the order export " + export + " to " + archived + ": " + e.getMessage());
+        }
+    }
+
+    private static Map<Path, Long> toMap(Set<Path> files, long now) {
+        Map<Path, Long> map = new HashMap<>();
+        for (Path file : files) {
+            map.put(file, now);
+        }
+        return map;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+    }
+}
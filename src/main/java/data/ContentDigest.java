@@ -0,0 +1,103 @@
+package data;
+
+import model.*;
+
+import java.io.IOException;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+public class ContentDigest {
+    private static final String ALGORITHM = "SHA-256";
+    private static final byte FIELD_SEPARATOR = 0x1f;
+
+    private final MessageDigest digest;
+
+    public ContentDigest() {
+        try {
+            this.digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported by this JVM", e);
+        }
+    }
+
+    public static String of(Order order) {
+        return new ContentDigest().add(order).toHex();
+    }
+
+    public ContentDigest add(String value) {
+        if (value != null) digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update(FIELD_SEPARATOR);
+        return this;
+    }
+
+    public ContentDigest add(Object value) {
+        return add(value == null ? null : String.valueOf(value));
+    }
+
+    public ContentDigest add(Order order) {
+        add(order.orderNumber()).add(order.orderDate());
+        add(order.customer()).add(order.products().size());
+        for (Product product : order.products()) {
+            add(product.name()).add(product.price()).add(product.amount());
+        }
+        return this;
+    }
+
+    public ContentDigest add(Person person) {
+        add(person.getFirstName()).add(person.getLastName());
+        add(person.getAddress());
+        Contact contact = person.getContact();
+        return add(contact.email()).add(contact.phoneNumber());
+    }
+
+    public ContentDigest add(Address address) {
+        return add(address.street()).add(address.streetNumber()).add(address.zipCode()).add(address.location())
+                .add(address.country());
+    }
+
+    // every component of a record, so that a component added later is hashed as well; arrays are hashed by their
+    // elements, not by their identity
+    public ContentDigest addRecord(Record record) {
+        for (RecordComponent component : record.getClass().getRecordComponents()) {
+            try {
+                addValue(component.getAccessor().invoke(record));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not read " + component.getName() + " of " +
+                        record.getClass().getSimpleName(), e);
+            }
+        }
+        return this;
+    }
+
+    public ContentDigest addFile(Path file) throws IOException {
+        digest.update(Files.readAllBytes(file));
+        digest.update(FIELD_SEPARATOR);
+        return this;
+    }
+
+    private void addValue(Object value) {
+        if (value instanceof Record record) {
+            addRecord(record);
+        } else if (value instanceof Person person) {
+            add(person);
+        } else if (value instanceof List<?> list) {
+            add(list.size());
+            for (Object element : list) addValue(element);
+        } else if (value instanceof int[] array) {
+            add(Arrays.toString(array));
+        } else {
+            add(value);
+        }
+    }
+
+    public String toHex() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
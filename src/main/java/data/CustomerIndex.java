@@ -0,0 +1,205 @@
+package data;
+
+import metrics.Counter;
+import metrics.MetricRegistry;
+import model.Address;
+import model.Contact;
+import model.Customer;
+import model.Order;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+// gives every customer, identified by the normalized email address and name, the same customer number in every run;
+// numbers come from a counter in an append-only file that is locked while a number is assigned, so that several
+// processes, e.g. the shards of a run, can share it without handing out a number twice; within one process the file
+// can only be open once, since file locks are held by the whole process and two channels would not exclude each other
+public class CustomerIndex implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final Counter CREATED = MetricRegistry.counter("customers_created_total",
+            "Customers that got a new customer number");
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int FIELD_COUNT = 3;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int FIRST_CUSTOMER_ID = 1;
+    // a long running server or watcher sees ever new customers, only the recently seen ones are shared
+    private static final int INTERNED_CUSTOMERS = 10_000;
+    private static final Set<Path> OPEN_PATHS = new HashSet<>();
+
+    private record Key(String email, String name) {
+    }
+
+    // equal customers of different orders share one instance
+    private record Interned(String firstName, String lastName, Address address, Contact contact) {
+    }
+
+    private final Path path;
+    private final Path realPath;
+    private final FileChannel channel;
+    // mirrors the index file, so it is as large as the file and not bounded
+    private final Map<Key, Integer> ids;
+    private final Map<Interned, Customer> customers;
+    private long readPosition;
+    private int nextId;
+
+    public CustomerIndex(Path path) throws IOException {
+        this.path = path;
+        // checked before the file is opened, closing a second channel could release the lock of the first one
+        this.realPath = register(path);
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.ids = new HashMap<>();
+            this.customers = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Interned, Customer> eldest) {
+                    return size() > INTERNED_CUSTOMERS;
+                }
+            };
+            this.readPosition = 0;
+            this.nextId = FIRST_CUSTOMER_ID;
+            catchUp();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static Path register(Path path) throws IOException {
+        try {
+            Files.createFile(path);
+        } catch (FileAlreadyExistsException e) {
+            // another run or process created it
+        }
+        Path realPath = path.toRealPath();
+        synchronized (OPEN_PATHS) {
+            if (!OPEN_PATHS.add(realPath)) {
+                throw new IllegalStateException("The customer index " + path + " is already open in this process, " +
+                        "share that instance instead.");
+            }
+        }
+        return realPath;
+    }
+
+    // called while orders are streamed, hence the unchecked exception
+    public synchronized Customer resolve(String firstName, String lastName, Address address, Contact contact) {
+        Interned interned = new Interned(firstName, lastName, address, contact);
+        Customer customer = customers.get(interned);
+        if (customer != null) return customer;
+
+        try {
+            customer = new Customer(firstName, lastName, address, contact, idOf(contact.email(), firstName, lastName));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not update the customer index " + path, e);
+        }
+        customers.put(interned, customer);
+        return customer;
+    }
+
+    // e.g. for the orders of a snapshot, which carry the customer numbers of the run that wrote it
+    public Order resolve(Order order) {
+        Customer customer = order.customer();
+        return new Order(order.orderNumber(), resolve(customer.getFirstName(), customer.getLastName(),
+                customer.getAddress(), customer.getContact()), order.products(), order.orderDate());
+    }
+
+    private int idOf(String email, String firstName, String lastName) throws IOException {
+        Key key = new Key(normalize(email), normalize(firstName + " " + lastName));
+        Integer id = ids.get(key);
+        if (id != null) return id;
+
+        FileLock lock = channel.lock();
+        try (lock) {
+            // another process may have numbered the customer since the index was read
+            boolean tornTail = catchUp();
+            id = ids.get(key);
+            if (id != null) return id;
+
+            id = nextId;
+            String line = (tornTail ? "\n" : "") + id + FIELD_SEPARATOR + key.email() + FIELD_SEPARATOR + key.name()
+                    + "\n";
+            ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            long position = channel.size();
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            readPosition = position;
+            register(key, id);
+            CREATED.increment();
+            return id;
+        }
+    }
+
+    // reads the lines appended since the last call and returns whether the file ends with a torn line
+    private boolean catchUp() throws IOException {
+        long size = channel.size();
+        if (size <= readPosition) return false;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - readPosition));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, readPosition + buffer.position()) < 0) break;
+        }
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+
+        // a crash while appending can leave a torn last line behind, which is skipped
+        int end = text.lastIndexOf('\n') + 1;
+        for (String line : text.substring(0, end).split("\n")) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(FIELD_SEPARATOR, -1);
+            try {
+                if (fields.length != FIELD_COUNT) throw new IllegalArgumentException();
+                register(new Key(fields[1], fields[2]), Integer.parseInt(fields[0]));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Ignoring a malformed customer index line: " + line);
+            }
+        }
+        readPosition += text.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+        return end < text.length();
+    }
+
+    private void register(Key key, int id) {
+        ids.put(key, id);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    // case and whitespace do not make another customer
+    private static String normalize(String value) {
+        if (value == null) return "";
+        return WHITESPACE.matcher(value.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && !channel.isOpen()) return;
+        try {
+            if (channel != null) channel.close();
+        } finally {
+            synchronized (OPEN_PATHS) {
+                OPEN_PATHS.remove(realPath);
+            }
+        }
+    }
+}
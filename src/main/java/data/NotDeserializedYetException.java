@@ -1,6 +1,8 @@
 package data;
 
 public class NotDeserializedYetException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public NotDeserializedYetException(String message) {
         super(message);
     }
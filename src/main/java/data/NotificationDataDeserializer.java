@@ -4,7 +4,6 @@ import notification.EmailService;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -25,6 +24,9 @@ public class NotificationDataDeserializer {
     private static final String MESSAGE_KEY = "message";
     private static final String GREETINGS_KEY = "greetings";
     private static final String SIGNATURE_KEY = "signature";
+    private static final String POOL_SIZE_KEY = "poolSize";
+    private static final int DEFAULT_POOL_SIZE = 0;
+    private static final String PREPARED_MESSAGES_KEY = "preparedMessages";
 
     private final JSONObject rawData;
     private EmailService data;
@@ -34,7 +36,7 @@ public class NotificationDataDeserializer {
         this.data = null;
     }
 
-    public void deserialize() throws UnsupportedEncodingException {
+    public void deserialize() {
         JSONObject email = rawData.getJSONObject(EMAIL_KEY);
         String address = email.getString(ADDRESS_KEY);
         String password = email.getString(PASSWORD_KEY);
@@ -51,8 +53,10 @@ public class NotificationDataDeserializer {
         String message = email.getString(MESSAGE_KEY);
         String greetings = email.getString(GREETINGS_KEY);
         String signature = email.getString(SIGNATURE_KEY);
+        int poolSize = email.optInt(POOL_SIZE_KEY, DEFAULT_POOL_SIZE);
+        boolean preparedMessages = email.optBoolean(PREPARED_MESSAGES_KEY);
         this.data = new EmailService(address, password, host, port, tls, auth, debug, protocol, trust, from, subject,
-                salutation, message, greetings, signature);
+                salutation, message, greetings, signature, poolSize, preparedMessages);
     }
 
     public EmailService getData() throws NotDeserializedYetException {
@@ -0,0 +1,142 @@
+package data;
+
+import model.Money;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static data.WooCommerceDataDeserializer.*;
+
+// the fields an order of the export needs to be deserialized, compiled once into a flat list of checks, so that
+// validating an order is one lookup and one check per field; an order that passes cannot fail the deserializer
+public final class OrderSchema {
+    public static final OrderSchema WOO_COMMERCE = new OrderSchema(
+            new Field(ORDER_NUMBER_KEY, OrderSchema::checkOrderNumber),
+            new Field(ORDER_DATE_KEY, OrderSchema::checkDate),
+            new Field(FIRST_NAME_KEY, OrderSchema::checkString),
+            new Field(LAST_NAME_KEY, OrderSchema::checkString),
+            new Field(STREET_INFORMATION_KEY, OrderSchema::checkStreet),
+            new Field(ZIP_CODE_KEY, OrderSchema::checkString),
+            new Field(LOCATION_KEY, OrderSchema::checkString),
+            new Field(COUNTRY_KEY, OrderSchema::checkString),
+            new Field(EMAIL_KEY, OrderSchema::checkString),
+            new Field(PHONE_KEY, OrderSchema::checkString),
+            new Field(SHIPPING_PRICE_KEY, OrderSchema::checkMoney),
+            new Field(PRODUCTS_KEY, null,
+                    new Field(PRODUCT_NAME_KEY, OrderSchema::checkString),
+                    new Field(PRODUCT_PRICE_KEY, OrderSchema::checkMoney),
+                    new Field(PRODUCT_AMOUNT_KEY, OrderSchema::checkAmount)));
+
+    // returns null if the value is valid, else what is wrong with it
+    private interface Check {
+        String check(Object value);
+    }
+
+    // either a single value or an array of objects with the given fields
+    private record Field(String key, Check check, Field... items) {
+    }
+
+    private final Field[] fields;
+
+    private OrderSchema(Field... fields) {
+        this.fields = fields;
+    }
+
+    // an empty list if the order is valid
+    public List<String> validate(Object order) {
+        List<String> errors = new ArrayList<>();
+        if (!(order instanceof JSONObject jsonOrder)) {
+            errors.add("expected an order object but got " + describe(order));
+            return errors;
+        }
+        validate(jsonOrder, fields, "", errors);
+        return errors;
+    }
+
+    private static void validate(JSONObject object, Field[] fields, String path, List<String> errors) {
+        for (Field field : fields) {
+            Object value = object.opt(field.key());
+            if (value != null && field.check() == null) {
+                validateItems(value, field, path + field.key(), errors);
+                continue;
+            }
+            String error = value == null ? "is missing" : field.check().check(value);
+            if (error != null) errors.add(path + field.key() + " " + error);
+        }
+    }
+
+    private static void validateItems(Object value, Field field, String path, List<String> errors) {
+        if (!(value instanceof JSONArray array)) {
+            errors.add(path + " expected an array but got " + describe(value));
+            return;
+        }
+        for (int i = 0; i < array.length(); i++) {
+            String itemPath = path + "[" + i + "]";
+            if (array.get(i) instanceof JSONObject item) {
+                validate(item, field.items(), itemPath + ".", errors);
+            } else {
+                errors.add(itemPath + " expected an object but got " + describe(array.get(i)));
+            }
+        }
+    }
+
+    private static String checkString(Object value) {
+        return value instanceof String ? null : "expected a string but got " + describe(value);
+    }
+
+    private static String checkOrderNumber(Object value) {
+        if (!(value instanceof String number)) return checkString(value);
+        return number.isBlank() ? "is empty" : null;
+    }
+
+    private static String checkDate(Object value) {
+        if (!(value instanceof String date)) return checkString(value);
+        try {
+            LocalDateTime.parse(date, WOO_COMMERCE_DATE_FORMAT);
+            return null;
+        } catch (DateTimeParseException e) {
+            return "expected a date like 2022-08-10 18:21 but got " + describe(value);
+        }
+    }
+
+    private static String checkStreet(Object value) {
+        if (!(value instanceof String street)) return checkString(value);
+        return street.split(STREET_INFORMATION_SPLIT_REGEX).length > STREET_NUMBER_INDEX ? null
+                : "expected a street and a street number separated by a space but got " + describe(value);
+    }
+
+    private static String checkMoney(Object value) {
+        if (value instanceof JSONObject || value instanceof JSONArray || value == JSONObject.NULL) {
+            return "expected an amount but got " + describe(value);
+        }
+        try {
+            Money.parseCents(value.toString());
+            return null;
+        } catch (IllegalArgumentException e) {
+            return "expected an amount but got " + describe(value);
+        }
+    }
+
+    // quantities are exported as strings
+    private static String checkAmount(Object value) {
+        if (!(value instanceof String amount)) return checkString(value);
+        try {
+            Integer.parseInt(amount);
+            return null;
+        } catch (NumberFormatException e) {
+            return "expected a whole number but got " + describe(value);
+        }
+    }
+
+    private static String describe(Object value) {
+        if (value == null || value == JSONObject.NULL) return "null";
+        if (value instanceof String) return JSONObject.quote((String) value);
+        if (value instanceof JSONObject) return "an object";
+        if (value instanceof JSONArray) return "an array";
+        return value.toString();
+    }
+}
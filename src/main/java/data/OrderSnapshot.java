@@ -0,0 +1,326 @@
+package data;
+
+import model.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.logging.Logger;
+
+// a binary copy of the parsed orders of an export, so that a re-run maps it instead of parsing the JSON again
+//
+// layout (big endian): header | orders | strings | order offsets | string offsets
+// header: magic, version, SHA-256 of the export, order count, order offsets position, string count, string offsets
+// position; every string of the orders is stored once and referenced by its index, dates are epoch days and prices cents
+public class OrderSnapshot {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final int MAGIC = 0x57494753;
+    private static final int VERSION = 2;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int HASH_LENGTH = 32;
+    private static final int HASH_POSITION = 8;
+    private static final int COUNTS_POSITION = HASH_POSITION + HASH_LENGTH;
+    private static final int HEADER_LENGTH = COUNTS_POSITION + 4 * Integer.BYTES;
+    private static final int NULL_STRING = -1;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private OrderSnapshot() {
+    }
+
+    public static byte[] hash(Path source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not supported by this JVM", e);
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(Integer.MAX_VALUE, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    // returns null if there is no snapshot, or if it was taken of another version of the export
+    public static List<Order> load(Path snapshot, byte[] sourceHash) throws IOException {
+        if (!Files.exists(snapshot)) return null;
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) return null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+            LOGGER.warning("Ignoring the snapshot " + snapshot + " of an unknown format");
+            return null;
+        }
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(HASH_POSITION, hash);
+        if (!Arrays.equals(hash, sourceHash)) return null;
+
+        try {
+            return new SnapshotOrders(buffer);
+        } catch (IndexOutOfBoundsException e) {
+            LOGGER.warning("Ignoring the truncated or corrupt snapshot " + snapshot);
+            return null;
+        }
+    }
+
+    public static void write(Path snapshot, byte[] sourceHash, List<Order> orders) throws IOException {
+        try (Writer writer = new Writer(snapshot, sourceHash)) {
+            for (Order order : orders) {
+                writer.add(order);
+            }
+            writer.commit();
+        }
+    }
+
+    // decodes an order when it is accessed, the strings only once for all orders that share them
+    private static class SnapshotOrders extends AbstractList<Order> implements RandomAccess {
+        private final ByteBuffer buffer;
+        private final int size;
+        private final int orderOffsets;
+        private final int stringOffsets;
+        private final String[] strings;
+
+        SnapshotOrders(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.size = buffer.getInt(COUNTS_POSITION);
+            this.orderOffsets = buffer.getInt(COUNTS_POSITION + Integer.BYTES);
+            int stringCount = buffer.getInt(COUNTS_POSITION + 2 * Integer.BYTES);
+            this.stringOffsets = buffer.getInt(COUNTS_POSITION + 3 * Integer.BYTES);
+            // fails early for a snapshot that was cut off or whose header is broken
+            checkTable(buffer, orderOffsets, size);
+            checkTable(buffer, stringOffsets, stringCount);
+            this.strings = new String[stringCount];
+        }
+
+        // the table of offsets lies between the header and the end of the snapshot
+        private static void checkTable(ByteBuffer buffer, int position, int count) {
+            if (count < 0 || position < HEADER_LENGTH
+                    || (long) position + (long) count * Integer.BYTES > buffer.limit()) {
+                throw new IndexOutOfBoundsException("An offset table of " + count + " entries at " + position +
+                        " does not fit into " + buffer.limit() + " bytes");
+            }
+        }
+
+        @Override
+        public Order get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            int position = buffer.getInt(orderOffsets + index * Integer.BYTES);
+
+            String orderNumber = string(buffer.getInt(position));
+            LocalDate orderDate = LocalDate.ofEpochDay(buffer.getInt(position + 4));
+            String firstName = string(buffer.getInt(position + 8));
+            String lastName = string(buffer.getInt(position + 12));
+            Address address = new Address(string(buffer.getInt(position + 16)), string(buffer.getInt(position + 20)),
+                    string(buffer.getInt(position + 24)), string(buffer.getInt(position + 28)),
+                    string(buffer.getInt(position + 32)));
+            Contact contact = new Contact(string(buffer.getInt(position + 36)), string(buffer.getInt(position + 40)));
+            Customer customer = new Customer(firstName, lastName, address, contact, buffer.getInt(position + 44));
+
+            int productCount = buffer.getInt(position + 48);
+            List<Product> products = new ArrayList<>(productCount);
+            position += 52;
+            for (int i = 0; i < productCount; i++, position += 16) {
+                products.add(new Product(string(buffer.getInt(position)), buffer.getLong(position + 4),
+                        buffer.getInt(position + 12)));
+            }
+            return new Order(orderNumber, customer, products, orderDate);
+        }
+
+        private String string(int index) {
+            if (index == NULL_STRING) return null;
+            // racing threads decode the same string twice at worst
+            String string = strings[index];
+            if (string == null) {
+                int position = buffer.getInt(stringOffsets + index * Integer.BYTES);
+                byte[] bytes = new byte[buffer.getInt(position)];
+                buffer.get(position + Integer.BYTES, bytes);
+                string = new String(bytes, StandardCharsets.UTF_8);
+                strings[index] = string;
+            }
+            return string;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // writes the orders as they come, so that a streamed export can be snapshotted without holding it in memory;
+    // the snapshot only replaces an older one once it is committed
+    public static class Writer implements AutoCloseable {
+        private final Path snapshot;
+        private final Path temporary;
+        private final byte[] sourceHash;
+        private final DataOutputStream out;
+        private final Map<String, Integer> stringIndices;
+        private final List<String> strings;
+        private int[] orderOffsets;
+        private int orderCount;
+        private boolean committed;
+        private boolean failed;
+
+        public Writer(Path snapshot, byte[] sourceHash) throws IOException {
+            if (sourceHash.length != HASH_LENGTH) throw new IllegalArgumentException("Expected a SHA-256 hash.");
+            this.snapshot = snapshot;
+            // unique, as the shards of an export can write its snapshot at the same time
+            this.temporary = Files.createTempFile(snapshot.toAbsolutePath().getParent(),
+                    snapshot.getFileName().toString(), TEMPORARY_SUFFIX);
+            this.sourceHash = sourceHash;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary),
+                    OUTPUT_BUFFER_SIZE));
+            this.stringIndices = new HashMap<>();
+            this.strings = new ArrayList<>();
+            this.orderOffsets = new int[1024];
+            this.orderCount = 0;
+            this.committed = false;
+            this.failed = false;
+            // the header is filled in by commit()
+            out.write(new byte[HEADER_LENGTH]);
+        }
+
+        public void add(Order order) throws IOException {
+            if (orderCount == orderOffsets.length) orderOffsets = Arrays.copyOf(orderOffsets, 2 * orderCount);
+            orderOffsets[orderCount++] = position();
+
+            Customer customer = order.customer();
+            Address address = customer.getAddress();
+            Contact contact = customer.getContact();
+            writeString(order.orderNumber());
+            out.writeInt(Math.toIntExact(order.orderDate().toEpochDay()));
+            writeString(customer.getFirstName());
+            writeString(customer.getLastName());
+            writeString(address.street());
+            writeString(address.streetNumber());
+            writeString(address.zipCode());
+            writeString(address.location());
+            writeString(address.country());
+            writeString(contact.email());
+            writeString(contact.phoneNumber());
+            out.writeInt(customer.getCustomerId());
+
+            out.writeInt(order.products().size());
+            for (Product product : order.products()) {
+                writeString(product.name());
+                out.writeLong(product.price());
+                out.writeInt(product.amount());
+            }
+        }
+
+        // tees the orders into the snapshot while they are processed, a failing snapshot does not stop the run
+        public Iterator<Order> record(Iterator<Order> orders) {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return orders.hasNext();
+                }
+
+                @Override
+                public Order next() {
+                    Order order = orders.next();
+                    if (!failed) {
+                        try {
+                            add(order);
+                        } catch (IOException | ArithmeticException e) {
+                            LOGGER.warning("Could not write the snapshot " + snapshot + ": " + e.getMessage());
+                            failed = true;
+                        }
+                    }
+                    return order;
+                }
+            };
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+            Integer index = stringIndices.get(value);
+            if (index == null) {
+                index = strings.size();
+                stringIndices.put(value, index);
+                strings.add(value);
+            }
+            out.writeInt(index);
+        }
+
+        // DataOutputStream counts in an int, which also caps the snapshot at the 2 GB that can be mapped at once
+        private int position() throws IOException {
+            if (out.size() < 0 || out.size() == Integer.MAX_VALUE) {
+                throw new IOException("The snapshot " + snapshot + " would exceed 2 GB.");
+            }
+            return out.size();
+        }
+
+        public void commit() throws IOException {
+            if (failed) return;
+            int[] stringOffsets = new int[strings.size()];
+            for (int i = 0; i < stringOffsets.length; i++) {
+                stringOffsets[i] = position();
+                byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            int orderOffsetsPosition = position();
+            for (int i = 0; i < orderCount; i++) {
+                out.writeInt(orderOffsets[i]);
+            }
+            int stringOffsetsPosition = position();
+            for (int stringOffset : stringOffsets) {
+                out.writeInt(stringOffset);
+            }
+            position();
+            out.close();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).put(sourceHash)
+                    .putInt(orderCount).putInt(orderOffsetsPosition).putInt(strings.size()).putInt(stringOffsetsPosition)
+                    .flip();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            LOGGER.info("Wrote a snapshot of " + orderCount + " orders with " + strings.size() + " distinct strings to " +
+                    snapshot);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) return;
+            out.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
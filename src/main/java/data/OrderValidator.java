@@ -0,0 +1,117 @@
+package data;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricRegistry;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// checks every order of an export against the schema while the deserializer reads it, so the export is parsed only
+// once; the rejected orders are copied to a quarantine file as they are, so they can be fixed and exported again,
+// and the deserializer skips them
+public class OrderValidator implements Closeable {
+    private static final Counter QUARANTINED = MetricRegistry.counter("orders_quarantined_total",
+            "Orders of the exports that failed the validation and were quarantined");
+    private static final Histogram VALIDATION_SECONDS = MetricRegistry.histogram("export_validation_seconds",
+            "Time spent validating the orders of a whole export", Histogram.LATENCY_BUCKETS);
+    private static final String QUARANTINE_EXTENSION = ".json";
+    private static final String ERRORS_EXTENSION = ".errors.txt";
+    private static final int INDENT = 2;
+
+    private final OrderSchema schema;
+    private final ValidationReport report;
+    private final Path quarantine;
+    private final Path errors;
+    private Writer ordersWriter;
+    private Writer errorsWriter;
+    private long validationNanos;
+    private boolean closed;
+
+    // the rejected orders are only reported, e.g. those of a request to the invoice server
+    public OrderValidator(OrderSchema schema) {
+        this(schema, null, null);
+    }
+
+    // the rejected orders of the export go to <quarantine>.json and the errors to <quarantine>.errors.txt
+    public OrderValidator(OrderSchema schema, Path export, Path quarantine) {
+        this.schema = schema;
+        this.report = new ValidationReport(export);
+        this.quarantine = quarantine == null ? null
+                : quarantine.resolveSibling(quarantine.getFileName() + QUARANTINE_EXTENSION);
+        this.errors = quarantine == null ? null
+                : quarantine.resolveSibling(quarantine.getFileName() + ERRORS_EXTENSION);
+    }
+
+    // returns whether the next order of the export is valid, a rejected one is quarantined right away
+    public boolean check(Object order) throws IOException {
+        long start = System.nanoTime();
+        try {
+            List<String> orderErrors = schema.validate(order);
+            if (orderErrors.isEmpty()) {
+                report.accept();
+                return true;
+            }
+            ValidationReport.Rejection rejection = report.reject(orderNumberOf(order), orderErrors);
+            if (quarantine != null) quarantine(order, rejection);
+            return false;
+        } finally {
+            validationNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void quarantine(Object order, ValidationReport.Rejection rejection) throws IOException {
+        if (ordersWriter == null) {
+            Files.createDirectories(quarantine.toAbsolutePath().getParent());
+            ordersWriter = Files.newBufferedWriter(quarantine, StandardCharsets.UTF_8);
+            errorsWriter = Files.newBufferedWriter(errors, StandardCharsets.UTF_8);
+            ordersWriter.write("[\n");
+            report.setQuarantine(quarantine, errors);
+        } else {
+            ordersWriter.write(",\n");
+        }
+        ordersWriter.write(order instanceof JSONObject jsonOrder ? jsonOrder.toString(INDENT)
+                : JSONWriter.valueToString(order));
+        errorsWriter.write(rejection + "\n");
+        QUARANTINED.increment();
+    }
+
+    public ValidationReport getReport() {
+        return report;
+    }
+
+    // completes the quarantine files; the orders rejected so far stay quarantined even if the export turned out to
+    // be broken further on
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (report.getExport() != null) VALIDATION_SECONDS.observe(validationNanos / 1e9);
+        if (ordersWriter == null) return;
+        try {
+            close(ordersWriter, errorsWriter);
+        } finally {
+            ordersWriter = null;
+            errorsWriter = null;
+        }
+    }
+
+    private static void close(Writer ordersWriter, Writer errorsWriter) throws IOException {
+        try (errorsWriter; ordersWriter) {
+            ordersWriter.write("\n]\n");
+        }
+    }
+
+    private static String orderNumberOf(Object order) {
+        if (!(order instanceof JSONObject jsonOrder)) return null;
+        Object orderNumber = jsonOrder.opt(WooCommerceDataDeserializer.ORDER_NUMBER_KEY);
+        return orderNumber == null || orderNumber == JSONObject.NULL ? null : orderNumber.toString();
+    }
+}
@@ -0,0 +1,56 @@
+package data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import tenant.TenantFiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TenantDataDeserializer {
+    private static final String TENANTS_KEY = "tenants";
+    private static final String NAME_KEY = "name";
+    private static final String COMPANY_KEY = "company";
+    private static final String ORDERS_KEY = "orders";
+    private static final String INVOICE_KEY = "invoice";
+    private static final String NOTIFICATION_KEY = "notification";
+
+    private final Path filePath;
+    private final JSONObject rawData;
+    private Map<String, TenantFiles> data;
+
+    public TenantDataDeserializer(String filePath) throws IOException {
+        this.filePath = Path.of(filePath);
+        this.rawData = new JSONObject(Files.readString(this.filePath));
+        this.data = null;
+    }
+
+    // keeps the order of the file, a run processes the tenants in that order
+    public void deserialize() {
+        JSONArray tenants = rawData.getJSONArray(TENANTS_KEY);
+        Map<String, TenantFiles> files = new LinkedHashMap<>();
+        for (int i = 0; i < tenants.length(); i++) {
+            JSONObject tenant = tenants.getJSONObject(i);
+            String name = tenant.getString(NAME_KEY);
+            if (files.containsKey(name)) throw new IllegalArgumentException("The tenant " + name + " is defined twice");
+            files.put(name, new TenantFiles(name, resolve(tenant.getString(COMPANY_KEY)),
+                    tenant.has(ORDERS_KEY) ? resolve(tenant.getString(ORDERS_KEY)) : null,
+                    resolve(tenant.getString(INVOICE_KEY)), resolve(tenant.getString(NOTIFICATION_KEY))));
+        }
+        this.data = files;
+    }
+
+    // relative paths are relative to the tenants file
+    private String resolve(String path) {
+        Path parent = filePath.toAbsolutePath().getParent();
+        return parent.resolve(path).normalize().toString();
+    }
+
+    public Map<String, TenantFiles> getData() throws NotDeserializedYetException {
+        if (data == null) throw new NotDeserializedYetException("Call the method deserialize() first.");
+        return data;
+    }
+}
@@ -0,0 +1,72 @@
+package data;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// the outcome of validating an order export, all rejected orders at once instead of the first error
+public class ValidationReport {
+    public record Rejection(int index, String orderNumber, List<String> errors) {
+        @Override
+        public String toString() {
+            // the index is 1-based, like an editor counts
+            String order = "Order #" + (index + 1) + (orderNumber == null ? "" : " (" + orderNumber + ")");
+            return order + ": " + String.join("; ", errors);
+        }
+    }
+
+    // null for orders that do not come from an export file
+    private final Path export;
+    private final List<Rejection> rejections;
+    private int orderCount;
+    private Path quarantine;
+    private Path errorFile;
+
+    ValidationReport(Path export) {
+        this.export = export;
+        this.rejections = new ArrayList<>();
+        this.orderCount = 0;
+    }
+
+    void accept() {
+        orderCount++;
+    }
+
+    Rejection reject(String orderNumber, List<String> errors) {
+        Rejection rejection = new Rejection(orderCount, orderNumber, errors);
+        rejections.add(rejection);
+        orderCount++;
+        return rejection;
+    }
+
+    void setQuarantine(Path quarantine, Path errorFile) {
+        this.quarantine = quarantine;
+        this.errorFile = errorFile;
+    }
+
+    public boolean isValid() {
+        return rejections.isEmpty();
+    }
+
+    public Path getExport() {
+        return export;
+    }
+
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    // null if no order was rejected
+    public Path getQuarantine() {
+        return quarantine;
+    }
+
+    // null if no order was rejected
+    public Path getErrorFile() {
+        return errorFile;
+    }
+}
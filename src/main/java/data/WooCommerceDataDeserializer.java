@@ -1,10 +1,14 @@
 package data;
 
+import metrics.Histogram;
+import metrics.MetricRegistry;
 import model.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
@@ -13,46 +17,77 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class WooCommerceDataDeserializer {
-    private static final String ORDER_NUMBER_KEY = "order_number";
-    private static final String ORDER_DATE_KEY = "order_date";
-    private static final String FIRST_NAME_KEY = "billing_first_name";
-    private static final String LAST_NAME_KEY = "billing_last_name";
-    private static final String STREET_INFORMATION_KEY = "billing_address";
-    private static final String STREET_INFORMATION_SPLIT_REGEX = " ";
+    static final String ORDER_NUMBER_KEY = "order_number";
+    static final String ORDER_DATE_KEY = "order_date";
+    static final String FIRST_NAME_KEY = "billing_first_name";
+    static final String LAST_NAME_KEY = "billing_last_name";
+    static final String STREET_INFORMATION_KEY = "billing_address";
+    static final String STREET_INFORMATION_SPLIT_REGEX = " ";
     private static final int STREET_NAME_INDEX = 0;
-    private static final int STREET_NUMBER_INDEX = 1;
-    private static final String ZIP_CODE_KEY = "billing_postcode";
-    private static final String LOCATION_KEY = "billing_city";
-    private static final String COUNTRY_KEY = "billing_country";
-    private static final String EMAIL_KEY = "billing_email";
-    private static final String PHONE_KEY = "billing_phone";
-    private static final String PRODUCTS_KEY = "products";
-    private static final String PRODUCT_NAME_KEY = "name";
-    private static final String PRODUCT_PRICE_KEY = "item_price";
-    private static final String PRODUCT_AMOUNT_KEY = "qty";
-    private static final String SHIPPING_PRICE_KEY = "order_shipping";
-    private static final DateTimeFormatter WOO_COMMERCE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    static final int STREET_NUMBER_INDEX = 1;
+    static final String ZIP_CODE_KEY = "billing_postcode";
+    static final String LOCATION_KEY = "billing_city";
+    static final String COUNTRY_KEY = "billing_country";
+    static final String EMAIL_KEY = "billing_email";
+    static final String PHONE_KEY = "billing_phone";
+    static final String PRODUCTS_KEY = "products";
+    static final String PRODUCT_NAME_KEY = "name";
+    static final String PRODUCT_PRICE_KEY = "item_price";
+    static final String PRODUCT_AMOUNT_KEY = "qty";
+    static final String SHIPPING_PRICE_KEY = "order_shipping";
+    static final DateTimeFormatter WOO_COMMERCE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
     private static final String DEFAULT_SHIPPING_NAME = "Versand";
     private static final int DEFAULT_SHIPPING_AMOUNT = 1;
 
+    static final Histogram ORDER_PARSE_SECONDS = MetricRegistry.histogram("order_parse_seconds",
+            "Time to parse a single order of the export, in streaming mode including the tokenization",
+            Histogram.LATENCY_BUCKETS);
+    private static final Histogram FILE_PARSE_SECONDS = MetricRegistry.histogram("orders_file_parse_seconds",
+            "Time to read and tokenize a whole order export before the orders are parsed", Histogram.LATENCY_BUCKETS);
+
     private String filePath;
     private JSONArray rawData;
     private List<Order> data;
+    // without an index, the customer number is a hash of the name
+    private CustomerIndex customerIndex;
+    private OrderValidator validator;
+
+    // for orders that do not come from an export file, e.g. the ones posted to the invoice server
+    public WooCommerceDataDeserializer() {
+        this(null);
+    }
 
-    public WooCommerceDataDeserializer(String filePath) throws IOException {
+    public WooCommerceDataDeserializer(String filePath) {
         this.filePath = filePath;
-        this.rawData = new JSONArray(Files.readString(Path.of(filePath)));
+        this.rawData = null;
         this.data = new ArrayList<>();
     }
 
-    public void deserialize() {
-        for (Object jsonObject : rawData) {
-            JSONObject jsonOrder = (JSONObject) jsonObject;
+    public void deserialize() throws IOException {
+        if (rawData == null) {
+            long start = System.nanoTime();
+            rawData = new JSONArray(Files.readString(Path.of(filePath)));
+            FILE_PARSE_SECONDS.observeSince(start);
+        }
+        for (int i = 0; i < rawData.length(); i++) {
+            // the orders that the validator rejects are quarantined and skipped
+            if (validator != null && !validator.check(rawData.get(i))) continue;
+            JSONObject jsonOrder = rawData.getJSONObject(i);
+            long start = System.nanoTime();
             data.add(deserializeOrder(jsonOrder));
+            ORDER_PARSE_SECONDS.observeSince(start);
         }
     }
 
-    private Order deserializeOrder(JSONObject jsonOrder) {
+    public WooCommerceOrderStream stream() throws IOException {
+        return stream(Files.newBufferedReader(Path.of(filePath), StandardCharsets.UTF_8));
+    }
+
+    public WooCommerceOrderStream stream(Reader reader) {
+        return new WooCommerceOrderStream(this, reader, validator);
+    }
+
+    public Order deserializeOrder(JSONObject jsonOrder) {
         String orderNumber = jsonOrder.getString(ORDER_NUMBER_KEY);
         String orderDate = jsonOrder.getString(ORDER_DATE_KEY);
         Customer customer = deserializeCustomer(jsonOrder);
@@ -65,6 +100,7 @@ public class WooCommerceDataDeserializer {
         String lastName = jsonOrder.getString(LAST_NAME_KEY);
         Address address = deserializeAddress(jsonOrder);
         Contact contact = deserializeContact(jsonOrder);
+        if (customerIndex != null) return customerIndex.resolve(firstName, lastName, address, contact);
         int customerId = Customer.UNDEFINED_CUSTOMER_ID;
         Customer customer = new Customer(firstName, lastName, address, contact, customerId);
         customer.setCustomerId(customer.hashCode());
@@ -93,7 +129,7 @@ public class WooCommerceDataDeserializer {
         for (Object jsonObject : jsonProducts) {
             JSONObject jsonProduct = (JSONObject) jsonObject;
             String name = jsonProduct.getString(PRODUCT_NAME_KEY);
-            double price = jsonProduct.getDouble(PRODUCT_PRICE_KEY);
+            long price = Money.parseCents(jsonProduct.get(PRODUCT_PRICE_KEY).toString());
             int amount = Integer.parseInt(jsonProduct.getString(PRODUCT_AMOUNT_KEY));
             products.add(new Product(name, price, amount));
         }
@@ -102,7 +138,7 @@ public class WooCommerceDataDeserializer {
     }
 
     private Product deserializeShipping(JSONObject jsonOrder) {
-        double price = jsonOrder.getDouble(SHIPPING_PRICE_KEY);
+        long price = Money.parseCents(jsonOrder.get(SHIPPING_PRICE_KEY).toString());
         return new Product(DEFAULT_SHIPPING_NAME, price, DEFAULT_SHIPPING_AMOUNT);
     }
 
@@ -130,4 +166,21 @@ public class WooCommerceDataDeserializer {
     public void setData(List<Order> data) {
         this.data = data;
     }
+
+    public CustomerIndex getCustomerIndex() {
+        return customerIndex;
+    }
+
+    public void setCustomerIndex(CustomerIndex customerIndex) {
+        this.customerIndex = customerIndex;
+    }
+
+    public OrderValidator getValidator() {
+        return validator;
+    }
+
+    // checks every order while it is read and skips the rejected ones
+    public void setValidator(OrderValidator validator) {
+        this.validator = validator;
+    }
 }
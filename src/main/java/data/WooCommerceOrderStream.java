@@ -0,0 +1,102 @@
+package data;
+
+import model.Order;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class WooCommerceOrderStream implements Iterator<Order>, Closeable {
+    private static final char ARRAY_START = '[';
+    private static final char ARRAY_END = ']';
+    private static final char VALUE_SEPARATOR = ',';
+
+    private final WooCommerceDataDeserializer deserializer;
+    private final Reader reader;
+    private final JSONTokener tokener;
+    private final OrderValidator validator;
+    private boolean started;
+    private boolean finished;
+    private Order next;
+
+    WooCommerceOrderStream(WooCommerceDataDeserializer deserializer, Reader reader, OrderValidator validator) {
+        this.deserializer = deserializer;
+        this.reader = reader;
+        this.tokener = new JSONTokener(reader);
+        this.validator = validator;
+        this.started = false;
+        this.finished = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && hasNextObject()) {
+            long start = System.nanoTime();
+            Object value = nextValue();
+            // the orders that the validator rejects are quarantined and skipped
+            if (validator != null && !check(value)) continue;
+            if (!(value instanceof JSONObject jsonOrder)) throw tokener.syntaxError("An order must be a JSON object");
+            next = deserializer.deserializeOrder(jsonOrder);
+            WooCommerceDataDeserializer.ORDER_PARSE_SECONDS.observeSince(start);
+        }
+        return next != null;
+    }
+
+    @Override
+    public Order next() {
+        if (!hasNext()) throw new NoSuchElementException("The order export has no more orders.");
+        Order order = next;
+        next = null;
+        return order;
+    }
+
+    // called while orders are streamed, hence the unchecked exception
+    private boolean check(Object value) {
+        try {
+            return validator.check(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not quarantine an order", e);
+        }
+    }
+
+    private boolean hasNextObject() {
+        if (finished) return false;
+
+        if (!started) {
+            started = true;
+            if (tokener.nextClean() != ARRAY_START) throw tokener.syntaxError("An order export must start with '['");
+            if (tokener.nextClean() == ARRAY_END) {
+                finished = true;
+                return false;
+            }
+            tokener.back();
+        }
+        return true;
+    }
+
+    // the next order of the export as it is, without deserializing it
+    private Object nextValue() {
+        if (!hasNextObject()) throw new NoSuchElementException("The order export has no more orders.");
+
+        Object value = tokener.nextValue();
+        char separator = tokener.nextClean();
+        if (separator == ARRAY_END) {
+            finished = true;
+        } else if (separator != VALUE_SEPARATOR) {
+            throw tokener.syntaxError("Expected ',' or ']' after an order");
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        next = null;
+        reader.close();
+    }
+}
@@ -0,0 +1,37 @@
+package document;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// a map that drops its least recently used entry once it holds more than its capacity; the caches of the templates
+// are shared by all shops of a process, so they must not keep every configuration that was ever loaded
+final class BoundedCache<K, V> {
+    private final LinkedHashMap<K, V> entries;
+
+    BoundedCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("The cache must hold at least one entry.");
+        // in access order, the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,45 @@
+package document;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfDocument;
+import com.itextpdf.text.pdf.PdfEncryption;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.internal.PdfIsoKeys;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// a PdfWriter whose file identifier is given instead of drawn from the clock; iText takes the permanent identifier
+// from originalFileID but still draws the changing one at random for such a document, so both are set to the given
+// one when the writer checks the trailer, right before it is written
+class FixedIdPdfWriter extends PdfWriter {
+    private final PdfObject fileId;
+
+    private FixedIdPdfWriter(PdfDocument pdf, OutputStream os, byte[] fileId) throws IOException {
+        super(pdf, os);
+        this.originalFileID = fileId;
+        this.fileId = PdfEncryption.createInfoId(fileId, false);
+    }
+
+    // the same as PdfWriter.getInstance
+    static FixedIdPdfWriter getInstance(Document document, OutputStream os, byte[] fileId)
+            throws DocumentException, IOException {
+        PdfDocument pdf = new PdfDocument();
+        document.addDocListener(pdf);
+        FixedIdPdfWriter writer = new FixedIdPdfWriter(pdf, os, fileId);
+        pdf.addWriter(writer);
+        return writer;
+    }
+
+    @Override
+    public void checkPdfIsoConformance(int key, Object obj) {
+        if (key == PdfIsoKeys.PDFISOKEY_TRAILER && obj instanceof PdfDictionary trailer) {
+            trailer.put(PdfName.ID, fileId);
+        }
+        super.checkPdfIsoConformance(key, obj);
+    }
+}
@@ -0,0 +1,131 @@
+package document;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+// formats fixed point numbers, e.g. cents with a scale of 2, like a DecimalFormat with the same pattern and the
+// default locale, but without any shared mutable state, so one instance serves all threads; patterns beyond digits,
+// grouping, a decimal point and a literal prefix or suffix fall back to a DecimalFormat per thread
+public class FixedPointFormat {
+    private static final String NUMBER_CHARACTERS = "#0,.";
+    private static final String UNSUPPORTED_CHARACTERS = ";%\u2030\u00a4E'-";
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final int MAX_DIGITS = 40;
+
+    private final String pattern;
+    private final int scale;
+    private final String prefix;
+    private final String suffix;
+    private final int minIntegerDigits;
+    private final int minFractionDigits;
+    private final int maxFractionDigits;
+    private final int groupingSize;
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+    private final char minusSign;
+    private final ThreadLocal<DecimalFormat> fallback;
+
+    public FixedPointFormat(String pattern, int scale) {
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) throw new IllegalArgumentException("Unsupported scale: " + scale);
+        this.pattern = pattern;
+        this.scale = scale;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.groupingSeparator = symbols.getGroupingSeparator();
+        this.minusSign = symbols.getMinusSign();
+
+        int start = 0;
+        while (start < pattern.length() && NUMBER_CHARACTERS.indexOf(pattern.charAt(start)) < 0) start++;
+        int end = start;
+        while (end < pattern.length() && NUMBER_CHARACTERS.indexOf(pattern.charAt(end)) >= 0) end++;
+        String number = pattern.substring(start, end);
+        this.prefix = pattern.substring(0, start);
+        this.suffix = pattern.substring(end);
+
+        int point = number.indexOf('.');
+        String integerPart = point < 0 ? number : number.substring(0, point);
+        String fractionPart = point < 0 ? "" : number.substring(point + 1);
+        int grouping = integerPart.lastIndexOf(',');
+
+        boolean supported = !number.isEmpty() && !containsAny(prefix + suffix, UNSUPPORTED_CHARACTERS)
+                && fractionPart.indexOf('.') < 0 && fractionPart.indexOf(',') < 0
+                && fractionPart.matches("0*#*") && integerPart.replace(",", "").matches("#*0*")
+                && count(fractionPart, '0') + count(fractionPart, '#') < POWERS_OF_TEN.length;
+        this.minIntegerDigits = count(integerPart, '0');
+        this.minFractionDigits = count(fractionPart, '0');
+        this.maxFractionDigits = minFractionDigits + count(fractionPart, '#');
+        this.groupingSize = grouping < 0 ? 0 : integerPart.length() - grouping - 1;
+        this.fallback = supported && (grouping < 0 || groupingSize > 0) ? null
+                : ThreadLocal.withInitial(() -> new DecimalFormat(pattern));
+    }
+
+    public String format(long unscaled) {
+        if (fallback != null || unscaled == Long.MIN_VALUE) {
+            DecimalFormat format = fallback != null ? fallback.get() : new DecimalFormat(pattern);
+            return format.format(BigDecimal.valueOf(unscaled, scale));
+        }
+        char[] digits = new char[MAX_DIGITS + prefix.length() + suffix.length()];
+        int start = format(unscaled, digits);
+        return new String(digits, start, digits.length - start);
+    }
+
+    // writes right-aligned into the given array without allocating and returns where the text starts
+    private int format(long unscaled, char[] out) {
+        boolean negative = unscaled < 0;
+        long value = Math.abs(unscaled);
+        int fractionDigits = scale;
+        if (maxFractionDigits < scale) {
+            // DecimalFormat rounds half even
+            long divisor = POWERS_OF_TEN[scale - maxFractionDigits];
+            long quotient = value / divisor;
+            long remainder = value % divisor;
+            if (2 * remainder > divisor || 2 * remainder == divisor && (quotient & 1) == 1) quotient++;
+            value = quotient;
+            fractionDigits = maxFractionDigits;
+        }
+        long integer = value / POWERS_OF_TEN[fractionDigits];
+        long fraction = (value % POWERS_OF_TEN[fractionDigits]) * POWERS_OF_TEN[maxFractionDigits - fractionDigits];
+
+        int shownFractionDigits = maxFractionDigits;
+        while (shownFractionDigits > minFractionDigits && fraction % 10 == 0) {
+            fraction /= 10;
+            shownFractionDigits--;
+        }
+
+        int position = out.length;
+        for (int i = suffix.length() - 1; i >= 0; i--) out[--position] = suffix.charAt(i);
+        for (int i = 0; i < shownFractionDigits; i++, fraction /= 10) out[--position] = (char) ('0' + fraction % 10);
+        if (shownFractionDigits > 0) out[--position] = decimalSeparator;
+
+        int minDigits = integer == 0 ? Math.max(1, minIntegerDigits) : minIntegerDigits;
+        for (int digit = 0; integer > 0 || digit < minDigits; digit++, integer /= 10) {
+            if (groupingSize > 0 && digit > 0 && digit % groupingSize == 0) out[--position] = groupingSeparator;
+            out[--position] = (char) ('0' + integer % 10);
+        }
+
+        for (int i = prefix.length() - 1; i >= 0; i--) out[--position] = prefix.charAt(i);
+        // like DecimalFormat, a negative amount keeps its sign when it is rounded to zero
+        if (negative) out[--position] = minusSign;
+        return position;
+    }
+
+    private static int count(String text, char c) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) count++;
+        }
+        return count;
+    }
+
+    private static boolean containsAny(String text, String characters) {
+        for (int i = 0; i < text.length(); i++) {
+            if (characters.indexOf(text.charAt(i)) >= 0) return true;
+        }
+        return false;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+}
@@ -0,0 +1,94 @@
+package document;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.ImgRaw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.zip.DeflaterOutputStream;
+
+public final class ImageCache {
+    private static final long UNKNOWN_MODIFICATION_TIME = -1;
+    // the logo, lettering and signature of a few dozen shops
+    private static final int CAPACITY = 64;
+    private static final BoundedCache<Key, Entry> ENTRIES = new BoundedCache<>(CAPACITY);
+
+    private ImageCache() {
+    }
+
+    public static Image getInstance(String path, int scalePercent) throws DocumentException, IOException {
+        Key key = new Key(path, scalePercent);
+        long lastModified = lastModified(path);
+
+        Entry entry = ENTRIES.get(key);
+        if (entry == null || entry.lastModified() != lastModified) {
+            Image image = precompress(Image.getInstance(path));
+            image.scalePercent(scalePercent);
+            entry = new Entry(image, lastModified);
+            ENTRIES.put(key, entry);
+        }
+
+        // hand out a shallow copy: it shares the decoded image data and the serial id of the cached prototype,
+        // but iText may modify positioning and scaling of the copy while laying out a document
+        return Image.getInstance(entry.image());
+    }
+
+    public static void clear() {
+        ENTRIES.clear();
+    }
+
+    public static int size() {
+        return ENTRIES.size();
+    }
+
+    private static Image precompress(Image image) throws DocumentException, IOException {
+        // decoded images (e.g. PNGs with an alpha channel) would be flate compressed again by every PdfWriter
+        if (!(image instanceof ImgRaw) || image.isDeflated()) return image;
+
+        Image compressed = new ImgRaw((int) image.getWidth(), (int) image.getHeight(), image.getColorspace(),
+                image.getBpc(), deflate(image.getRawData()));
+        compressed.setDeflated(true);
+        compressed.setTransparency(image.getTransparency());
+        compressed.setAdditional(image.getAdditional());
+        compressed.setDpi(image.getDpiX(), image.getDpiY());
+        compressed.setXYRatio(image.getXYRatio());
+        compressed.setOriginalType(image.getOriginalType());
+        compressed.setInterpolation(image.isInterpolation());
+        compressed.setInverted(image.isInverted());
+        if (image.hasICCProfile()) compressed.tagICC(image.getICCProfile());
+        if (image.isMask()) {
+            compressed.makeMask();
+            compressed.setSmask(image.isSmask());
+        }
+        if (image.getImageMask() != null) compressed.setImageMask(precompress(image.getImageMask()));
+        return compressed;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static long lastModified(String path) {
+        try {
+            Path file = Path.of(path);
+            return Files.isRegularFile(file) ? Files.getLastModifiedTime(file).toMillis() : UNKNOWN_MODIFICATION_TIME;
+        } catch (InvalidPathException | IOException e) {
+            // URLs and other non-file locations are cached until clear() is called
+            return UNKNOWN_MODIFICATION_TIME;
+        }
+    }
+
+    private record Key(String path, int scalePercent) {
+    }
+
+    private record Entry(Image image, long lastModified) {
+    }
+}
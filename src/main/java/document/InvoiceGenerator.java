@@ -1,143 +1,132 @@
 package document;
 
 import com.itextpdf.text.*;
+import com.itextpdf.text.pdf.OutputStreamCounter;
+import com.itextpdf.text.pdf.PdfDate;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
 import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfWriter;
-import com.itextpdf.text.pdf.draw.LineSeparator;
+import data.ContentDigest;
+import metrics.Histogram;
+import metrics.MetricRegistry;
 import model.Company;
 import model.Order;
 import model.Product;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.io.OutputStream;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.HexFormat;
 import java.util.List;
 
 public class InvoiceGenerator {
-    private static final BaseColor PRIMARY_COLOR = BaseColor.BLACK;
-    private static final BaseColor SECONDARY_COLOR = BaseColor.GRAY;
-    private static final String FONT_FAMILY = FontFactory.HELVETICA;
     private static final String FILE_TYPE = ".pdf";
-
+    private static final int STREAMING_TABLE_LINES = 100;
+    private static final int TABLE_CHUNK_ROWS = 50;
+    private static final int FILE_ID_BYTES = 16;
+    // raise it whenever a change to this class changes the rendered invoices, so that existing ones are rendered again
+    private static final String RENDER_VERSION = "1/" + Version.getInstance().getVersion();
+    private static final Histogram RENDER_SECONDS = MetricRegistry.histogram("invoice_render_seconds",
+            "Time to render a single invoice PDF", Histogram.LATENCY_BUCKETS);
+    private static final Histogram PDF_BYTES = MetricRegistry.histogram("invoice_pdf_bytes",
+            "Size of a rendered invoice PDF in bytes", Histogram.SIZE_BUCKETS);
+
+    private final InvoiceTemplate template;
     private final InvoiceConfiguration config;
-    private final Company company;
     private final Order order;
     private final LocalDate invoiceDate;
     private final LocalDate performanceDate;
     private final List<Product> products;
 
-    private final Font headerFont;
-    private final Font headingFont;
-    private final Font paragraphFont;
-    private final Font footerFont;
-    private final LineSeparator lineSeparator;
-    private final DateTimeFormatter dateFormatReadable;
-    private final DecimalFormat currencyFormat;
-    private final DecimalFormat quantityFormat;
+    // taken from the template when rendering, an invoice that is not rendered does not load iText
+    private Font paragraphFont;
+    private FixedPointFormat currencyFormat;
+    private FixedPointFormat quantityFormat;
 
     private final String id;
     private final String fileName;
+    private String digest;
 
     public InvoiceGenerator(InvoiceConfiguration config,
                             Company company,
+                            Order order,
+                            LocalDate performanceDate) throws DocumentException, IOException {
+        this(new InvoiceTemplate(config, company), order, performanceDate);
+    }
+
+    public InvoiceGenerator(InvoiceTemplate template,
                             Order order,
                             LocalDate performanceDate) {
-        this.config = config;
-        this.company = company;
+        this.template = template;
+        this.config = template.getConfig();
         this.order = order;
         this.invoiceDate = order.orderDate();
         this.performanceDate = performanceDate;
         this.products = order.products();
         String basePath = config.outputPath();
 
-        this.headerFont = FontFactory.getFont(FONT_FAMILY, config.headerFontSize(), PRIMARY_COLOR);
-        this.headingFont = FontFactory.getFont(FONT_FAMILY, config.headingFontSize(), PRIMARY_COLOR);
-        this.paragraphFont = FontFactory.getFont(FONT_FAMILY, config.paragraphFontSize(), PRIMARY_COLOR);
-        this.footerFont = FontFactory.getFont(FONT_FAMILY, config.footerFontSize(), SECONDARY_COLOR);
-        this.lineSeparator = new LineSeparator(config.lineSeparatorWidth(), config.contentWidth(),
-                PRIMARY_COLOR, Element.ALIGN_BOTTOM, config.lineSeparatorOffset());
-        this.dateFormatReadable = DateTimeFormatter.ofPattern(config.dateFormatReadable());
-        this.currencyFormat = new DecimalFormat(config.currencyFormat());
-        this.quantityFormat = new DecimalFormat(config.quantityFormat());
-
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern(config.dateFormat());
-        this.id = invoiceDate.format(dateFormat) + "-" + order.orderNumber();
+        this.id = invoiceDate.format(template.getDateFormat()) + "-" + order.orderNumber();
         this.fileName = basePath + id + FILE_TYPE;
     }
 
     public void generate() throws IOException, DocumentException {
+        generate(new FileOutputStream(fileName));
+    }
+
+    public void generate(OutputStream outputStream) throws IOException, DocumentException {
+        long start = System.nanoTime();
+        template.prepare();
+        this.paragraphFont = template.getParagraphFont();
+        this.currencyFormat = template.getCurrencyFormat();
+        this.quantityFormat = template.getQuantityFormat();
+        OutputStreamCounter counter = new OutputStreamCounter(outputStream);
         Document document = new Document();
-        PdfWriter.getInstance(document, new FileOutputStream(fileName));
+        // the same inputs give the same bytes: dated by the invoice instead of the clock and identified by the digest
+        PdfWriter writer = FixedIdPdfWriter.getInstance(document, counter, fileId());
+        PdfDate date = new PdfDate(GregorianCalendar.from(invoiceDate.atStartOfDay(ZoneOffset.UTC)));
+        PdfDictionary info = writer.getInfo();
+        info.put(PdfName.CREATIONDATE, date);
+        info.put(PdfName.MODDATE, date);
 
         document.open();
 
-        document.add(generateHeader());
-        document.add(lineSeparator);
+        document.add(template.newHeader());
+        document.add(template.getLineSeparator());
         document.add(generateDataTable());
-        document.add(lineSeparator);
+        document.add(template.getLineSeparator());
         document.add(generateHeading());
         document.add(Chunk.NEWLINE);
         document.add(new Paragraph(config.paragraph1() + " " + order.customer().getLastName() + ",", paragraphFont));
         document.add(Chunk.NEWLINE);
         document.add(new Paragraph(config.paragraph2(), paragraphFont));
-        document.add(generateProductTable());
+        if (products.size() > STREAMING_TABLE_LINES) {
+            addProductTableInChunks(document);
+        } else {
+            document.add(generateProductTable());
+        }
         document.add(new Paragraph(config.paragraph3(), paragraphFont));
-        document.add(generateSignature());
-        document.add(new Paragraph(company.shareholders().get(0).getFirstName() + " " +
-                company.shareholders().get(0).getLastName() + " (" + company.address().location() +
-                ", " + invoiceDate.format(dateFormatReadable) + ")", paragraphFont));
-        document.add(generateFooter());
+        document.add(template.newSignature());
+        document.add(new Paragraph(template.formatSignature(invoiceDate), paragraphFont));
+        document.add(template.newFooter());
 
         document.close();
+
+        RENDER_SECONDS.observeSince(start);
+        PDF_BYTES.observe(counter.getCounter());
     }
 
     private Paragraph generateHeading() {
-        Paragraph heading = new Paragraph(config.heading() + " " + id, headingFont);
+        Paragraph heading = new Paragraph(config.heading() + " " + id, template.getHeadingFont());
         heading.setSpacingBefore(config.defaultSpacing());
         return heading;
     }
 
-    private Table generateHeader() throws DocumentException, IOException {
-        Paragraph title = new Paragraph(config.header(), headerFont);
-        PdfPCell headingCell = new PdfPCell(title);
-        headingCell.setHorizontalAlignment(Element.ALIGN_LEFT);
-        headingCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-        headingCell.setBorder(0);
-
-        Image lettering = Image.getInstance(config.letteringPath());
-        lettering.scalePercent(config.letteringScalePercent());
-        PdfPCell letteringCell = new PdfPCell(lettering);
-        letteringCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-        letteringCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-        letteringCell.setBorder(0);
-
-        Image logo = Image.getInstance(config.logoPath());
-        logo.scalePercent(config.logoScalePercent());
-        PdfPCell logoCell = new PdfPCell(logo);
-        logoCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-        logoCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-        logoCell.setBorder(0);
-
-        Table innerHeader = new Table(2);
-        innerHeader.setWidths(config.headerTableProportions());
-        innerHeader.addCell(letteringCell);
-        innerHeader.addCell(logoCell);
-        PdfPCell innerHeaderCell = new PdfPCell(innerHeader);
-        innerHeaderCell.setBorder(0);
-
-        Table header = new Table(2);
-        header.setWidthPercentage(config.contentWidth());
-
-        header.addCell(headingCell);
-        header.addCell(innerHeaderCell);
-
-        return header;
-    }
-
     private Table generateDataTable() throws DocumentException {
         Table table = new Table(2);
         table.setSpacingBefore(config.defaultSpacing());
@@ -145,8 +134,8 @@ public class InvoiceGenerator {
         table.setWidths(config.dataTableProportions());
 
         List<PdfPCell> customerInformation = initCustomerInformation();
-        List<PdfPCell> companyInformation = initCompanyInformation(paragraphFont);
-        PdfPCell emptyCell = initParagraphCell(" ", paragraphFont);
+        List<PdfPCell> companyInformation = template.getCompanyInformation();
+        PdfPCell emptyCell = template.getEmptyCell();
 
         List<PdfPCell> cells = Arrays.asList(
                 customerInformation.get(0), companyInformation.get(0),
@@ -167,65 +156,82 @@ public class InvoiceGenerator {
         Table table = new Table(2);
         table.setWidths(config.innerDataTableProportions());
 
-        PdfPCell companyPhoneALabelCell = initParagraphCell(config.phoneLabel() + " (" + company.shareholders().get(0).getLastName() + "):", paragraphFont);
-        PdfPCell companyPhoneBLabelCell = initParagraphCell(config.phoneLabel() + " (" + company.shareholders().get(1).getLastName() + "):", paragraphFont);
-        PdfPCell companyMailLabelCell = initParagraphCell(config.emailLabel() + ":", paragraphFont);
-
-        PdfPCell companyPhoneACell = initParagraphCell(company.shareholders().get(0).getContact().phoneNumber(), paragraphFont);
-        PdfPCell companyPhoneBCell = initParagraphCell(company.shareholders().get(1).getContact().phoneNumber(), paragraphFont);
-        PdfPCell companyMailCell = initParagraphCell(company.shareholders().get(1).getContact().email(), paragraphFont);
-
-        PdfPCell invoiceNumberLabelCell = initParagraphCell(config.invoiceNumberLabel() + ":", paragraphFont);
-        PdfPCell customerNumberLabelCell = initParagraphCell(config.customerIdLabel() + ":", paragraphFont);
-        PdfPCell invoiceDateLabelCell = initParagraphCell(config.invoiceDateLabel() + ":", paragraphFont);
-        PdfPCell performanceDateLabelCell = initParagraphCell(config.performanceDateLabel() + ":", paragraphFont);
-
+        List<PdfPCell> labels = template.getInvoiceInformationLabels();
         PdfPCell invoiceNumberCell = initParagraphCell(id, paragraphFont);
         PdfPCell customerNumberCell = initParagraphCell(String.valueOf(order.customer().getCustomerId()), paragraphFont);
-        PdfPCell invoiceDateCell = initParagraphCell(invoiceDate.format(dateFormatReadable), paragraphFont);
-        PdfPCell performanceDateCell = initParagraphCell(performanceDate.format(dateFormatReadable), paragraphFont);
+        PdfPCell invoiceDateCell = initParagraphCell(invoiceDate.format(template.getDateFormatReadable()), paragraphFont);
+        PdfPCell performanceDateCell = initParagraphCell(performanceDate.format(template.getDateFormatReadable()), paragraphFont);
 
-        List<PdfPCell> cells = Arrays.asList(
-                companyPhoneALabelCell, companyPhoneACell,
-                companyPhoneBLabelCell, companyPhoneBCell,
-                companyMailLabelCell, companyMailCell,
-                invoiceNumberLabelCell, invoiceNumberCell,
-                customerNumberLabelCell, customerNumberCell,
-                invoiceDateLabelCell, invoiceDateCell,
-                performanceDateLabelCell, performanceDateCell);
-
-        table.addAll(cells);
+        table.addAll(template.getCompanyContactInformation());
+        table.addAll(Arrays.asList(
+                labels.get(0), invoiceNumberCell,
+                labels.get(1), customerNumberCell,
+                labels.get(2), invoiceDateCell,
+                labels.get(3), performanceDateCell));
         table.setBorders(0);
 
         return new PdfPCell(table);
     }
 
+    // lays out and releases the rows of a large order every few rows instead of building the whole table first,
+    // the header row is repeated on every page
+    private void addProductTableInChunks(Document document) throws DocumentException {
+        Table table = new Table(4);
+        table.setComplete(false);
+        table.setSpacingBefore(config.defaultSpacing());
+        table.setWidthPercentage(config.contentWidth());
+        table.addAll(template.getProductTableHeader());
+        table.setHeaderRows(1);
+
+        long sum = 0;
+        int rows = 0;
+        for (Product product : products) {
+            long total = product.total();
+            table.addCell(initParagraphCell(product.name(), paragraphFont));
+            table.addCell(initParagraphCell(quantityFormat.format(product.amount()), paragraphFont));
+            table.addCell(initParagraphCell(currencyFormat.format(product.price()), paragraphFont));
+            table.addCell(initParagraphCell(currencyFormat.format(total), paragraphFont));
+            sum = Math.addExact(sum, total);
+
+            if (++rows % TABLE_CHUNK_ROWS == 0) {
+                document.add(table);
+                // the spacing belongs to the table as a whole, not to every chunk of it
+                table.setSpacingBefore(0);
+            }
+        }
+
+        PdfPCell emptyCell = template.getEmptyCell();
+        table.addAll(Arrays.asList(emptyCell, emptyCell,
+                template.getProductsSumLabelCell(),
+                initParagraphCell(currencyFormat.format(sum), paragraphFont)));
+        table.setSpacingAfter(config.defaultSpacing() - 10);
+        table.setComplete(true);
+        document.add(table);
+    }
+
     private Table generateProductTable() {
         Table table = new Table(4);
         table.setSpacingBefore(config.defaultSpacing());
         table.setSpacingAfter(config.defaultSpacing() - 10);
         table.setWidthPercentage(config.contentWidth());
 
-        PdfPCell declarationHeaderCell = initParagraphCell(config.productDeclarationLabel(), paragraphFont);
-        PdfPCell amountHeaderCell = initParagraphCell(config.productQuantityLabel(), paragraphFont);
-        PdfPCell singlePriceHeaderCell = initParagraphCell(config.productSinglePriceLabel(), paragraphFont);
-        PdfPCell sumPriceHeaderCell = initParagraphCell(config.productSumPriceLabel(), paragraphFont);
-        PdfPCell emptyCell = initParagraphCell(" ", paragraphFont);
+        PdfPCell emptyCell = template.getEmptyCell();
 
-        List<PdfPCell> cells = new ArrayList<>(Arrays.asList(declarationHeaderCell, amountHeaderCell, singlePriceHeaderCell, sumPriceHeaderCell));
+        List<PdfPCell> cells = new ArrayList<>(template.getProductTableHeader());
 
-        double sum = 0;
+        long sum = 0;
         for (Product product : products) {
+            long total = product.total();
             PdfPCell productNameCell = initParagraphCell(product.name(), paragraphFont);
             PdfPCell productAmountCell = initParagraphCell(quantityFormat.format(product.amount()), paragraphFont);
             PdfPCell productPriceCell = initParagraphCell(currencyFormat.format(product.price()), paragraphFont);
-            PdfPCell productSumCell = initParagraphCell(currencyFormat.format(product.price() * product.amount()), paragraphFont);
+            PdfPCell productSumCell = initParagraphCell(currencyFormat.format(total), paragraphFont);
             cells.addAll(Arrays.asList(productNameCell, productAmountCell, productPriceCell, productSumCell));
-            sum += product.price() * product.amount();
+            sum = Math.addExact(sum, total);
         }
 
         cells.addAll(Arrays.asList(emptyCell, emptyCell,
-                initParagraphCell(config.productsSumPriceLabel() + ":", paragraphFont),
+                template.getProductsSumLabelCell(),
                 initParagraphCell(currencyFormat.format(sum), paragraphFont)));
 
         table.addAll(cells);
@@ -234,50 +240,11 @@ public class InvoiceGenerator {
         return table;
     }
 
-    private Image generateSignature() throws BadElementException, IOException {
-        Image image = Image.getInstance(config.signaturePath());
-        image.scalePercent(config.signatureScalePercent());
-        return image;
-    }
-
-    private Table generateFooter() {
-        Table table = new Table(2);
-        table.setWidthPercentage(config.contentWidth());
-        table.setSpacingBefore(config.defaultSpacing());
-
-        List<PdfPCell> companyInformation = initCompanyInformation(footerFont);
-        List<PdfPCell> companyFinancialInformation = initCompanyFinancialInformation();
-
-        for (PdfPCell pdfPCell : companyFinancialInformation) {
-            pdfPCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        }
-
-        table.addAll(Arrays.asList(
-                companyInformation.get(0), companyFinancialInformation.get(0),
-                companyInformation.get(1), companyFinancialInformation.get(1),
-                companyInformation.get(2), companyFinancialInformation.get(2),
-                companyInformation.get(3), companyFinancialInformation.get(3)
-        ));
-
-        table.setBorders(0);
-
-        return table;
-    }
-
     private PdfPCell initParagraphCell(String text, Font font) {
         Paragraph customerNameParagraph = new Paragraph(text, font);
         return new PdfPCell(customerNameParagraph);
     }
 
-    private List<PdfPCell> initCompanyInformation(Font font) {
-        PdfPCell companyNameCell = initParagraphCell(company.name(), font);
-        PdfPCell companyDeclarationCell = initParagraphCell(company.declaration(), font);
-        PdfPCell companyStreetCell = initParagraphCell(company.address().street() + " " + company.address().streetNumber(), font);
-        PdfPCell companyLocationCell = initParagraphCell(company.address().zipCode() + " " + company.address().location(), font);
-        PdfPCell companyCountryCell = initParagraphCell(company.address().country(), font);
-        return Arrays.asList(companyNameCell, companyDeclarationCell, companyStreetCell, companyLocationCell, companyCountryCell);
-    }
-
     private List<PdfPCell> initCustomerInformation() {
         PdfPCell customerNameCell = initParagraphCell(order.customer().getFirstName() + " " + order.customer().getLastName(), paragraphFont);
         PdfPCell customerStreetCell = initParagraphCell(order.customer().getAddress().street() + " " + order.customer().getAddress().streetNumber(), paragraphFont);
@@ -286,14 +253,6 @@ public class InvoiceGenerator {
         return Arrays.asList(customerNameCell, customerStreetCell, customerLocationCell, customerCountryCell);
     }
 
-    private List<PdfPCell> initCompanyFinancialInformation() {
-        PdfPCell companyIbanCell = initParagraphCell(config.ibanLabel() + ": " + company.bankAccount().iban(), footerFont);
-        PdfPCell companyBicCell = initParagraphCell(config.bicLabel() + ": " + company.bankAccount().bic(), footerFont);
-        PdfPCell companyBankNameCell = initParagraphCell(config.bankLabel() + ": " + company.bankAccount().bankName(), footerFont);
-        PdfPCell companyTaxNumberCell = initParagraphCell(config.taxNumberLabel() + ": " + company.taxNumber(), footerFont);
-        return Arrays.asList(companyIbanCell, companyBicCell, companyBankNameCell, companyTaxNumberCell);
-    }
-
     public String getId() {
         return id;
     }
@@ -301,4 +260,18 @@ public class InvoiceGenerator {
     public String getFileName() {
         return fileName;
     }
+
+    // the first bytes of the digest, as long as the MD5 hash iText would take otherwise
+    private byte[] fileId() {
+        return Arrays.copyOf(HexFormat.of().parseHex(getDigest()), FILE_ID_BYTES);
+    }
+
+    // covers everything this invoice is rendered from, the customer number is not part of the order's own digest
+    public String getDigest() {
+        if (digest == null) {
+            digest = new ContentDigest().add(RENDER_VERSION).add(template.getDigest()).add(order)
+                    .add(order.customer().getCustomerId()).add(performanceDate).toHex();
+        }
+        return digest;
+    }
 }
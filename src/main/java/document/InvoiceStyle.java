@@ -0,0 +1,99 @@
+package document;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontFactory;
+import com.itextpdf.text.pdf.draw.LineSeparator;
+import model.Money;
+
+import java.time.format.DateTimeFormatter;
+
+// the fonts, the line separator and the formatters of an invoice configuration; they are immutable or never modified
+// by iText, so one instance per distinct style is shared by every template and rendering thread
+public final class InvoiceStyle {
+    private static final BaseColor PRIMARY_COLOR = BaseColor.BLACK;
+    private static final BaseColor SECONDARY_COLOR = BaseColor.GRAY;
+    private static final String FONT_FAMILY = FontFactory.HELVETICA;
+    // a reloaded configuration usually keeps its style, the bound is for processes that serve many shops
+    private static final int CAPACITY = 32;
+    private static final BoundedCache<Key, InvoiceStyle> STYLES = new BoundedCache<>(CAPACITY);
+
+    private record Key(int headerFontSize, int headingFontSize, int paragraphFontSize, int footerFontSize,
+                       int lineSeparatorWidth, int contentWidth, int lineSeparatorOffset, String dateFormatReadable,
+                       String dateFormat, String currencyFormat, String quantityFormat) {
+    }
+
+    private final Font headerFont;
+    private final Font headingFont;
+    private final Font paragraphFont;
+    private final Font footerFont;
+    private final LineSeparator lineSeparator;
+    private final DateTimeFormatter dateFormatReadable;
+    private final DateTimeFormatter dateFormat;
+    private final FixedPointFormat currencyFormat;
+    private final FixedPointFormat quantityFormat;
+
+    private InvoiceStyle(Key key) {
+        this.headerFont = FontFactory.getFont(FONT_FAMILY, key.headerFontSize(), PRIMARY_COLOR);
+        this.headingFont = FontFactory.getFont(FONT_FAMILY, key.headingFontSize(), PRIMARY_COLOR);
+        this.paragraphFont = FontFactory.getFont(FONT_FAMILY, key.paragraphFontSize(), PRIMARY_COLOR);
+        this.footerFont = FontFactory.getFont(FONT_FAMILY, key.footerFontSize(), SECONDARY_COLOR);
+        this.lineSeparator = new LineSeparator(key.lineSeparatorWidth(), key.contentWidth(), PRIMARY_COLOR,
+                Element.ALIGN_BOTTOM, key.lineSeparatorOffset());
+        this.dateFormatReadable = DateTimeFormatter.ofPattern(key.dateFormatReadable());
+        this.dateFormat = DateTimeFormatter.ofPattern(key.dateFormat());
+        this.currencyFormat = new FixedPointFormat(key.currencyFormat(), Money.SCALE);
+        this.quantityFormat = new FixedPointFormat(key.quantityFormat(), 0);
+    }
+
+    public static InvoiceStyle of(InvoiceConfiguration config) {
+        Key key = new Key(config.headerFontSize(), config.headingFontSize(), config.paragraphFontSize(),
+                config.footerFontSize(), config.lineSeparatorWidth(), config.contentWidth(),
+                config.lineSeparatorOffset(), config.dateFormatReadable(), config.dateFormat(),
+                config.currencyFormat(), config.quantityFormat());
+        InvoiceStyle style = STYLES.get(key);
+        if (style == null) {
+            // two threads may create the same style at once, either instance can be shared
+            style = new InvoiceStyle(key);
+            STYLES.put(key, style);
+        }
+        return style;
+    }
+
+    public Font getHeaderFont() {
+        return headerFont;
+    }
+
+    public Font getHeadingFont() {
+        return headingFont;
+    }
+
+    public Font getParagraphFont() {
+        return paragraphFont;
+    }
+
+    public Font getFooterFont() {
+        return footerFont;
+    }
+
+    public LineSeparator getLineSeparator() {
+        return lineSeparator;
+    }
+
+    public DateTimeFormatter getDateFormatReadable() {
+        return dateFormatReadable;
+    }
+
+    public DateTimeFormatter getDateFormat() {
+        return dateFormat;
+    }
+
+    public FixedPointFormat getCurrencyFormat() {
+        return currencyFormat;
+    }
+
+    public FixedPointFormat getQuantityFormat() {
+        return quantityFormat;
+    }
+}
@@ -0,0 +1,315 @@
+package document;
+
+import com.itextpdf.text.*;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.draw.LineSeparator;
+import data.ContentDigest;
+import model.Company;
+import model.Person;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+public class InvoiceTemplate {
+    private final InvoiceConfiguration config;
+    private final Company company;
+    private final DateTimeFormatter dateFormat;
+    private final String signatureText;
+    private final String digest;
+    private volatile Layout layout;
+
+    // everything in here only depends on the company and the configuration, so it is built once per run and
+    // shared by all InvoiceGenerators; elements that iText modifies while laying out a document are handed out as copies
+    public InvoiceTemplate(InvoiceConfiguration config, Company company) throws IOException {
+        this.config = config;
+        this.company = company;
+        // the file names are known before anything is rendered
+        this.dateFormat = DateTimeFormatter.ofPattern(config.dateFormat());
+
+        Person signatory = company.shareholders().get(0);
+        this.signatureText = signatory.getFirstName() + " " + signatory.getLastName() + " (" +
+                company.address().location() + ", ";
+
+        // the images are hashed by their content, a replaced logo changes every invoice even if its path does not
+        this.digest = new ContentDigest().addRecord(config).addRecord(company)
+                .addFile(Path.of(config.logoPath()))
+                .addFile(Path.of(config.letteringPath()))
+                .addFile(Path.of(config.signaturePath()))
+                .toHex();
+    }
+
+    // iText, its fonts and the images are only loaded when the first invoice is rendered, a run whose orders were all
+    // sent before or are unchanged never needs them
+    public void prepare() throws DocumentException, IOException {
+        if (layout != null) return;
+        synchronized (this) {
+            if (layout == null) layout = new Layout();
+        }
+    }
+
+    private Layout layout() {
+        try {
+            prepare();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load the images of the invoice template", e);
+        } catch (DocumentException e) {
+            throw new IllegalStateException("Could not lay out the invoice template: " + e.getMessage(), e);
+        }
+        return layout;
+    }
+
+    private final class Layout {
+        private final InvoiceStyle style;
+
+        private final Font headerFont;
+        private final Font headingFont;
+        private final Font paragraphFont;
+        private final Font footerFont;
+        private final LineSeparator lineSeparator;
+        private final DateTimeFormatter dateFormatReadable;
+        private final FixedPointFormat currencyFormat;
+        private final FixedPointFormat quantityFormat;
+
+        private final Table header;
+        private final Table footer;
+        private final List<PdfPCell> companyInformation;
+        private final List<PdfPCell> companyContactInformation;
+        private final List<PdfPCell> invoiceInformationLabels;
+        private final List<PdfPCell> productTableHeader;
+        private final PdfPCell emptyCell;
+        private final PdfPCell productsSumLabelCell;
+
+        private Layout() throws DocumentException, IOException {
+            this.style = InvoiceStyle.of(config);
+
+            this.headerFont = style.getHeaderFont();
+            this.headingFont = style.getHeadingFont();
+            this.paragraphFont = style.getParagraphFont();
+            this.footerFont = style.getFooterFont();
+            this.lineSeparator = style.getLineSeparator();
+            this.dateFormatReadable = style.getDateFormatReadable();
+            this.currencyFormat = style.getCurrencyFormat();
+            this.quantityFormat = style.getQuantityFormat();
+
+            this.header = initHeader();
+            this.footer = initFooter();
+            this.companyInformation = initCompanyInformation(paragraphFont);
+            this.companyContactInformation = initCompanyContactInformation();
+            this.invoiceInformationLabels = initInvoiceInformationLabels();
+            this.productTableHeader = initProductTableHeader();
+            this.emptyCell = initParagraphCell(" ", paragraphFont);
+            this.productsSumLabelCell = initParagraphCell(config.productsSumPriceLabel() + ":", paragraphFont);
+        }
+
+        private Table initHeader() throws DocumentException, IOException {
+            Paragraph title = new Paragraph(config.header(), headerFont);
+            PdfPCell headingCell = new PdfPCell(title);
+            headingCell.setHorizontalAlignment(Element.ALIGN_LEFT);
+            headingCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+            headingCell.setBorder(0);
+
+            Image lettering = ImageCache.getInstance(config.letteringPath(), config.letteringScalePercent());
+            PdfPCell letteringCell = new PdfPCell(lettering);
+            letteringCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+            letteringCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+            letteringCell.setBorder(0);
+
+            Image logo = ImageCache.getInstance(config.logoPath(), config.logoScalePercent());
+            PdfPCell logoCell = new PdfPCell(logo);
+            logoCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+            logoCell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+            logoCell.setBorder(0);
+
+            Table innerHeader = new Table(2);
+            innerHeader.setWidths(config.headerTableProportions());
+            innerHeader.addCell(letteringCell);
+            innerHeader.addCell(logoCell);
+            PdfPCell innerHeaderCell = new PdfPCell(innerHeader);
+            innerHeaderCell.setBorder(0);
+
+            Table header = new Table(2);
+            header.setWidthPercentage(config.contentWidth());
+
+            header.addCell(headingCell);
+            header.addCell(innerHeaderCell);
+
+            return header;
+        }
+
+        private Table initFooter() {
+            Table table = new Table(2);
+            table.setWidthPercentage(config.contentWidth());
+            table.setSpacingBefore(config.defaultSpacing());
+
+            List<PdfPCell> companyInformation = initCompanyInformation(footerFont);
+            List<PdfPCell> companyFinancialInformation = initCompanyFinancialInformation();
+
+            for (PdfPCell pdfPCell : companyFinancialInformation) {
+                pdfPCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            }
+
+            table.addAll(Arrays.asList(
+                    companyInformation.get(0), companyFinancialInformation.get(0),
+                    companyInformation.get(1), companyFinancialInformation.get(1),
+                    companyInformation.get(2), companyFinancialInformation.get(2),
+                    companyInformation.get(3), companyFinancialInformation.get(3)
+            ));
+
+            table.setBorders(0);
+
+            return table;
+        }
+
+        private List<PdfPCell> initCompanyInformation(Font font) {
+            PdfPCell companyNameCell = initParagraphCell(company.name(), font);
+            PdfPCell companyDeclarationCell = initParagraphCell(company.declaration(), font);
+            PdfPCell companyStreetCell = initParagraphCell(company.address().street() + " " + company.address().streetNumber(), font);
+            PdfPCell companyLocationCell = initParagraphCell(company.address().zipCode() + " " + company.address().location(), font);
+            PdfPCell companyCountryCell = initParagraphCell(company.address().country(), font);
+            return Arrays.asList(companyNameCell, companyDeclarationCell, companyStreetCell, companyLocationCell, companyCountryCell);
+        }
+
+        private List<PdfPCell> initCompanyContactInformation() {
+            PdfPCell companyPhoneALabelCell = initParagraphCell(config.phoneLabel() + " (" + company.shareholders().get(0).getLastName() + "):", paragraphFont);
+            PdfPCell companyPhoneBLabelCell = initParagraphCell(config.phoneLabel() + " (" + company.shareholders().get(1).getLastName() + "):", paragraphFont);
+            PdfPCell companyMailLabelCell = initParagraphCell(config.emailLabel() + ":", paragraphFont);
+
+            PdfPCell companyPhoneACell = initParagraphCell(company.shareholders().get(0).getContact().phoneNumber(), paragraphFont);
+            PdfPCell companyPhoneBCell = initParagraphCell(company.shareholders().get(1).getContact().phoneNumber(), paragraphFont);
+            PdfPCell companyMailCell = initParagraphCell(company.shareholders().get(1).getContact().email(), paragraphFont);
+
+            return Arrays.asList(
+                    companyPhoneALabelCell, companyPhoneACell,
+                    companyPhoneBLabelCell, companyPhoneBCell,
+                    companyMailLabelCell, companyMailCell);
+        }
+
+        private List<PdfPCell> initInvoiceInformationLabels() {
+            PdfPCell invoiceNumberLabelCell = initParagraphCell(config.invoiceNumberLabel() + ":", paragraphFont);
+            PdfPCell customerNumberLabelCell = initParagraphCell(config.customerIdLabel() + ":", paragraphFont);
+            PdfPCell invoiceDateLabelCell = initParagraphCell(config.invoiceDateLabel() + ":", paragraphFont);
+            PdfPCell performanceDateLabelCell = initParagraphCell(config.performanceDateLabel() + ":", paragraphFont);
+            return Arrays.asList(invoiceNumberLabelCell, customerNumberLabelCell, invoiceDateLabelCell, performanceDateLabelCell);
+        }
+
+        private List<PdfPCell> initCompanyFinancialInformation() {
+            PdfPCell companyIbanCell = initParagraphCell(config.ibanLabel() + ": " + company.bankAccount().iban(), footerFont);
+            PdfPCell companyBicCell = initParagraphCell(config.bicLabel() + ": " + company.bankAccount().bic(), footerFont);
+            PdfPCell companyBankNameCell = initParagraphCell(config.bankLabel() + ": " + company.bankAccount().bankName(), footerFont);
+            PdfPCell companyTaxNumberCell = initParagraphCell(config.taxNumberLabel() + ": " + company.taxNumber(), footerFont);
+            return Arrays.asList(companyIbanCell, companyBicCell, companyBankNameCell, companyTaxNumberCell);
+        }
+
+        private List<PdfPCell> initProductTableHeader() {
+            PdfPCell declarationHeaderCell = initParagraphCell(config.productDeclarationLabel(), paragraphFont);
+            PdfPCell amountHeaderCell = initParagraphCell(config.productQuantityLabel(), paragraphFont);
+            PdfPCell singlePriceHeaderCell = initParagraphCell(config.productSinglePriceLabel(), paragraphFont);
+            PdfPCell sumPriceHeaderCell = initParagraphCell(config.productSumPriceLabel(), paragraphFont);
+            return Arrays.asList(declarationHeaderCell, amountHeaderCell, singlePriceHeaderCell, sumPriceHeaderCell);
+        }
+
+        private PdfPCell initParagraphCell(String text, Font font) {
+            Paragraph paragraph = new Paragraph(text, font);
+            return new PdfPCell(paragraph);
+        }
+    }
+
+    public Table newHeader() {
+        return new Table(layout().header);
+    }
+
+    public Table newFooter() {
+        return new Table(layout().footer);
+    }
+
+    public Image newSignature() throws DocumentException, IOException {
+        return ImageCache.getInstance(config.signaturePath(), config.signatureScalePercent());
+    }
+
+    public String formatSignature(LocalDate invoiceDate) {
+        return signatureText + invoiceDate.format(layout().dateFormatReadable) + ")";
+    }
+
+    public InvoiceConfiguration getConfig() {
+        return config;
+    }
+
+    public Company getCompany() {
+        return company;
+    }
+
+    // changes whenever anything that ends up in every invoice changes
+    public String getDigest() {
+        return digest;
+    }
+
+    public InvoiceStyle getStyle() {
+        return layout().style;
+    }
+
+    public Font getHeaderFont() {
+        return layout().headerFont;
+    }
+
+    public Font getHeadingFont() {
+        return layout().headingFont;
+    }
+
+    public Font getParagraphFont() {
+        return layout().paragraphFont;
+    }
+
+    public Font getFooterFont() {
+        return layout().footerFont;
+    }
+
+    public LineSeparator getLineSeparator() {
+        return layout().lineSeparator;
+    }
+
+    public DateTimeFormatter getDateFormatReadable() {
+        return layout().dateFormatReadable;
+    }
+
+    public FixedPointFormat getCurrencyFormat() {
+        return layout().currencyFormat;
+    }
+
+    public FixedPointFormat getQuantityFormat() {
+        return layout().quantityFormat;
+    }
+
+    public DateTimeFormatter getDateFormat() {
+        return dateFormat;
+    }
+
+    // PdfPTable.addCell copies the cell it is given, so the shared cells below are never modified by a document
+    public List<PdfPCell> getCompanyInformation() {
+        return layout().companyInformation;
+    }
+
+    public List<PdfPCell> getCompanyContactInformation() {
+        return layout().companyContactInformation;
+    }
+
+    public List<PdfPCell> getInvoiceInformationLabels() {
+        return layout().invoiceInformationLabels;
+    }
+
+    public List<PdfPCell> getProductTableHeader() {
+        return layout().productTableHeader;
+    }
+
+    public PdfPCell getEmptyCell() {
+        return layout().emptyCell;
+    }
+
+    public PdfPCell getProductsSumLabelCell() {
+        return layout().productsSumLabelCell;
+    }
+}
@@ -0,0 +1,50 @@
+package document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PdfBuffer extends ByteArrayOutputStream {
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+
+    private final PdfBufferPool pool;
+    private final AtomicInteger references;
+
+    PdfBuffer(PdfBufferPool pool) {
+        super(INITIAL_CAPACITY);
+        this.pool = pool;
+        this.references = new AtomicInteger();
+    }
+
+    void acquire() {
+        reset();
+        references.set(1);
+    }
+
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(this);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("The PDF buffer was released more often than it was retained.");
+        }
+    }
+
+    // the internal array is handed out without copying, only the first size() bytes are valid
+    public synchronized byte[] getBuffer() {
+        return buf;
+    }
+
+    public void writeTo(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeTo(out);
+        }
+    }
+}
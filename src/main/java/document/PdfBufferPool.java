@@ -0,0 +1,43 @@
+package document;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PdfBufferPool {
+    private final int capacity;
+    private final AtomicInteger created;
+    private final BlockingQueue<PdfBuffer> available;
+
+    public PdfBufferPool(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("The buffer pool capacity must be positive.");
+        this.capacity = capacity;
+        this.created = new AtomicInteger();
+        this.available = new LinkedBlockingQueue<>();
+    }
+
+    // blocks while all buffers are in use, which throttles rendering to the speed of the consumers
+    public PdfBuffer acquire() throws InterruptedException {
+        PdfBuffer buffer = available.poll();
+        if (buffer == null) buffer = create();
+        if (buffer == null) buffer = available.take();
+        buffer.acquire();
+        return buffer;
+    }
+
+    private PdfBuffer create() {
+        int count;
+        while ((count = created.get()) < capacity) {
+            if (created.compareAndSet(count, count + 1)) return new PdfBuffer(this);
+        }
+        return null;
+    }
+
+    void recycle(PdfBuffer buffer) {
+        available.offer(buffer);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -10,6 +10,10 @@ public class Table extends PdfPTable {
         super(numColumns);
     }
 
+    public Table(PdfPTable table) {
+        super(table);
+    }
+
     public void addAll(List<PdfPCell> pdfPCells) {
         for (PdfPCell pdfPCell : pdfPCells) {
             addCell(pdfPCell);
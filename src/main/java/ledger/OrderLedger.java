@@ -0,0 +1,168 @@
+package ledger;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+public class OrderLedger implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String COMPACTION_SUFFIX = ".compact";
+    private static final int FIELD_COUNT = 3;
+    private static final int TAIL_BUFFER_SIZE = 4096;
+
+    public enum State {
+        RENDERED, QUEUED, SENT
+    }
+
+    private record Entry(State state, String contentHash) {
+    }
+
+    private final Path path;
+    private final Map<String, Entry> entries;
+    private BufferedWriter writer;
+
+    public OrderLedger(Path path) throws IOException {
+        this.path = path;
+        this.entries = new HashMap<>();
+        truncateTornLine();
+        load();
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // a crash while appending can leave a torn last line behind; it is cut off rather than completed, since a torn
+    // hash still has all its fields and the line would otherwise replace the last complete record of the order
+    private void truncateTornLine() throws IOException {
+        if (!Files.exists(path)) return;
+        try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TAIL_BUFFER_SIZE);
+            long end = channel.size();
+            while (end > 0) {
+                int length = (int) Math.min(buffer.capacity(), end);
+                buffer.clear().limit(length);
+                channel.position(end - length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) throw new EOFException("The ledger " + path + " shrank while read");
+                }
+                for (int i = length - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        long complete = end - length + i + 1;
+                        if (complete < channel.size()) {
+                            LOGGER.warning("Ignoring the torn last line of the ledger " + path);
+                            channel.truncate(complete);
+                        }
+                        return;
+                    }
+                }
+                end -= length;
+            }
+            LOGGER.warning("Ignoring the torn last line of the ledger " + path);
+            channel.truncate(0);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(path)) return;
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] fields = line.split(FIELD_SEPARATOR);
+            if (fields.length != FIELD_COUNT) {
+                LOGGER.warning("Ignoring a malformed ledger line: " + line);
+                continue;
+            }
+            try {
+                entries.put(fields[1], new Entry(State.valueOf(fields[0]), fields[2]));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Ignoring a malformed ledger line: " + line);
+            }
+        }
+
+        if (lines.size() > 2 * entries.size()) compact();
+    }
+
+    // rewrites the ledger with one line per order, the replacement is atomic so a crash keeps the old file
+    private void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + COMPACTION_SUFFIX);
+        try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writeLine(out, entry.getValue().state(), entry.getKey(), entry.getValue().contentHash());
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public synchronized boolean isSent(String orderNumber, String contentHash) {
+        return hasState(orderNumber, contentHash, State.SENT);
+    }
+
+    // queued orders are waiting in an outbox, their PDF exists just like for rendered ones
+    public synchronized boolean isRendered(String orderNumber, String contentHash) {
+        return hasState(orderNumber, contentHash, State.RENDERED) || hasState(orderNumber, contentHash, State.QUEUED)
+                || hasState(orderNumber, contentHash, State.SENT);
+    }
+
+    public synchronized boolean isQueued(String orderNumber, String contentHash) {
+        return hasState(orderNumber, contentHash, State.QUEUED);
+    }
+
+    private boolean hasState(String orderNumber, String contentHash, State state) {
+        Entry entry = entries.get(orderNumber);
+        return entry != null && entry.state() == state && entry.contentHash().equals(contentHash);
+    }
+
+    public void markRendered(String orderNumber, String contentHash) throws IOException {
+        append(State.RENDERED, orderNumber, contentHash);
+    }
+
+    public void markQueued(String orderNumber, String contentHash) throws IOException {
+        append(State.QUEUED, orderNumber, contentHash);
+    }
+
+    public void markSent(String orderNumber, String contentHash) throws IOException {
+        append(State.SENT, orderNumber, contentHash);
+    }
+
+    private synchronized void append(State state, String orderNumber, String contentHash) throws IOException {
+        if (writer == null) throw new IllegalStateException("The ledger " + path + " is closed.");
+        writeLine(writer, state, orderNumber, contentHash);
+        // flush every record so that a crashed run can pick up exactly where it stopped
+        writer.flush();
+        entries.put(orderNumber, new Entry(state, contentHash));
+    }
+
+    private static void writeLine(BufferedWriter out, State state, String orderNumber, String contentHash)
+            throws IOException {
+        out.write(state.name() + FIELD_SEPARATOR + orderNumber + FIELD_SEPARATOR + contentHash);
+        out.newLine();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
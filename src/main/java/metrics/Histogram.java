@@ -0,0 +1,121 @@
+package metrics;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram {
+    public static final double[] LATENCY_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+            5, 10, 30};
+    public static final double[] SIZE_BUCKETS = {1024, 4096, 16384, 32768, 65536, 131072, 262144, 524288, 1048576,
+            4194304, 16777216};
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final String name;
+    private final String help;
+    private final double[] bounds;
+    // one more bucket than bounds for the values above the largest bound
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final DoubleAdder sum;
+    private final DoubleAccumulator max;
+
+    Histogram(String name, String help, double[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) throw new IllegalArgumentException("The bucket bounds of " + name +
+                    " must be increasing.");
+        }
+        this.name = name;
+        this.help = help;
+        this.bounds = bounds.clone();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sum = new DoubleAdder();
+        this.max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+    }
+
+    public void observe(double value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) bucket++;
+        buckets[bucket].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // records the seconds elapsed since a System.nanoTime() start value
+    public void observeSince(long startNanos) {
+        observe((System.nanoTime() - startNanos) / NANOS_PER_SECOND);
+    }
+
+    // adds the observations of another histogram with the same bounds, e.g. of another shard of the run
+    public void merge(long[] cumulativeCounts, double sum, double max) {
+        if (cumulativeCounts.length != buckets.length) {
+            throw new IllegalArgumentException("The buckets of " + name + " do not match.");
+        }
+        long previous = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i].add(cumulativeCounts[i] - previous);
+            previous = cumulativeCounts[i];
+        }
+        count.add(previous);
+        this.sum.add(sum);
+        if (previous > 0) this.max.accumulate(max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    public double getMax() {
+        return getCount() == 0 ? 0 : max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : getSum() / count;
+    }
+
+    // the cumulative number of observations less than or equal to each bound, the last entry counts all of them
+    public long[] getCumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    // estimates the quantile as the upper bound of the bucket that holds it, capped by the largest observed value
+    public double getQuantile(double quantile) {
+        long[] counts = getCumulativeCounts();
+        long total = counts[counts.length - 1];
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(quantile * total);
+        for (int i = 0; i < bounds.length; i++) {
+            if (counts[i] >= rank) return Math.min(bounds[i], getMax());
+        }
+        return getMax();
+    }
+
+    public double[] getBounds() {
+        return bounds.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+}
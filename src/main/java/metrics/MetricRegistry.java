@@ -0,0 +1,42 @@
+package metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+public final class MetricRegistry {
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+    private MetricRegistry() {
+    }
+
+    public static Counter counter(String name, String help) {
+        return COUNTERS.computeIfAbsent(name, key -> new Counter(key, help));
+    }
+
+    // a gauge is read at export time, registering a name again replaces its supplier
+    public static Gauge gauge(String name, String help, DoubleSupplier value) {
+        Gauge gauge = new Gauge(name, help, value);
+        GAUGES.put(name, gauge);
+        return gauge;
+    }
+
+    public static Histogram histogram(String name, String help, double[] bounds) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new Histogram(key, help, bounds));
+    }
+
+    public static Collection<Counter> getCounters() {
+        return COUNTERS.values();
+    }
+
+    public static Collection<Gauge> getGauges() {
+        return GAUGES.values();
+    }
+
+    public static Collection<Histogram> getHistograms() {
+        return HISTOGRAMS.values();
+    }
+}
@@ -0,0 +1,118 @@
+package metrics;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+public final class MetricsExporter {
+    private static final String PROMETHEUS_PREFIX = "invoice_generator_";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int JSON_INDENT = 2;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    public enum Format {
+        JSON, PROMETHEUS;
+
+        public static Format parse(String format) {
+            try {
+                return valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown metrics format: " + format +
+                        " (expected json or prometheus)");
+            }
+        }
+    }
+
+    private MetricsExporter() {
+    }
+
+    // the file is replaced atomically so that a collector never reads a half written export
+    public static void writeTo(Path path, Format format) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        Files.writeString(temporary, export(format), StandardCharsets.UTF_8);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static String export(Format format) {
+        return format == Format.JSON ? toJson() : toPrometheus();
+    }
+
+    private static String toJson() {
+        JSONObject counters = new JSONObject();
+        for (Counter counter : MetricRegistry.getCounters()) {
+            counters.put(counter.getName(), counter.get());
+        }
+
+        JSONObject gauges = new JSONObject();
+        for (Gauge gauge : MetricRegistry.getGauges()) {
+            gauges.put(gauge.getName(), finite(gauge.get()));
+        }
+
+        JSONObject histograms = new JSONObject();
+        for (Histogram histogram : MetricRegistry.getHistograms()) {
+            JSONObject json = new JSONObject();
+            json.put("count", histogram.getCount());
+            json.put("sum", histogram.getSum());
+            json.put("mean", histogram.getMean());
+            json.put("max", histogram.getMax());
+            for (double quantile : QUANTILES) {
+                json.put("p" + Math.round(quantile * 100), histogram.getQuantile(quantile));
+            }
+            // the buckets let the reports of several shards be merged without losing the quantiles
+            json.put("bounds", histogram.getBounds());
+            json.put("buckets", histogram.getCumulativeCounts());
+            histograms.put(histogram.getName(), json);
+        }
+
+        JSONObject metrics = new JSONObject();
+        metrics.put("counters", counters);
+        metrics.put("gauges", gauges);
+        metrics.put("histograms", histograms);
+        return metrics.toString(JSON_INDENT);
+    }
+
+    private static String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        for (Counter counter : MetricRegistry.getCounters()) {
+            String name = PROMETHEUS_PREFIX + counter.getName();
+            appendHeader(text, name, counter.getHelp(), "counter");
+            text.append(name).append(' ').append(counter.get()).append('\n');
+        }
+
+        for (Gauge gauge : MetricRegistry.getGauges()) {
+            String name = PROMETHEUS_PREFIX + gauge.getName();
+            appendHeader(text, name, gauge.getHelp(), "gauge");
+            text.append(name).append(' ').append(gauge.get()).append('\n');
+        }
+
+        for (Histogram histogram : MetricRegistry.getHistograms()) {
+            String name = PROMETHEUS_PREFIX + histogram.getName();
+            appendHeader(text, name, histogram.getHelp(), "histogram");
+            double[] bounds = histogram.getBounds();
+            long[] counts = histogram.getCumulativeCounts();
+            for (int i = 0; i < bounds.length; i++) {
+                text.append(name).append("_bucket{le=\"").append(bounds[i]).append("\"} ").append(counts[i])
+                        .append('\n');
+            }
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(counts[bounds.length]).append('\n');
+            text.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendHeader(StringBuilder text, String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // JSON has no representation for NaN and infinity, e.g. a rate before the first order completed
+    private static double finite(double value) {
+        return Double.isFinite(value) ? value : 0;
+    }
+}
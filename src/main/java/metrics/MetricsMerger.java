@@ -0,0 +1,80 @@
+package metrics;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// adds the JSON metrics of several shards of a run up in the registry, from where they are exported as one report
+public final class MetricsMerger {
+    private static final String MERGED_HELP = "Merged from the shard reports";
+    private static final String RUN_DURATION = "run_duration_seconds";
+    private static final String ORDERS_PER_SECOND = "orders_per_second";
+    private static final String ORDERS_COMPLETED = "orders_completed_total";
+
+    private MetricsMerger() {
+    }
+
+    public static void merge(List<Path> reports) throws IOException {
+        Map<String, Double> gauges = new TreeMap<>();
+        for (Path report : reports) {
+            JSONObject metrics = new JSONObject(Files.readString(report, StandardCharsets.UTF_8));
+
+            JSONObject counters = metrics.getJSONObject("counters");
+            for (String name : counters.keySet()) {
+                MetricRegistry.counter(name, MERGED_HELP).add(counters.getLong(name));
+            }
+
+            JSONObject histograms = metrics.getJSONObject("histograms");
+            for (String name : histograms.keySet()) {
+                JSONObject histogram = histograms.getJSONObject(name);
+                if (!histogram.has("buckets")) {
+                    throw new IOException(report + " is not a metrics report, it has no buckets for " + name);
+                }
+                MetricRegistry.histogram(name, MERGED_HELP, toDoubles(histogram.getJSONArray("bounds")))
+                        .merge(toLongs(histogram.getJSONArray("buckets")), histogram.getDouble("sum"),
+                                histogram.getDouble("max"));
+            }
+
+            // the shards run side by side, so the run took as long as the slowest one, other gauges add up
+            JSONObject shardGauges = metrics.getJSONObject("gauges");
+            for (String name : shardGauges.keySet()) {
+                double value = shardGauges.getDouble(name);
+                gauges.merge(name, value, name.equals(RUN_DURATION) ? Math::max : Double::sum);
+            }
+        }
+
+        for (Map.Entry<String, Double> gauge : gauges.entrySet()) {
+            double value = gauge.getValue();
+            MetricRegistry.gauge(gauge.getKey(), MERGED_HELP, () -> value);
+        }
+        if (gauges.containsKey(RUN_DURATION)) {
+            double duration = gauges.get(RUN_DURATION);
+            Counter completed = MetricRegistry.counter(ORDERS_COMPLETED, MERGED_HELP);
+            MetricRegistry.gauge(ORDERS_PER_SECOND, "Completed orders per second of wall clock time of all shards",
+                    () -> completed.get() / duration);
+        }
+    }
+
+    private static double[] toDoubles(JSONArray array) {
+        double[] values = new double[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getDouble(i);
+        }
+        return values;
+    }
+
+    private static long[] toLongs(JSONArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getLong(i);
+        }
+        return values;
+    }
+}
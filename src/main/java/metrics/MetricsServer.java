@@ -0,0 +1,66 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+public class MetricsServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String PROMETHEUS_PATH = "/metrics";
+    private static final String JSON_PATH = "/metrics.json";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int NO_RESPONSE_BODY = -1;
+
+    private final HttpServer server;
+
+    // binds to the loopback interface only, the metrics are not meant to leave the machine
+    public MetricsServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        addContexts(server);
+        server.start();
+        LOGGER.info("Serving the metrics on http://" + server.getAddress().getHostString() + ":" +
+                server.getAddress().getPort() + PROMETHEUS_PATH);
+    }
+
+    // serves the metrics from another server of the application, too
+    public static void addContexts(HttpServer server) {
+        server.createContext(PROMETHEUS_PATH, exchange ->
+                respond(exchange, MetricsExporter.Format.PROMETHEUS, PROMETHEUS_CONTENT_TYPE));
+        server.createContext(JSON_PATH, exchange ->
+                respond(exchange, MetricsExporter.Format.JSON, JSON_CONTENT_TYPE));
+    }
+
+    private static void respond(HttpExchange exchange, MetricsExporter.Format format, String contentType)
+            throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(STATUS_METHOD_NOT_ALLOWED, NO_RESPONSE_BODY);
+                return;
+            }
+            byte[] body = MetricsExporter.export(format).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(STATUS_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
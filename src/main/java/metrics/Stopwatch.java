@@ -0,0 +1,26 @@
+package metrics;
+
+public class Stopwatch {
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final long start;
+    private volatile long stop;
+    private volatile boolean stopped;
+
+    public Stopwatch() {
+        this.start = System.nanoTime();
+        this.stopped = false;
+    }
+
+    public void stop() {
+        if (stopped) return;
+        stop = System.nanoTime();
+        stopped = true;
+    }
+
+    // keeps counting until the stopwatch is stopped and is frozen afterwards
+    public double getElapsedSeconds() {
+        long end = stopped ? stop : System.nanoTime();
+        return (end - start) / NANOS_PER_SECOND;
+    }
+}
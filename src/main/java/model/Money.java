@@ -0,0 +1,73 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// amounts of money are held as longs of cents, so that sums are exact and do not allocate
+public final class Money {
+    public static final int SCALE = 2;
+    private static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    // parses prices like 12, 12.5, 12.50 or -0.99 without going through a double, more digits are rounded half up
+    public static long parseCents(String amount) {
+        String value = amount.trim();
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int unitDigits = 0;
+        for (; i < length && isDigit(value.charAt(i)); i++, unitDigits++) {
+            if (unitDigits == 15) return parseExactly(value);
+            units = units * 10 + (value.charAt(i) - '0');
+        }
+
+        long cents = 0;
+        int centDigits = 0;
+        boolean roundUp = false;
+        if (i < length && value.charAt(i) == '.') {
+            for (i++; i < length && isDigit(value.charAt(i)); i++, centDigits++) {
+                if (centDigits < SCALE) {
+                    cents = cents * 10 + (value.charAt(i) - '0');
+                } else if (centDigits == SCALE) {
+                    roundUp = value.charAt(i) >= '5';
+                }
+            }
+        }
+        // anything else, e.g. an exponent, takes the slow path
+        if (i != length || unitDigits + centDigits == 0) return parseExactly(value);
+
+        for (int digits = Math.min(centDigits, SCALE); digits < SCALE; digits++) {
+            cents *= 10;
+        }
+        long total = units * CENTS_PER_UNIT + cents + (roundUp ? 1 : 0);
+        return negative ? -total : total;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long parseExactly(String value) {
+        try {
+            return new BigDecimal(value).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Not an amount of money: " + value, e);
+        }
+    }
+
+    public static long times(long cents, int amount) {
+        return Math.multiplyExact(cents, amount);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+}
@@ -4,4 +4,12 @@ import java.time.LocalDate;
 import java.util.List;
 
 public record Order(String orderNumber, Customer customer, List<Product> products, LocalDate orderDate) {
+    // in cents, see Money
+    public long total() {
+        long total = 0;
+        for (Product product : products) {
+            total = Math.addExact(total, product.total());
+        }
+        return total;
+    }
 }
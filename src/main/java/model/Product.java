@@ -1,4 +1,8 @@
 package model;
 
-public record Product(String name, double price, int amount) {
+// price in cents, see Money
+public record Product(String name, long price, int amount) {
+    public long total() {
+        return Money.times(price, amount);
+    }
 }
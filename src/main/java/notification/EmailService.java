@@ -1,36 +1,84 @@
 package notification;
 
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricRegistry;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
 import javax.mail.*;
 import javax.mail.internet.*;
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Properties;
 
-public class EmailService {
+public class EmailService implements AutoCloseable {
     private static final String LINE_BREAK = "<br/>";
     private static final String DOUBLE_LINE_BREAK = "<br/><br/>";
-    private static final String CONTENT_TYPE = "text/html; charset=utf-8";
+    private static final String CHARSET = "utf-8";
+    private static final String CONTENT_TYPE = "text/html; charset=" + CHARSET;
+    private static final Histogram SEND_SECONDS = MetricRegistry.histogram("smtp_send_seconds",
+            "Time to send a single email including the connection setup if there is no pooled one",
+            Histogram.LATENCY_BUCKETS);
+    private static final Counter SENT = MetricRegistry.counter("smtp_sent_total", "Emails accepted by the SMTP server");
+    private static final Counter SEND_FAILURES = MetricRegistry.counter("smtp_send_failures_total",
+            "Emails that could not be sent");
 
-    private final Session session;
-    private final InternetAddress from;
+    private final Properties properties;
+    private final String address;
+    private final String password;
+    private final String host;
+    private final String fromName;
     private final String subject;
     private final String salutation;
     private final String message;
     private final String greetings;
     private final String signature;
+    private final int poolSize;
+    private final boolean prepared;
+    private volatile Delivery delivery;
+    private volatile boolean dryRun;
+
+    // the mail session, the sender address and the transport pool; JavaMail is only loaded when the first email is
+    // created, a run that sends nothing never needs it
+    private record Delivery(Session session, InternetAddress from, TransportPool transportPool,
+                            PreparedMessage preparedMessage) {
+    }
 
     public EmailService(String address, String password, String host, String port, boolean tls, boolean auth,
                         boolean debug, String protocol, String trust, String from, String subject, String salutation,
-                        String message, String greetings, String signature) throws UnsupportedEncodingException {
-        this.from = new InternetAddress(address, from);
+                        String message, String greetings, String signature) {
+        this(address, password, host, port, tls, auth, debug, protocol, trust, from, subject, salutation, message,
+                greetings, signature, 0);
+    }
+
+    public EmailService(String address, String password, String host, String port, boolean tls, boolean auth,
+                        boolean debug, String protocol, String trust, String from, String subject, String salutation,
+                        String message, String greetings, String signature, int poolSize) {
+        this(address, password, host, port, tls, auth, debug, protocol, trust, from, subject, salutation, message,
+                greetings, signature, poolSize, false);
+    }
+
+    public EmailService(String address, String password, String host, String port, boolean tls, boolean auth,
+                        boolean debug, String protocol, String trust, String from, String subject, String salutation,
+                        String message, String greetings, String signature, int poolSize, boolean prepared) {
+        this.address = address;
+        this.password = password;
+        this.host = host;
+        this.fromName = from;
         this.subject = subject;
         this.salutation = salutation;
         this.message = message;
         this.greetings = greetings;
         this.signature = signature;
+        this.poolSize = poolSize;
+        this.prepared = prepared;
+        this.delivery = null;
+        this.dryRun = false;
 
-        Properties properties = new Properties();
+        this.properties = new Properties();
         properties.put("mail.smtp.host", host);
         properties.put("mail.smtp.port", port);
         properties.put("mail.smtp.starttls.enable", tls);
@@ -38,33 +86,69 @@ public class EmailService {
         properties.put("mail.debug", debug);
         properties.put("mail.smtp.ssl.protocols", protocol);
         properties.put("mail.smtp.ssl.trust", trust);
+    }
+
+    private Delivery delivery() throws MessagingException {
+        Delivery delivery = this.delivery;
+        if (delivery != null) return delivery;
 
-        this.session = Session.getInstance(properties, new Authenticator() {
-            @Override
-            protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(address, password);
+        synchronized (this) {
+            if (this.delivery == null) {
+                Session session = Session.getInstance(properties, new Authenticator() {
+                    @Override
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return new PasswordAuthentication(address, password);
+                    }
+                });
+                InternetAddress from;
+                try {
+                    // JavaMail would encode the name in the platform charset, which may not hold it
+                    from = new InternetAddress(address, fromName, CHARSET);
+                } catch (UnsupportedEncodingException e) {
+                    throw new MessagingException("Could not encode the sender " + fromName, e);
+                }
+                this.delivery = new Delivery(session, from, poolSize > 0 ? new TransportPool(session, poolSize) : null,
+                        prepared ? new PreparedMessage(session, from, subject, salutation, body()) : null);
             }
-        });
+            return this.delivery;
+        }
+    }
+
+    // everything after the salutation
+    private String body() {
+        return "," + DOUBLE_LINE_BREAK + message + DOUBLE_LINE_BREAK + greetings + LINE_BREAK + signature;
     }
 
     public void sendAttachedMimeMessage(String to, String lastName, String id, String attachmentPath) throws MessagingException, IOException {
-        Message message = new MimeMessage(session);
+        sendAttachedMimeMessage(to, lastName, id, new FileDataSource(attachmentPath));
+    }
+
+    public void sendAttachedMimeMessage(String to, String lastName, String id, DataSource attachment) throws MessagingException {
+        send(createAttachedMimeMessage(to, lastName, id, attachment));
+    }
+
+    public Message createAttachedMimeMessage(String to, String lastName, String id, DataSource attachment) throws MessagingException {
+        Delivery delivery = delivery();
+        if (delivery.preparedMessage() != null) return delivery.preparedMessage().create(to, lastName, id, attachment);
+        InternetAddress from = delivery.from();
+        MimeMessage message = new MimeMessage(delivery.session());
 
         message.setFrom(from);
         message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
         message.addRecipient(Message.RecipientType.BCC, from);
 
         String subject = this.subject + id;
-        message.setSubject(subject);
+        message.setSubject(subject, CHARSET);
 
         String salutation = this.salutation + lastName;
-        String msg = salutation + "," + DOUBLE_LINE_BREAK + this.message + DOUBLE_LINE_BREAK + greetings + LINE_BREAK + signature;
+        String msg = salutation + body();
 
         MimeBodyPart mimeBodyPart = new MimeBodyPart();
         mimeBodyPart.setContent(msg, CONTENT_TYPE);
 
         MimeBodyPart attachmentBodyPart = new MimeBodyPart();
-        attachmentBodyPart.attachFile(new File(attachmentPath));
+        attachmentBodyPart.setDataHandler(new DataHandler(attachment));
+        attachmentBodyPart.setFileName(attachment.getName());
 
         Multipart multipart = new MimeMultipart();
         multipart.addBodyPart(mimeBodyPart);
@@ -72,6 +156,58 @@ public class EmailService {
 
         message.setContent(multipart);
 
-        Transport.send(message);
+        return message;
+    }
+
+    private void send(Message message) throws MessagingException {
+        if (dryRun) {
+            writeToNowhere(message);
+            return;
+        }
+
+        long start = System.nanoTime();
+        TransportPool transportPool = delivery().transportPool();
+        try {
+            if (transportPool == null) {
+                Transport.send(message);
+            } else {
+                transportPool.send(message);
+            }
+            SENT.increment();
+        } catch (MessagingException | RuntimeException e) {
+            SEND_FAILURES.increment();
+            throw e;
+        } finally {
+            SEND_SECONDS.observeSince(start);
+        }
+    }
+
+    // encodes the whole message like a send would, but does not connect to the SMTP server
+    private static void writeToNowhere(Message message) throws MessagingException {
+        try {
+            message.saveChanges();
+            message.writeTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new MessagingException("Could not encode the email", e);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    // every email is created and encoded, but none is sent
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    @Override
+    public void close() {
+        Delivery delivery = this.delivery;
+        if (delivery != null && delivery.transportPool() != null) delivery.transportPool().close();
     }
 }
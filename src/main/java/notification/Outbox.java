@@ -0,0 +1,168 @@
+package notification;
+
+import metrics.MetricRegistry;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class Outbox {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String PENDING_DIRECTORY = "pending";
+    private static final String FAILED_DIRECTORY = "failed";
+    private static final String ENTRY_TYPE = ".json";
+    private static final String ATTACHMENT_TYPE = ".pdf";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private record Scheduled(OutboxEntry entry) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(entry.nextAttemptMillis() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(entry.nextAttemptMillis(), ((Scheduled) other).entry.nextAttemptMillis());
+        }
+    }
+
+    private final Path pendingDirectory;
+    private final Path failedDirectory;
+    private final DelayQueue<Scheduled> queue;
+    // ids of the entries that are neither sent nor failed for good, including the ones being sent right now
+    private final Set<String> pendingIds;
+
+    public Outbox(Path directory) throws IOException {
+        this.pendingDirectory = Files.createDirectories(directory.resolve(PENDING_DIRECTORY));
+        this.failedDirectory = Files.createDirectories(directory.resolve(FAILED_DIRECTORY));
+        this.queue = new DelayQueue<>();
+        this.pendingIds = new HashSet<>();
+        load();
+        MetricRegistry.gauge("outbox_pending", "Emails in the outbox that are not sent yet", this::getPendingCount);
+    }
+
+    // picks up the entries that an earlier run could not send, their retry schedule is kept
+    private void load() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(pendingDirectory, "*" + ENTRY_TYPE)) {
+            for (Path path : entries) {
+                try {
+                    schedule(OutboxEntry.fromJson(new JSONObject(Files.readString(path, StandardCharsets.UTF_8))));
+                } catch (JSONException e) {
+                    LOGGER.warning("Ignoring the malformed outbox entry " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        if (getPendingCount() > 0) LOGGER.info("Resuming " + getPendingCount() + " emails from the outbox");
+    }
+
+    // an entry whose attachment already is on disk, e.g. an invoice in the output path
+    public void enqueue(OutboxEntry entry) throws IOException {
+        write(entry);
+        // an invoice that is still pending from an earlier run is only replaced on disk, not sent twice
+        if (!schedule(entry)) LOGGER.info("The email for invoice " + entry.id() + " is already in the outbox");
+    }
+
+    // an entry whose attachment only exists in memory, the outbox keeps its own copy until the email is sent
+    public void enqueue(OutboxEntry entry, byte[] attachment, int length) throws IOException {
+        Path path = pendingDirectory.resolve(entry.id() + ATTACHMENT_TYPE);
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            out.write(attachment, 0, length);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        enqueue(entry.withAttachment(path));
+    }
+
+    // returns the next entry that is due, or null if there is none within the timeout
+    OutboxEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Scheduled scheduled = queue.poll(timeout, unit);
+        return scheduled == null ? null : scheduled.entry();
+    }
+
+    void reschedule(OutboxEntry entry) throws IOException {
+        write(entry);
+        queue.put(new Scheduled(entry));
+    }
+
+    void complete(OutboxEntry entry) throws IOException {
+        try {
+            Files.deleteIfExists(entryPath(pendingDirectory, entry));
+            if (ownsAttachment(entry)) Files.deleteIfExists(entry.attachment());
+        } finally {
+            removePending(entry);
+        }
+    }
+
+    // keeps the entry and its attachment in the failed directory for a manual look
+    void fail(OutboxEntry entry) throws IOException {
+        try {
+            OutboxEntry failed = entry;
+            if (ownsAttachment(entry)) {
+                Path attachment = failedDirectory.resolve(entry.attachment().getFileName());
+                Files.move(entry.attachment(), attachment, StandardCopyOption.REPLACE_EXISTING);
+                failed = entry.withAttachment(attachment);
+            }
+            writeAtomically(entryPath(failedDirectory, failed), failed);
+            Files.deleteIfExists(entryPath(pendingDirectory, entry));
+        } finally {
+            removePending(entry);
+        }
+    }
+
+    private boolean ownsAttachment(OutboxEntry entry) {
+        return pendingDirectory.equals(entry.attachment().getParent());
+    }
+
+    private synchronized boolean schedule(OutboxEntry entry) {
+        if (!pendingIds.add(entry.id())) return false;
+        queue.put(new Scheduled(entry));
+        return true;
+    }
+
+    private synchronized void removePending(OutboxEntry entry) {
+        pendingIds.remove(entry.id());
+        notifyAll();
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingIds.size();
+    }
+
+    // returns false if there are still pending entries when the timeout elapses
+    public synchronized boolean awaitEmpty(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!pendingIds.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    private void write(OutboxEntry entry) throws IOException {
+        writeAtomically(entryPath(pendingDirectory, entry), entry);
+    }
+
+    // the entry file is only ever replaced as a whole, so a crash never leaves a half written one behind
+    private static void writeAtomically(Path path, OutboxEntry entry) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        Files.writeString(temporary, entry.toJson().toString(), StandardCharsets.UTF_8);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path entryPath(Path directory, OutboxEntry entry) {
+        return directory.resolve(entry.id() + ENTRY_TYPE);
+    }
+}
@@ -0,0 +1,184 @@
+package notification;
+
+import ledger.OrderLedger;
+import metrics.Counter;
+import metrics.MetricRegistry;
+
+import javax.activation.FileDataSource;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+public class OutboxDispatcher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final long POLL_MILLIS = 200;
+    private static final long INITIAL_BACKOFF_MILLIS = 2_000;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60_000;
+    private static final Counter COMPLETED = MetricRegistry.counter("orders_completed_total",
+            "Orders whose invoice was rendered and sent");
+    private static final Counter RETRIES = MetricRegistry.counter("outbox_retries_total",
+            "Emails of the outbox that failed and were scheduled for another attempt");
+    private static final Counter FAILURES = MetricRegistry.counter("outbox_failures_total",
+            "Emails of the outbox that were given up and moved to its failed directory");
+
+    private final Outbox outbox;
+    private volatile EmailService emailService;
+    // held while an email is sent, so that the email service is not replaced during a send
+    private final ReadWriteLock emailServiceLock;
+    private final OrderLedger ledger;
+    private final int maxAttempts;
+    private final double ratePerHost;
+    private final Map<String, RateLimiter> rateLimiters;
+    private final List<Thread> workers;
+    private volatile boolean closed;
+
+    public OutboxDispatcher(Outbox outbox, EmailService emailService, OrderLedger ledger, int workers,
+                            double ratePerHost, int maxAttempts) {
+        if (workers < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Outbox workers and attempts must be positive.");
+        }
+        this.outbox = outbox;
+        this.emailService = emailService;
+        this.emailServiceLock = new ReentrantReadWriteLock();
+        this.ledger = ledger;
+        this.maxAttempts = maxAttempts;
+        this.ratePerHost = ratePerHost;
+        this.rateLimiters = new ConcurrentHashMap<>();
+        this.workers = new ArrayList<>(workers);
+        this.closed = false;
+
+        for (int i = 1; i <= workers; i++) {
+            Thread worker = new Thread(this::dispatch, "outbox-dispatcher-" + i);
+            worker.setDaemon(true);
+            this.workers.add(worker);
+        }
+    }
+
+    public void start() {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (!closed) {
+                OutboxEntry entry = outbox.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry != null) deliver(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(OutboxEntry entry) throws InterruptedException {
+        try {
+            if (!Files.exists(entry.attachment())) {
+                giveUp(entry, "The attachment " + entry.attachment() + " does not exist anymore");
+                return;
+            }
+            rateLimiters.computeIfAbsent(emailService.getHost(), host -> new RateLimiter(ratePerHost)).acquire();
+            send(entry);
+        } catch (SendFailedException e) {
+            // the server rejected the recipients, another attempt would not change that
+            giveUp(entry, e.getMessage());
+            return;
+        } catch (MessagingException | RuntimeException e) {
+            retry(entry, e.getMessage());
+            return;
+        }
+
+        try {
+            if (ledger != null) ledger.markSent(entry.orderNumber(), entry.contentHash());
+            outbox.complete(entry);
+            COMPLETED.increment();
+        } catch (IOException e) {
+            LOGGER.severe("Sent the invoice " + entry.id() + " but could not update the outbox: " + e.getMessage());
+        }
+    }
+
+    private void send(OutboxEntry entry) throws MessagingException {
+        emailServiceLock.readLock().lock();
+        try {
+            emailService.sendAttachedMimeMessage(entry.to(), entry.lastName(), entry.id(),
+                    new FileDataSource(entry.attachment().toFile()));
+        } finally {
+            emailServiceLock.readLock().unlock();
+        }
+    }
+
+    private void retry(OutboxEntry entry, String error) {
+        if (entry.attempts() + 1 >= maxAttempts) {
+            giveUp(entry, error);
+            return;
+        }
+
+        // exponential backoff with jitter so that a recovering server is not hit by all retries at once
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(entry.attempts(), 20));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        OutboxEntry retried = entry.withFailedAttempt(System.currentTimeMillis() + delay, error);
+        LOGGER.warning("Could not send the invoice " + entry.id() + " (attempt " + retried.attempts() + " of " +
+                maxAttempts + "), retrying in " + delay / 1000 + "s: " + error);
+        try {
+            outbox.reschedule(retried);
+            RETRIES.increment();
+        } catch (IOException e) {
+            giveUp(retried, e.getMessage());
+        }
+    }
+
+    private void giveUp(OutboxEntry entry, String error) {
+        LOGGER.severe("Giving up on the invoice " + entry.id() + " for " + entry.to() + ": " + error);
+        try {
+            outbox.fail(entry.withFailedAttempt(System.currentTimeMillis(), error));
+            // a later run renders and sends the invoice again
+            if (ledger != null) ledger.markRendered(entry.orderNumber(), entry.contentHash());
+        } catch (IOException e) {
+            LOGGER.severe("Could not move the invoice " + entry.id() + " to the failed outbox: " + e.getMessage());
+        }
+        FAILURES.increment();
+    }
+
+    // returns false if the timeout elapsed before every pending email was sent or given up
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        return outbox.awaitEmpty(timeout, unit);
+    }
+
+    // used for every email that is sent from now on, e.g. after the notification configuration was reloaded; returns
+    // once no email is being sent with the previous one anymore, so that it can be closed
+    public void setEmailService(EmailService emailService) {
+        emailServiceLock.writeLock().lock();
+        try {
+            this.emailService = emailService;
+        } finally {
+            emailServiceLock.writeLock().unlock();
+        }
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    // an interrupted close stops waiting and keeps the interrupt, the daemon workers finish their current send
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
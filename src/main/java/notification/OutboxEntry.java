@@ -0,0 +1,61 @@
+package notification;
+
+import org.json.JSONObject;
+
+import java.nio.file.Path;
+
+public record OutboxEntry(String id, String orderNumber, String contentHash, String to, String lastName,
+                          Path attachment, int attempts, long nextAttemptMillis, String lastError) {
+    private static final String ID_KEY = "id";
+    private static final String ORDER_NUMBER_KEY = "orderNumber";
+    private static final String CONTENT_HASH_KEY = "contentHash";
+    private static final String TO_KEY = "to";
+    private static final String LAST_NAME_KEY = "lastName";
+    private static final String ATTACHMENT_KEY = "attachment";
+    private static final String ATTEMPTS_KEY = "attempts";
+    private static final String NEXT_ATTEMPT_KEY = "nextAttemptMillis";
+    private static final String LAST_ERROR_KEY = "lastError";
+
+    public static OutboxEntry create(String id, String orderNumber, String contentHash, String to, String lastName,
+                                     Path attachment) {
+        return new OutboxEntry(id, orderNumber, contentHash, to, lastName, attachment, 0, System.currentTimeMillis(),
+                null);
+    }
+
+    public OutboxEntry withAttachment(Path attachment) {
+        return new OutboxEntry(id, orderNumber, contentHash, to, lastName, attachment, attempts, nextAttemptMillis,
+                lastError);
+    }
+
+    public OutboxEntry withFailedAttempt(long nextAttemptMillis, String error) {
+        return new OutboxEntry(id, orderNumber, contentHash, to, lastName, attachment, attempts + 1,
+                nextAttemptMillis, error);
+    }
+
+    JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put(ID_KEY, id);
+        json.put(ORDER_NUMBER_KEY, orderNumber);
+        json.putOpt(CONTENT_HASH_KEY, contentHash);
+        json.put(TO_KEY, to);
+        json.put(LAST_NAME_KEY, lastName);
+        json.put(ATTACHMENT_KEY, attachment.toString());
+        json.put(ATTEMPTS_KEY, attempts);
+        json.put(NEXT_ATTEMPT_KEY, nextAttemptMillis);
+        json.putOpt(LAST_ERROR_KEY, lastError);
+        return json;
+    }
+
+    static OutboxEntry fromJson(JSONObject json) {
+        return new OutboxEntry(
+                json.getString(ID_KEY),
+                json.getString(ORDER_NUMBER_KEY),
+                json.optString(CONTENT_HASH_KEY, null),
+                json.getString(TO_KEY),
+                json.getString(LAST_NAME_KEY),
+                Path.of(json.getString(ATTACHMENT_KEY)),
+                json.getInt(ATTEMPTS_KEY),
+                json.getLong(NEXT_ATTEMPT_KEY),
+                json.optString(LAST_ERROR_KEY, null));
+    }
+}
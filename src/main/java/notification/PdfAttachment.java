@@ -0,0 +1,42 @@
+package notification;
+
+import javax.activation.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class PdfAttachment implements DataSource {
+    private static final String CONTENT_TYPE = "application/pdf";
+
+    private final String name;
+    private final byte[] data;
+    private final int length;
+
+    // the data is not copied, so it must not change until the message has been sent
+    public PdfAttachment(String name, byte[] data, int length) {
+        this.name = name;
+        this.data = data;
+        this.length = length;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(data, 0, length);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("A PDF attachment is read-only.");
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
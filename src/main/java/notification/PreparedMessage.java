@@ -0,0 +1,92 @@
+package notification;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Session;
+import javax.mail.internet.*;
+import javax.mail.util.ByteArrayDataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// the parts of an invoice email that are the same for every customer, encoded once: the from and bcc headers, the
+// body after the salutation and the transfer encodings; a message only encodes its recipient, subject and salutation
+// and JavaMail neither scans the body nor the attachment for the encoding to use
+class PreparedMessage {
+    private static final String CHARSET = "utf-8";
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=" + CHARSET;
+    // quoted-printable can be encoded in pieces that are joined by soft line breaks, base64 could not
+    private static final String BODY_ENCODING = "quoted-printable";
+    private static final String ATTACHMENT_ENCODING = "base64";
+    private static final byte[] SOFT_LINE_BREAK = "=\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String FROM_HEADER = "From";
+    private static final String BCC_HEADER = "Bcc";
+    private static final String SUBJECT_HEADER = "Subject";
+    private static final String TRANSFER_ENCODING_HEADER = "Content-Transfer-Encoding";
+
+    private final Session session;
+    private final String fromHeader;
+    private final String bccHeader;
+    private final String subject;
+    private final String salutation;
+    private final byte[] encodedBody;
+
+    PreparedMessage(Session session, InternetAddress from, String subject, String salutation, String body)
+            throws MessagingException {
+        this.session = session;
+        this.fromHeader = MimeUtility.fold(FROM_HEADER.length() + 2, from.toString());
+        this.bccHeader = MimeUtility.fold(BCC_HEADER.length() + 2, from.toString());
+        this.subject = subject;
+        this.salutation = salutation;
+        this.encodedBody = encode(body);
+    }
+
+    Message create(String to, String lastName, String id, DataSource attachment) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setHeader(FROM_HEADER, fromHeader);
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
+        message.setHeader(BCC_HEADER, bccHeader);
+        message.setHeader(SUBJECT_HEADER, encodeSubject(subject + id));
+
+        byte[] encodedSalutation = encode(salutation + lastName);
+        byte[] body = new byte[encodedSalutation.length + SOFT_LINE_BREAK.length + encodedBody.length];
+        System.arraycopy(encodedSalutation, 0, body, 0, encodedSalutation.length);
+        System.arraycopy(SOFT_LINE_BREAK, 0, body, encodedSalutation.length, SOFT_LINE_BREAK.length);
+        System.arraycopy(encodedBody, 0, body, encodedSalutation.length + SOFT_LINE_BREAK.length, encodedBody.length);
+        MimeBodyPart bodyPart = new PreencodedMimeBodyPart(BODY_ENCODING);
+        bodyPart.setDataHandler(new DataHandler(new ByteArrayDataSource(body, HTML_CONTENT_TYPE)));
+
+        MimeBodyPart attachmentBodyPart = new MimeBodyPart();
+        attachmentBodyPart.setDataHandler(new DataHandler(attachment));
+        attachmentBodyPart.setFileName(attachment.getName());
+        attachmentBodyPart.setHeader(TRANSFER_ENCODING_HEADER, ATTACHMENT_ENCODING);
+
+        Multipart multipart = new MimeMultipart();
+        multipart.addBodyPart(bodyPart);
+        multipart.addBodyPart(attachmentBodyPart);
+        message.setContent(multipart);
+        return message;
+    }
+
+    private static String encodeSubject(String subject) throws MessagingException {
+        try {
+            return MimeUtility.fold(SUBJECT_HEADER.length() + 2, MimeUtility.encodeText(subject, CHARSET, null));
+        } catch (IOException e) {
+            throw new MessagingException("Could not encode the subject " + subject, e);
+        }
+    }
+
+    private static byte[] encode(String text) throws MessagingException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(text.length() + text.length() / 8);
+        try (OutputStream out = MimeUtility.encode(encoded, BODY_ENCODING)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MessagingException("Could not encode the email body", e);
+        }
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,30 @@
+package notification;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiter {
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final long intervalNanos;
+    private long nextFreeNanos;
+
+    // a rate of zero or less disables the limit
+    public RateLimiter(double permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (NANOS_PER_SECOND / permitsPerSecond) : 0;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        if (intervalNanos == 0) return;
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // an idle limiter does not save up permits, so a burst after a pause is still spaced out
+            long slot = Math.max(now, nextFreeNanos);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+}
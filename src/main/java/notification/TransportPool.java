@@ -0,0 +1,110 @@
+package notification;
+
+import metrics.Counter;
+import metrics.MetricRegistry;
+
+import javax.mail.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+class TransportPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String PROTOCOL = "smtp";
+    private static final int MAX_ATTEMPTS = 2;
+    private static final Counter RECONNECTS = MetricRegistry.counter("smtp_reconnects_total",
+            "Pooled SMTP connections that failed and were replaced by a new one");
+
+    private final Session session;
+    private final Semaphore connections;
+    private final BlockingQueue<Transport> idleTransports;
+    private volatile boolean closed;
+
+    TransportPool(Session session, int size) {
+        if (size < 1) throw new IllegalArgumentException("The transport pool size must be positive.");
+        this.session = session;
+        this.connections = new Semaphore(size, true);
+        this.idleTransports = new LinkedBlockingQueue<>(size);
+        this.closed = false;
+    }
+
+    // only getting a connection is retried; once the message is handed to the server it may have been accepted, so a
+    // failure from then on is thrown instead of sending the invoice a second time
+    void send(Message message) throws MessagingException {
+        if (closed) throw new IllegalStateException("The transport pool is closed.");
+        message.saveChanges();
+
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection", e);
+        }
+
+        Transport transport = null;
+        boolean reusable = false;
+        try {
+            transport = acquireTransport();
+            transport.sendMessage(message, message.getAllRecipients());
+            reusable = true;
+        } catch (SendFailedException e) {
+            // the recipients were rejected, but the connection itself is still usable
+            reusable = true;
+            throw e;
+        } finally {
+            if (transport != null) {
+                if (reusable) release(transport);
+                else closeQuietly(transport);
+            }
+            connections.release();
+        }
+    }
+
+    // an idle connection the server has dropped in the meantime is replaced by a new one
+    private Transport acquireTransport() throws MessagingException {
+        Transport transport = idleTransports.poll();
+        if (transport != null) {
+            // isConnected sends a NOOP, which fails if the server closed the connection
+            if (transport.isConnected()) return transport;
+            LOGGER.warning("Reconnecting to the SMTP server after it closed an idle connection");
+            closeQuietly(transport);
+            RECONNECTS.increment();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return connect();
+            } catch (MessagingException e) {
+                if (attempt == MAX_ATTEMPTS) throw e;
+                LOGGER.warning("Connecting to the SMTP server again after: " + e.getMessage());
+            }
+        }
+    }
+
+    private Transport connect() throws MessagingException {
+        Transport transport = session.getTransport(PROTOCOL);
+        transport.connect();
+        return transport;
+    }
+
+    private void release(Transport transport) {
+        if (closed || !idleTransports.offer(transport)) closeQuietly(transport);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Transport transport;
+        while ((transport = idleTransports.poll()) != null) {
+            closeQuietly(transport);
+        }
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            LOGGER.warning("Could not close the SMTP connection: " + e.getMessage());
+        }
+    }
+}
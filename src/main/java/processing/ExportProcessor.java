@@ -0,0 +1,302 @@
+package processing;
+
+import com.itextpdf.text.DocumentException;
+import data.CustomerIndex;
+import data.NotDeserializedYetException;
+import data.OrderSchema;
+import data.OrderSnapshot;
+import data.OrderValidator;
+import data.ValidationReport;
+import data.WooCommerceDataDeserializer;
+import data.WooCommerceOrderStream;
+import document.InvoiceTemplate;
+import document.PdfBufferPool;
+import ledger.OrderLedger;
+import model.Order;
+import notification.EmailService;
+import notification.OutboxDispatcher;
+import org.json.JSONException;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+// processes the order exports of a run one after another with the parts of the run that outlive a single export:
+// the archive, the ledger, the outbox, the PDF buffers and the customer index
+public class ExportProcessor {
+    // without a transport pool every send opens its own connection
+    public static final int DEFAULT_SMTP_CONNECTIONS = 2;
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String BUNDLE_PREFIX = "invoices-";
+    private static final String DEFAULT_QUARANTINE_DIRECTORY = "quarantine";
+    private static final DateTimeFormatter QUARANTINE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd-HHmmss");
+    private static final int LOGGED_REJECTIONS = 10;
+
+    private enum Mode {
+        SEQUENTIAL, PIPELINE, VIRTUAL_THREADS
+    }
+
+    private final InvoiceArchive archive;
+    private final OrderLedger ledger;
+    private final OutboxDispatcher dispatcher;
+    private final PdfBufferPool bufferPool;
+    private final Shard shard;
+    private final CustomerIndex customerIndex;
+    private Path snapshotDirectory;
+    private boolean stream;
+    private boolean validate;
+    private String quarantineDirectory;
+    private Set<InvoiceBundle.Format> bundleFormats;
+    private boolean forceRender;
+    private Mode mode;
+    private int renderWorkers;
+    private int mailWorkers;
+    private int queueCapacity;
+    private int diskWriters;
+    private Integer smtpConnections;
+    private int maxInFlight;
+
+    // every part but the archive may be null
+    public ExportProcessor(InvoiceArchive archive, OrderLedger ledger, OutboxDispatcher dispatcher,
+                           PdfBufferPool bufferPool, Shard shard, CustomerIndex customerIndex) {
+        this.archive = archive;
+        this.ledger = ledger;
+        this.dispatcher = dispatcher;
+        this.bufferPool = bufferPool;
+        this.shard = shard;
+        this.customerIndex = customerIndex;
+        this.validate = true;
+        this.mode = Mode.SEQUENTIAL;
+    }
+
+    // more sends at once than the transport pool has connections would only wait for a connection
+    public static int smtpConnections(EmailService emailService) {
+        return emailService.getPoolSize() > 0 ? emailService.getPoolSize() : DEFAULT_SMTP_CONNECTIONS;
+    }
+
+    public void process(Path export, InvoiceTemplate template, EmailService emailService)
+            throws IOException, DocumentException, MessagingException, NotDeserializedYetException,
+            InterruptedException {
+        InvoiceProcessor processor = newProcessor(template, emailService);
+
+        try (InvoiceBundle bundle = newBundle(export, template)) {
+            processor.setBundle(bundle);
+            Path snapshot = null;
+            byte[] sourceHash = null;
+            List<Order> snapshotOrders = null;
+            if (snapshotDirectory != null) {
+                snapshot = snapshotDirectory.resolve(export.getFileName() + SNAPSHOT_SUFFIX);
+                sourceHash = OrderSnapshot.hash(export);
+                snapshotOrders = OrderSnapshot.load(snapshot, sourceHash);
+                Files.createDirectories(snapshot.getParent());
+            }
+
+            WooCommerceDataDeserializer wooCommerceDataDeserializer = new WooCommerceDataDeserializer(export.toString());
+            wooCommerceDataDeserializer.setCustomerIndex(customerIndex);
+            // a snapshot only holds orders that were deserialized, and validated unless that was turned off
+            OrderValidator validator = snapshotOrders == null && validate ? newValidator(export, template) : null;
+            wooCommerceDataDeserializer.setValidator(validator);
+            try (validator) {
+                if (snapshotOrders != null) {
+                    LOGGER.info("Loaded " + snapshotOrders.size() + " orders of " + export + " from the snapshot " +
+                            snapshot);
+                    process(numbered(filter(snapshotOrders.iterator())), processor, emailService);
+                } else if (stream) {
+                    LOGGER.info("Streaming the orders from " + export);
+                    try (WooCommerceOrderStream orders = wooCommerceDataDeserializer.stream();
+                         OrderSnapshot.Writer writer = snapshot == null ? null : new OrderSnapshot.Writer(snapshot,
+                                 sourceHash)) {
+                        // the snapshot is of the whole export, so that every shard can use it
+                        process(filter(writer == null ? orders : writer.record(orders)), processor, emailService);
+                        if (writer != null) commit(writer);
+                    }
+                } else {
+                    wooCommerceDataDeserializer.deserialize();
+                    List<Order> orders = wooCommerceDataDeserializer.getData();
+                    if (snapshot != null) writeSnapshot(snapshot, sourceHash, orders);
+                    process(filter(orders.iterator()), processor, emailService);
+                }
+            } catch (JSONException e) {
+                // a streamed export may break after some of its orders were already processed
+                throw new IOException("Could not read the order export " + export + ": " + e.getMessage(), e);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (validator != null) log(validator.getReport());
+        }
+
+        if (processor.getFailedCount() > 0) {
+            LOGGER.severe("Could not send the invoices of " + processor.getFailedCount() + " orders of " + export);
+        }
+        if (ledger != null) {
+            LOGGER.info("Skipped " + processor.getSkippedCount() + " orders that the ledger shows as already sent or " +
+                    "queued");
+        }
+    }
+
+    // the snapshot only saves time on the next run, so failing to write it does not fail this one
+    private static void writeSnapshot(Path snapshot, byte[] sourceHash, List<Order> orders) {
+        try {
+            OrderSnapshot.write(snapshot, sourceHash, orders);
+        } catch (IOException | ArithmeticException e) {
+            LOGGER.warning("Could not write the snapshot " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    private static void commit(OrderSnapshot.Writer writer) {
+        try {
+            writer.commit();
+        } catch (IOException e) {
+            LOGGER.warning("Could not write the snapshot: " + e.getMessage());
+        }
+    }
+
+    // the rejected orders of the export go to e.g. quarantine/orders-2024-01-31-120000.json
+    private OrderValidator newValidator(Path export, InvoiceTemplate template) {
+        String directory = quarantineDirectory != null ? quarantineDirectory
+                : template.getConfig().outputPath() + DEFAULT_QUARANTINE_DIRECTORY;
+        String exportName = export.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        String name = exportName + "-" + LocalDateTime.now().format(QUARANTINE_TIMESTAMP);
+        if (shard != null) name += "." + shard.getName();
+        return new OrderValidator(OrderSchema.WOO_COMMERCE, export, Path.of(directory, name));
+    }
+
+    private static void log(ValidationReport report) {
+        if (report.isValid()) {
+            LOGGER.info("Validated the " + report.getOrderCount() + " orders of " + report.getExport());
+            return;
+        }
+
+        List<ValidationReport.Rejection> rejections = report.getRejections();
+        LOGGER.warning("Quarantined " + rejections.size() + " of " + report.getOrderCount() + " orders of " +
+                report.getExport() + " in " + report.getQuarantine() + ", all errors are listed in " +
+                report.getErrorFile());
+        for (ValidationReport.Rejection rejection : rejections.subList(0, Math.min(LOGGED_REJECTIONS,
+                rejections.size()))) {
+            LOGGER.warning(rejection.toString());
+        }
+    }
+
+    // one bundle per export, e.g. invoices-2024-01-31-orders.pdf next to the single invoices
+    private InvoiceBundle newBundle(Path export, InvoiceTemplate template) {
+        if (bundleFormats == null) return null;
+        String exportName = export.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        Path basePath = Path.of(template.getConfig().outputPath() + BUNDLE_PREFIX + LocalDate.now() + "-" +
+                exportName);
+        if (shard != null) basePath = basePath.resolveSibling(basePath.getFileName() + "." + shard.getName());
+        return new InvoiceBundle(basePath, bundleFormats);
+    }
+
+    private Iterator<Order> filter(Iterator<Order> orders) {
+        return shard == null ? orders : shard.filter(orders);
+    }
+
+    // the customer numbers in a snapshot are the ones of the run that wrote it
+    private Iterator<Order> numbered(Iterator<Order> orders) {
+        if (customerIndex == null) return orders;
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return orders.hasNext();
+            }
+
+            @Override
+            public Order next() {
+                return customerIndex.resolve(orders.next());
+            }
+        };
+    }
+
+    public InvoiceProcessor newProcessor(InvoiceTemplate template, EmailService emailService) {
+        InvoiceProcessor processor;
+        if (bufferPool != null) {
+            processor = new InvoiceProcessor(template, emailService, LocalDate.now(), bufferPool, archive);
+        } else {
+            processor = new InvoiceProcessor(template, emailService, LocalDate.now());
+        }
+        processor.setLedger(ledger);
+        processor.setForceRender(forceRender);
+        if (dispatcher != null) processor.setOutbox(dispatcher.getOutbox());
+        return processor;
+    }
+
+    private void process(Iterator<Order> orders, InvoiceProcessor processor, EmailService emailService)
+            throws IOException, DocumentException, MessagingException, InterruptedException {
+        if (mode == Mode.VIRTUAL_THREADS) {
+            ResourceLimits limits = ResourceLimits.of(renderWorkers, diskWriters,
+                    smtpConnections != null ? smtpConnections : smtpConnections(emailService));
+            new ThreadPerOrderRunner(processor, limits, maxInFlight).run(orders);
+        } else if (mode == Mode.PIPELINE) {
+            new InvoicePipeline(processor, renderWorkers, mailWorkers, queueCapacity).run(orders);
+        } else {
+            while (orders.hasNext()) {
+                Order order = orders.next();
+                try {
+                    processor.process(order);
+                } catch (MessagingException e) {
+                    processor.failed(order, e);
+                }
+            }
+        }
+    }
+
+    // keeps a snapshot of every parsed export in the directory and loads an unchanged export from it
+    public void setSnapshotDirectory(Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    public void setStream(boolean stream) {
+        this.stream = stream;
+    }
+
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    // by default the quarantine directory in the output path of the invoice configuration
+    public void setQuarantineDirectory(String quarantineDirectory) {
+        this.quarantineDirectory = quarantineDirectory;
+    }
+
+    public void setBundleFormats(Set<InvoiceBundle.Format> bundleFormats) {
+        this.bundleFormats = bundleFormats;
+    }
+
+    public void setForceRender(boolean forceRender) {
+        this.forceRender = forceRender;
+    }
+
+    public void setPipeline(int renderWorkers, int mailWorkers, int queueCapacity) {
+        this.mode = Mode.PIPELINE;
+        this.renderWorkers = renderWorkers;
+        this.mailWorkers = mailWorkers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    // without a number of SMTP connections, as many as the transport pool of the export's configuration has
+    public void setVirtualThreads(int renderWorkers, int diskWriters, Integer smtpConnections, int maxInFlight) {
+        this.mode = Mode.VIRTUAL_THREADS;
+        this.renderWorkers = renderWorkers;
+        this.diskWriters = diskWriters;
+        this.smtpConnections = smtpConnections;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public OrderLedger getLedger() {
+        return ledger;
+    }
+
+    public OutboxDispatcher getDispatcher() {
+        return dispatcher;
+    }
+}
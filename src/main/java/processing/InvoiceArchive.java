@@ -0,0 +1,78 @@
+package processing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+public class InvoiceArchive implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    public enum Mode {
+        NONE, SYNC, ASYNC;
+
+        public static Mode parse(String mode) {
+            try {
+                return valueOf(mode.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown archive mode: " + mode + " (expected none, sync or async)", e);
+            }
+        }
+    }
+
+    private final Mode mode;
+    private final ExecutorService writer;
+    private final AtomicReference<IOException> failure;
+
+    public InvoiceArchive(Mode mode) {
+        this.mode = mode;
+        this.writer = mode == Mode.ASYNC ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invoice-archive");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.failure = new AtomicReference<>();
+    }
+
+    // only invoices rendered into a PdfBuffer need to be archived, the others already are on disk
+    public void store(RenderedInvoice invoice) throws IOException {
+        if (invoice.pdf() == null || mode == Mode.NONE) return;
+
+        if (mode == Mode.SYNC) {
+            write(invoice);
+            return;
+        }
+
+        invoice.pdf().retain();
+        writer.execute(() -> {
+            try {
+                write(invoice);
+            } catch (IOException e) {
+                LOGGER.severe("Could not archive " + invoice.fileName() + ": " + e.getMessage());
+                failure.compareAndSet(null, e);
+            } finally {
+                invoice.pdf().release();
+            }
+        });
+    }
+
+    private static void write(RenderedInvoice invoice) throws IOException {
+        InvoiceDigestFile.delete(invoice.fileName());
+        invoice.pdf().writeTo(Path.of(invoice.fileName()));
+        InvoiceDigestFile.write(invoice.fileName(), invoice.digest());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) Threads.shutdownAndAwait(writer, "the archive to be written");
+        IOException e = failure.get();
+        if (e != null) throw e;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+}
@@ -0,0 +1,195 @@
+package processing;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.io.WindowRandomAccessSource;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSmartCopy;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+import com.itextpdf.text.pdf.ReaderProperties;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// collects the invoices of a run in one merged PDF and/or one ZIP archive, both are written sequentially by a single
+// thread while the run goes on and only appear under their final name once they are complete
+public class InvoiceBundle implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String PART_SUFFIX = ".part";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        PDF, ZIP;
+
+        public static Set<Format> parse(String formats) {
+            if (formats.equalsIgnoreCase("both")) return EnumSet.allOf(Format.class);
+            Set<Format> parsed = EnumSet.noneOf(Format.class);
+            for (String format : formats.split(",")) {
+                try {
+                    parsed.add(valueOf(format.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown bundle format: " + format + " (expected pdf, zip or both)", e);
+                }
+            }
+            return parsed;
+        }
+
+        String extension() {
+            return "." + name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Path basePath;
+    private final Set<Format> formats;
+    private final ExecutorService writer;
+    private final AtomicReference<Exception> failure;
+    private final Set<String> entryNames;
+
+    // only touched by the writer thread
+    private Document document;
+    private PdfSmartCopy copy;
+    private ZipOutputStream zip;
+    private int count;
+
+    // the bundles are written to basePath with the extension of their format appended
+    public InvoiceBundle(Path basePath, Set<Format> formats) {
+        if (formats.isEmpty()) throw new IllegalArgumentException("A bundle needs at least one format.");
+        this.basePath = basePath;
+        this.formats = EnumSet.copyOf(formats);
+        this.writer = Executors.newSingleThreadExecutor(Threads.namedDaemonThreads("invoice-bundle"));
+        this.failure = new AtomicReference<>();
+        this.entryNames = new HashSet<>();
+    }
+
+    // a buffered invoice is retained until it has been appended, a rendered file is read back by the writer thread
+    public void add(RenderedInvoice invoice) {
+        if (invoice.pdf() != null) invoice.pdf().retain();
+        writer.execute(() -> {
+            try {
+                if (failure.get() != null) return;
+                if (invoice.pdf() == null) {
+                    byte[] pdf = Files.readAllBytes(Path.of(invoice.fileName()));
+                    append(invoice.fileName(), pdf, pdf.length);
+                } else {
+                    append(invoice.fileName(), invoice.pdf().getBuffer(), invoice.pdf().size());
+                }
+            } catch (IOException | DocumentException | RuntimeException e) {
+                LOGGER.severe("Could not add " + invoice.fileName() + " to the bundle " + basePath + ": " +
+                        e.getMessage());
+                failure.compareAndSet(null, e);
+            } finally {
+                if (invoice.pdf() != null) invoice.pdf().release();
+            }
+        });
+    }
+
+    private void append(String fileName, byte[] pdf, int length) throws IOException, DocumentException {
+        String name = Path.of(fileName).getFileName().toString();
+        if (!entryNames.add(name)) {
+            LOGGER.warning("Skipping " + name + ", the bundle " + basePath + " already contains it");
+            return;
+        }
+        if (count == 0) open();
+
+        if (copy != null) {
+            PdfReader reader = new PdfReader(new ReaderProperties(), new RandomAccessFileOrArray(
+                    new WindowRandomAccessSource(new RandomAccessSourceFactory().createSource(pdf), 0, length)));
+            try {
+                // identical image and font objects are written to the merged document only once
+                copy.addDocument(reader);
+                copy.freeReader(reader);
+            } finally {
+                reader.close();
+            }
+        }
+
+        if (zip != null) {
+            // the PDF streams are compressed already, so the entries are stored as they are
+            CRC32 crc = new CRC32();
+            crc.update(pdf, 0, length);
+            ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(length);
+            entry.setCompressedSize(length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(pdf, 0, length);
+            zip.closeEntry();
+        }
+        count++;
+    }
+
+    // the files are only created for the first invoice, so that an empty run leaves no empty bundle behind
+    private void open() throws IOException, DocumentException {
+        if (formats.contains(Format.PDF)) {
+            document = new Document();
+            copy = new PdfSmartCopy(document, newOutputStream(Format.PDF));
+            copy.setFullCompression();
+            document.open();
+        }
+        if (formats.contains(Format.ZIP)) {
+            zip = new ZipOutputStream(newOutputStream(Format.ZIP));
+        }
+    }
+
+    private OutputStream newOutputStream(Format format) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(partPath(format)), OUTPUT_BUFFER_SIZE);
+    }
+
+    private Path partPath(Format format) {
+        return basePath.resolveSibling(basePath.getFileName() + format.extension() + PART_SUFFIX);
+    }
+
+    public Path getPath(Format format) {
+        return basePath.resolveSibling(basePath.getFileName() + format.extension());
+    }
+
+    @Override
+    public void close() throws IOException {
+        Threads.shutdownAndAwait(writer, "the bundle " + basePath + " to be written");
+        if (count == 0 && failure.get() == null) return;
+
+        try {
+            if (document != null) document.close();
+            if (zip != null) zip.close();
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+
+        Exception e = failure.get();
+        for (Format format : formats) {
+            if (e == null) {
+                Files.move(partPath(format), getPath(format), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.deleteIfExists(partPath(format));
+            }
+        }
+        if (e == null) {
+            LOGGER.info("Bundled " + count + " invoices in " + basePath + " (" + formats + ")");
+            return;
+        }
+        if (e instanceof IOException ioException) throw ioException;
+        throw new IOException("Could not write the bundle " + basePath, e);
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
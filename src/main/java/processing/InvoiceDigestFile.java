@@ -0,0 +1,43 @@
+package processing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+// <invoice>.pdf.digest holds the digest of the inputs an invoice was rendered from and the size of the PDF; it is
+// removed before the PDF is written and written after it is complete, so it never vouches for a partial file
+final class InvoiceDigestFile {
+    private static final String EXTENSION = ".digest";
+    private static final String SEPARATOR = " ";
+
+    private InvoiceDigestFile() {
+    }
+
+    static boolean matches(String pdfFileName, String digest) throws IOException {
+        Path pdf = Path.of(pdfFileName);
+        String content;
+        long size;
+        try {
+            content = Files.readString(of(pdf), StandardCharsets.US_ASCII).strip();
+            size = Files.size(pdf);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return content.equals(digest + SEPARATOR + size);
+    }
+
+    static void delete(String pdfFileName) throws IOException {
+        Files.deleteIfExists(of(Path.of(pdfFileName)));
+    }
+
+    static void write(String pdfFileName, String digest) throws IOException {
+        Path pdf = Path.of(pdfFileName);
+        Files.writeString(of(pdf), digest + SEPARATOR + Files.size(pdf) + "\n", StandardCharsets.US_ASCII);
+    }
+
+    private static Path of(Path pdf) {
+        return pdf.resolveSibling(pdf.getFileName() + EXTENSION);
+    }
+}
@@ -0,0 +1,178 @@
+package processing;
+
+import com.itextpdf.text.DocumentException;
+import model.Order;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+public class InvoicePipeline {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final Order END_OF_ORDERS = new Order(null, null, null, null);
+    private static final RenderedInvoice END_OF_INVOICES = new RenderedInvoice(null, null, null, null, null, null);
+    private static final long QUEUE_POLL_MILLIS = 100;
+
+    private final InvoiceProcessor processor;
+    private final int renderWorkers;
+    private final int mailWorkers;
+    private final int queueCapacity;
+
+    private final AtomicReference<Exception> failure;
+    private final AtomicLong renderedCount;
+    private final AtomicLong sentCount;
+
+    public InvoicePipeline(InvoiceProcessor processor, int renderWorkers, int mailWorkers, int queueCapacity) {
+        if (renderWorkers < 1 || mailWorkers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Worker counts and queue capacity must be positive.");
+        }
+        this.processor = processor;
+        this.renderWorkers = renderWorkers;
+        this.mailWorkers = mailWorkers;
+        this.queueCapacity = queueCapacity;
+        this.failure = new AtomicReference<>();
+        this.renderedCount = new AtomicLong();
+        this.sentCount = new AtomicLong();
+    }
+
+    public void run(Iterator<Order> orders) throws IOException, DocumentException, MessagingException,
+            InterruptedException {
+        BlockingQueue<Order> renderQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<RenderedInvoice> mailQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger activeRenderWorkers = new AtomicInteger(renderWorkers);
+
+        ExecutorService renderExecutor = Executors.newFixedThreadPool(renderWorkers,
+                Threads.namedDaemonThreads("invoice-render"));
+        ExecutorService mailExecutor = Executors.newFixedThreadPool(mailWorkers,
+                Threads.namedDaemonThreads("invoice-mail"));
+        long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < renderWorkers; i++) {
+                renderExecutor.execute(() -> render(renderQueue, mailQueue, activeRenderWorkers));
+            }
+            for (int i = 0; i < mailWorkers; i++) {
+                mailExecutor.execute(() -> dispatch(mailQueue));
+            }
+
+            try {
+                while (failure.get() == null && orders.hasNext()) {
+                    put(renderQueue, orders.next());
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } finally {
+                for (int i = 0; i < renderWorkers; i++) {
+                    put(renderQueue, END_OF_ORDERS);
+                }
+            }
+
+            renderExecutor.shutdown();
+            mailExecutor.shutdown();
+            renderExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            mailExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            renderExecutor.shutdownNow();
+            mailExecutor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LOGGER.info("Pipeline rendered " + renderedCount.get() + " and sent " + sentCount.get() + " invoices in " +
+                String.format("%.2f", seconds) + "s (" + renderWorkers + " render workers, " + mailWorkers +
+                " mail workers)");
+
+        Threads.rethrow(failure.get());
+    }
+
+    private void render(BlockingQueue<Order> renderQueue, BlockingQueue<RenderedInvoice> mailQueue,
+                        AtomicInteger activeRenderWorkers) {
+        try {
+            Order order;
+            while ((order = renderQueue.take()) != END_OF_ORDERS) {
+                if (failure.get() != null) continue;
+                try {
+                    RenderedInvoice invoice = processor.render(order);
+                    if (invoice == null) continue;
+                    renderedCount.incrementAndGet();
+                    if (!put(mailQueue, invoice)) discard(invoice);
+                } catch (IOException | DocumentException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (activeRenderWorkers.decrementAndGet() == 0) {
+                signalEndOfInvoices(mailQueue);
+            }
+        }
+    }
+
+    private void signalEndOfInvoices(BlockingQueue<RenderedInvoice> mailQueue) {
+        try {
+            for (int i = 0; i < mailWorkers; i++) {
+                mailQueue.put(END_OF_INVOICES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(BlockingQueue<RenderedInvoice> mailQueue) {
+        try {
+            RenderedInvoice invoice;
+            while ((invoice = mailQueue.take()) != END_OF_INVOICES) {
+                if (failure.get() != null) {
+                    discard(invoice);
+                    continue;
+                }
+                try {
+                    processor.send(invoice);
+                    sentCount.incrementAndGet();
+                } catch (MessagingException e) {
+                    processor.failed(invoice.order(), e);
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> boolean put(BlockingQueue<T> queue, T item) throws InterruptedException {
+        // keep offering so that a producer never blocks forever once the consumers stopped because of a failure
+        while (!queue.offer(item, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null && item != END_OF_ORDERS && item != END_OF_INVOICES) return false;
+        }
+        return true;
+    }
+
+    private static void discard(RenderedInvoice invoice) {
+        // give a pooled buffer back, otherwise render workers could wait for it forever
+        if (invoice.pdf() != null) invoice.pdf().release();
+    }
+
+    private void fail(Exception e) {
+        if (failure.compareAndSet(null, e)) {
+            LOGGER.severe("Aborting the pipeline: " + e.getMessage());
+        }
+    }
+
+    public long getRenderedCount() {
+        return renderedCount.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+}
@@ -0,0 +1,275 @@
+package processing;
+
+import com.itextpdf.text.DocumentException;
+import data.ContentDigest;
+import document.InvoiceGenerator;
+import document.InvoiceTemplate;
+import document.PdfBuffer;
+import document.PdfBufferPool;
+import ledger.OrderLedger;
+import metrics.Counter;
+import metrics.MetricRegistry;
+import model.Order;
+import notification.EmailService;
+import notification.Outbox;
+import notification.OutboxEntry;
+import notification.PdfAttachment;
+
+import javax.mail.MessagingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+public class InvoiceProcessor {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    public static final Counter COMPLETED = MetricRegistry.counter("orders_completed_total",
+            "Orders whose invoice was rendered and sent");
+    private static final Counter SKIPPED = MetricRegistry.counter("orders_skipped_total",
+            "Orders skipped because the ledger shows them as already sent");
+    private static final Counter FAILED = MetricRegistry.counter("orders_failed_total",
+            "Orders whose invoice was rendered but could not be sent");
+    private static final Counter UNCHANGED = MetricRegistry.counter("invoices_unchanged_total",
+            "Invoices not rendered again because the PDF in the output path was rendered from the same inputs");
+
+    private final InvoiceTemplate template;
+    private final EmailService emailService;
+    private final LocalDate performanceDate;
+    private final PdfBufferPool bufferPool;
+    private final InvoiceArchive archive;
+    private final AtomicLong skippedCount;
+    private final AtomicLong failedCount;
+    private OrderLedger ledger;
+    private Outbox outbox;
+    private ResourceLimits limits;
+    private InvoiceBundle bundle;
+    private boolean forceRender;
+
+    // renders every invoice directly into its file in the output path
+    public InvoiceProcessor(InvoiceTemplate template, EmailService emailService, LocalDate performanceDate) {
+        this(template, emailService, performanceDate, null, null);
+    }
+
+    // renders every invoice into a pooled buffer that is attached to the email as it is and archived by the archive
+    public InvoiceProcessor(InvoiceTemplate template, EmailService emailService, LocalDate performanceDate,
+                            PdfBufferPool bufferPool, InvoiceArchive archive) {
+        this.template = template;
+        this.emailService = emailService;
+        this.performanceDate = performanceDate;
+        this.bufferPool = bufferPool;
+        this.archive = archive;
+        this.skippedCount = new AtomicLong();
+        this.failedCount = new AtomicLong();
+        this.ledger = null;
+        this.outbox = null;
+        this.limits = null;
+        this.bundle = null;
+        this.forceRender = false;
+    }
+
+    public void process(Order order) throws IOException, DocumentException, MessagingException, InterruptedException {
+        RenderedInvoice invoice = render(order);
+        if (invoice != null) send(invoice);
+    }
+
+    // returns null if the ledger shows that the invoice for this order has already been sent or is in the outbox
+    public RenderedInvoice render(Order order) throws IOException, DocumentException, InterruptedException {
+        String contentHash = ledger == null ? null : ContentDigest.of(order);
+        if (ledger != null && (ledger.isSent(order.orderNumber(), contentHash)
+                || outbox != null && ledger.isQueued(order.orderNumber(), contentHash))) {
+            skippedCount.incrementAndGet();
+            SKIPPED.increment();
+            return null;
+        }
+
+        InvoiceGenerator generator = new InvoiceGenerator(template, order, performanceDate);
+        String digest = generator.getDigest();
+        if (!forceRender && InvoiceDigestFile.matches(generator.getFileName(), digest)) {
+            // the same inputs render the same bytes, so the PDF in the output path is attached as it is
+            UNCHANGED.increment();
+            return bundled(new RenderedInvoice(order, generator.getId(), generator.getFileName(), null, contentHash,
+                    digest));
+        }
+        if (ledger != null && ledger.isRendered(order.orderNumber(), contentHash)
+                && Files.exists(Path.of(generator.getFileName()))) {
+            // rendered by an earlier run that stopped before sending it
+            return bundled(new RenderedInvoice(order, generator.getId(), generator.getFileName(), null, contentHash,
+                    digest));
+        }
+
+        if (bufferPool == null) {
+            InvoiceDigestFile.delete(generator.getFileName());
+            if (limits == null) {
+                generator.generate();
+            } else {
+                generateLimited(generator);
+            }
+            InvoiceDigestFile.write(generator.getFileName(), digest);
+            if (ledger != null) ledger.markRendered(order.orderNumber(), contentHash);
+            return bundled(new RenderedInvoice(order, generator.getId(), generator.getFileName(), null, contentHash,
+                    digest));
+        }
+
+        PdfBuffer pdf = bufferPool.acquire();
+        try {
+            acquire(limits == null ? null : limits.renderers());
+            try {
+                generator.generate(pdf);
+            } finally {
+                release(limits == null ? null : limits.renderers());
+            }
+            RenderedInvoice invoice = new RenderedInvoice(order, generator.getId(), generator.getFileName(), pdf,
+                    contentHash, digest);
+            archive.store(invoice);
+            // an asynchronously archived file may not be complete yet, so only a synchronous copy counts as rendered
+            if (ledger != null && archive.getMode() == InvoiceArchive.Mode.SYNC) {
+                ledger.markRendered(order.orderNumber(), contentHash);
+            }
+            return bundled(invoice);
+        } catch (IOException | DocumentException | InterruptedException | RuntimeException e) {
+            pdf.release();
+            throw e;
+        }
+    }
+
+    private RenderedInvoice bundled(RenderedInvoice invoice) {
+        if (bundle != null) bundle.add(invoice);
+        return invoice;
+    }
+
+    // renders into memory first, so that the render slot is not held while waiting for a disk writer
+    private void generateLimited(InvoiceGenerator generator)
+            throws IOException, DocumentException, InterruptedException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        acquire(limits.renderers());
+        try {
+            generator.generate(pdf);
+        } finally {
+            release(limits.renderers());
+        }
+
+        acquire(limits.diskWriters());
+        try (OutputStream out = Files.newOutputStream(Path.of(generator.getFileName()))) {
+            pdf.writeTo(out);
+        } finally {
+            release(limits.diskWriters());
+        }
+    }
+
+    public void send(RenderedInvoice invoice) throws IOException, MessagingException, InterruptedException {
+        Order order = invoice.order();
+        String email = order.customer().getContact().email();
+        String lastName = order.customer().getLastName();
+        PdfBuffer pdf = invoice.pdf();
+
+        if (outbox != null) {
+            enqueue(invoice, email, lastName);
+            return;
+        }
+
+        Semaphore smtpConnections = limits == null ? null : limits.smtpConnections();
+        try {
+            acquire(smtpConnections);
+            try {
+                if (pdf == null) {
+                    emailService.sendAttachedMimeMessage(email, lastName, invoice.id(), invoice.fileName());
+                } else {
+                    String name = Path.of(invoice.fileName()).getFileName().toString();
+                    emailService.sendAttachedMimeMessage(email, lastName, invoice.id(),
+                            new PdfAttachment(name, pdf.getBuffer(), pdf.size()));
+                }
+            } finally {
+                release(smtpConnections);
+            }
+        } finally {
+            if (pdf != null) pdf.release();
+        }
+
+        if (ledger != null) ledger.markSent(order.orderNumber(), invoice.contentHash());
+        COMPLETED.increment();
+    }
+
+    // hands the invoice to the outbox, whose dispatcher sends it and marks it as sent in the ledger
+    private void enqueue(RenderedInvoice invoice, String email, String lastName)
+            throws IOException, InterruptedException {
+        Order order = invoice.order();
+        PdfBuffer pdf = invoice.pdf();
+        OutboxEntry entry = OutboxEntry.create(invoice.id(), order.orderNumber(), invoice.contentHash(), email,
+                lastName, Path.of(invoice.fileName()));
+
+        // marked before the dispatcher can see the entry, otherwise its SENT record could precede this one
+        if (ledger != null) ledger.markQueued(order.orderNumber(), invoice.contentHash());
+        Semaphore diskWriters = limits == null ? null : limits.diskWriters();
+        try {
+            acquire(diskWriters);
+            try {
+                if (pdf == null) {
+                    outbox.enqueue(entry);
+                } else {
+                    outbox.enqueue(entry, pdf.getBuffer(), pdf.size());
+                }
+            } finally {
+                release(diskWriters);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (ledger != null) ledger.markRendered(order.orderNumber(), invoice.contentHash());
+            throw e;
+        } finally {
+            if (pdf != null) pdf.release();
+        }
+    }
+
+    // an email that could not be sent only fails its own order; the ledger keeps the order as rendered, so the next
+    // run sends it again
+    void failed(Order order, MessagingException e) {
+        failedCount.incrementAndGet();
+        FAILED.increment();
+        LOGGER.severe("Could not send the invoice for order " + order.orderNumber() + ": " + e.getMessage());
+    }
+
+    private static void acquire(Semaphore resource) throws InterruptedException {
+        if (resource != null) resource.acquire();
+    }
+
+    private static void release(Semaphore resource) {
+        if (resource != null) resource.release();
+    }
+
+    public void setResourceLimits(ResourceLimits limits) {
+        this.limits = limits;
+    }
+
+    public void setBundle(InvoiceBundle bundle) {
+        this.bundle = bundle;
+    }
+
+    // renders every invoice even if its PDF was already rendered from the same inputs
+    public void setForceRender(boolean forceRender) {
+        this.forceRender = forceRender;
+    }
+
+    public boolean isQueueing() {
+        return outbox != null;
+    }
+
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    public void setLedger(OrderLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
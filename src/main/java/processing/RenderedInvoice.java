@@ -0,0 +1,10 @@
+package processing;
+
+import document.PdfBuffer;
+import model.Order;
+
+// pdf is null if the invoice was rendered directly into fileName, contentHash is null if no ledger is kept, digest
+// covers everything the invoice was rendered from
+public record RenderedInvoice(Order order, String id, String fileName, PdfBuffer pdf, String contentHash,
+                              String digest) {
+}
@@ -0,0 +1,14 @@
+package processing;
+
+import java.util.concurrent.Semaphore;
+
+// caps how many orders use each resource at once when every order runs on its own thread
+public record ResourceLimits(Semaphore renderers, Semaphore diskWriters, Semaphore smtpConnections) {
+    public static ResourceLimits of(int renderers, int diskWriters, int smtpConnections) {
+        if (renderers < 1 || diskWriters < 1 || smtpConnections < 1) {
+            throw new IllegalArgumentException("Resource limits must be positive.");
+        }
+        return new ResourceLimits(new Semaphore(renderers, true), new Semaphore(diskWriters, true),
+                new Semaphore(smtpConnections, true));
+    }
+}
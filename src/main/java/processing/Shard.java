@@ -0,0 +1,133 @@
+package processing;
+
+import metrics.Counter;
+import metrics.MetricRegistry;
+import model.Order;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// the part of an export that one of several processes takes care of, either by a hash of the order number or by a
+// range of order numbers; a shard is also part of the names of the files it writes, so shards never share a ledger
+public class Shard {
+    private static final Counter OUTSIDE = MetricRegistry.counter("orders_outside_shard_total",
+            "Orders of the export that belong to another shard");
+    private static final String INDEX_SEPARATOR = "/";
+    private static final String RANGE_SEPARATOR = "-";
+
+    private final int index;
+    private final int count;
+    private final long first;
+    private final long last;
+    private final String name;
+
+    private Shard(int index, int count, long first, long last, String name) {
+        this.index = index;
+        this.count = count;
+        this.first = first;
+        this.last = last;
+        this.name = name;
+    }
+
+    // e.g. 2/4 for the second of four shards
+    public static Shard ofIndex(String shard) {
+        String[] parts = shard.split(INDEX_SEPARATOR);
+        try {
+            if (parts.length == 2) {
+                int index = Integer.parseInt(parts[0].trim());
+                int count = Integer.parseInt(parts[1].trim());
+                if (count > 0 && index >= 1 && index <= count) {
+                    return new Shard(index - 1, count, 0, 0, "shard-" + index + "-of-" + count);
+                }
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Expected a shard like 2/4 (the second of four shards) but got: " + shard);
+    }
+
+    // e.g. 1000-1999, either end can be left out
+    public static Shard ofRange(String range) {
+        int separator = range.indexOf(RANGE_SEPARATOR);
+        try {
+            if (separator >= 0) {
+                String from = range.substring(0, separator).trim();
+                String to = range.substring(separator + 1).trim();
+                long first = from.isEmpty() ? Long.MIN_VALUE : Long.parseLong(from);
+                long last = to.isEmpty() ? Long.MAX_VALUE : Long.parseLong(to);
+                if (first <= last) {
+                    String name = from.isEmpty() ? "orders-to-" + to
+                            : to.isEmpty() ? "orders-from-" + from : "orders-" + from + RANGE_SEPARATOR + to;
+                    return new Shard(0, 0, first, last, name);
+                }
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Expected a range of order numbers like 1000-1999 but got: " + range);
+    }
+
+    public boolean contains(String orderNumber) {
+        if (count > 0) return Math.floorMod(spread(orderNumber.hashCode()), count) == index;
+        try {
+            long number = Long.parseLong(orderNumber.trim());
+            return number >= first && number <= last;
+        } catch (NumberFormatException e) {
+            // an order number that is not a number cannot be in a range, so every range skips it
+            return false;
+        }
+    }
+
+    // String.hashCode is specified, so every process and host puts an order into the same shard; consecutive order
+    // numbers only differ in their last characters, which the mixing spreads over all bits
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    public Iterator<Order> filter(Iterator<Order> orders) {
+        return new Iterator<>() {
+            private Order next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && orders.hasNext()) {
+                    Order order = orders.next();
+                    if (contains(order.orderNumber())) {
+                        next = order;
+                    } else {
+                        OUTSIDE.increment();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Order next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Order order = next;
+                next = null;
+                return order;
+            }
+        };
+    }
+
+    // inserts the shard name before the extension, e.g. ledger.tsv becomes ledger.shard-2-of-4.tsv
+    public Path qualify(Path path) {
+        return qualify(path, name);
+    }
+
+    public static Path qualify(Path path, String qualifier) {
+        String fileName = path.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        String qualified = extension <= 0 ? fileName + "." + qualifier
+                : fileName.substring(0, extension) + "." + qualifier + fileName.substring(extension);
+        return path.resolveSibling(qualified);
+    }
+
+    public String getName() {
+        return name;
+    }
+}
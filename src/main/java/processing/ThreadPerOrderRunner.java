@@ -0,0 +1,86 @@
+package processing;
+
+import com.itextpdf.text.DocumentException;
+import model.Order;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+// runs every order on its own thread, the resource limits of the processor decide what actually runs in parallel
+public class ThreadPerOrderRunner {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String THREAD_NAME = "invoice-order";
+
+    private final InvoiceProcessor processor;
+    private final Semaphore inFlight;
+    private final AtomicReference<Exception> failure;
+    private final AtomicLong processedCount;
+
+    public ThreadPerOrderRunner(InvoiceProcessor processor, ResourceLimits limits, int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("The number of orders in flight must be positive.");
+        // a platform thread per order would start as many threads as orders are in flight
+        if (!Threads.isVirtualThreadsSupported()) throw new IllegalStateException("Virtual threads need Java 21 or later.");
+        this.processor = processor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.failure = new AtomicReference<>();
+        this.processedCount = new AtomicLong();
+        processor.setResourceLimits(limits);
+    }
+
+    public void run(Iterator<Order> orders) throws IOException, DocumentException, MessagingException,
+            InterruptedException {
+        long start = System.nanoTime();
+
+        ExecutorService executor = Threads.newThreadPerTaskExecutor(THREAD_NAME);
+        try {
+            while (failure.get() == null && orders.hasNext()) {
+                // bounds the parsed orders that wait for a resource, the threads themselves are cheap
+                inFlight.acquire();
+                Order order = orders.next();
+                executor.execute(() -> process(order));
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        LOGGER.info("Processed " + processedCount.get() + " orders on virtual threads in " +
+                String.format("%.2f", (System.nanoTime() - start) / 1e9) + "s");
+        Threads.rethrow(failure.get());
+    }
+
+    private void process(Order order) {
+        try {
+            if (failure.get() != null) return;
+            processor.process(order);
+            processedCount.incrementAndGet();
+        } catch (MessagingException e) {
+            processor.failed(order, e);
+        } catch (IOException | DocumentException | RuntimeException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private void fail(Exception e) {
+        if (failure.compareAndSet(null, e)) {
+            LOGGER.severe("Aborting the run: " + e.getMessage());
+        }
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+}
@@ -0,0 +1,83 @@
+package processing;
+
+import com.itextpdf.text.DocumentException;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public final class Threads {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final Method OF_VIRTUAL = findOfVirtual();
+
+    private Threads() {
+    }
+
+    // virtual threads are looked up reflectively, so the project still builds and runs on Java 17
+    private static Method findOfVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    // one new thread per task, virtual on Java 21 and later, otherwise daemon platform threads that are reused
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warning("Could not create virtual threads, falling back to platform threads: " + e);
+            }
+        }
+        return Executors.newCachedThreadPool(namedDaemonThreads(name));
+    }
+
+    public static ThreadFactory namedDaemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // for the close() of a resource, where an InterruptedException could be suppressed by another failure; the
+    // interrupt is kept for the caller
+    static void shutdownAndAwait(ExecutorService executor, String work) throws InterruptedIOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + work);
+        }
+    }
+
+    // rethrows the failure of a worker thread on the thread that waited for the workers
+    static void rethrow(Exception failure) throws IOException, DocumentException, MessagingException {
+        if (failure == null) return;
+        if (failure instanceof IOException ioException) throw ioException;
+        if (failure instanceof DocumentException documentException) throw documentException;
+        if (failure instanceof MessagingException messagingException) throw messagingException;
+        if (failure instanceof RuntimeException runtimeException) throw runtimeException;
+        throw new IllegalStateException(failure);
+    }
+}
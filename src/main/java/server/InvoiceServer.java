@@ -0,0 +1,390 @@
+package server;
+
+import com.itextpdf.text.DocumentException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import data.CustomerIndex;
+import data.NotDeserializedYetException;
+import data.OrderSchema;
+import data.OrderValidator;
+import data.ValidationReport;
+import data.WooCommerceDataDeserializer;
+import document.InvoiceGenerator;
+import document.InvoiceTemplate;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricRegistry;
+import metrics.MetricsServer;
+import model.Order;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import processing.InvoiceProcessor;
+import processing.RenderedInvoice;
+import processing.Threads;
+import tenant.Tenant;
+import tenant.TenantCache;
+
+import javax.mail.MessagingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class InvoiceServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String INVOICES_PATH = "/invoices";
+    private static final String HEALTH_PATH = "/health";
+    private static final String DELIVER_MAIL_QUERY = "deliver=mail";
+    private static final String TENANT_QUERY = "tenant=";
+    private static final String PDF_CONTENT_TYPE = "application/pdf";
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_ACCEPTED = 202;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+    private static final int STATUS_INTERNAL_ERROR = 500;
+    private static final int STATUS_UNAVAILABLE = 503;
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_BATCH_ORDERS = 1_000;
+    // a request waits this long for a free slot before it is turned away
+    private static final long DEFAULT_ADMISSION_TIMEOUT_MILLIS = 5_000;
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private static final Histogram REQUEST_SECONDS = MetricRegistry.histogram("http_request_seconds",
+            "Time to answer a request to the invoice server, including the wait for a free slot",
+            Histogram.LATENCY_BUCKETS);
+    private static final Counter REQUESTS = MetricRegistry.counter("http_requests_total",
+            "Requests to the invoice server");
+    private static final Counter REJECTED = MetricRegistry.counter("http_rejected_total",
+            "Requests to the invoice server that were turned away because all slots were busy");
+    private static final Counter ERRORS = MetricRegistry.counter("http_errors_total",
+            "Requests to the invoice server that failed with a client or server error");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final Supplier<Tenant> leases;
+    private final WooCommerceDataDeserializer deserializer;
+    private final TenantCache tenants;
+    private final Function<Tenant, InvoiceProcessor> tenantProcessors;
+    // the requests being handled or waiting for a slot
+    private final AtomicInteger active;
+    private volatile long admissionTimeoutMillis;
+
+    // every request leases the configuration for as long as it runs, so a reloaded configuration is used right away
+    public InvoiceServer(int port, int maxConcurrentRequests, Supplier<Tenant> leases,
+                         Function<Tenant, InvoiceProcessor> tenantProcessors) throws IOException {
+        this(port, maxConcurrentRequests, leases, null, tenantProcessors);
+    }
+
+    // routes every request to the tenant named by its tenant query parameter
+    public InvoiceServer(int port, int maxConcurrentRequests, TenantCache tenants,
+                         Function<Tenant, InvoiceProcessor> tenantProcessors) throws IOException {
+        this(port, maxConcurrentRequests, null, tenants, tenantProcessors);
+    }
+
+    private InvoiceServer(int port, int maxConcurrentRequests, Supplier<Tenant> leases, TenantCache tenants,
+                          Function<Tenant, InvoiceProcessor> tenantProcessors) throws IOException {
+        if (maxConcurrentRequests < 1) throw new IllegalArgumentException("The request limit must be positive.");
+        this.leases = leases;
+        this.tenants = tenants;
+        this.tenantProcessors = tenantProcessors;
+        this.deserializer = new WooCommerceDataDeserializer();
+        this.slots = new Semaphore(maxConcurrentRequests, true);
+        this.active = new AtomicInteger();
+        this.admissionTimeoutMillis = DEFAULT_ADMISSION_TIMEOUT_MILLIS;
+        this.executor = Threads.newThreadPerTaskExecutor("invoice-http");
+
+        // bound to the loopback interface only, the shop backend has to run on the same machine
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext(INVOICES_PATH, this::handleInvoices);
+        server.createContext(HEALTH_PATH, exchange -> respond(exchange, STATUS_OK, TEXT_CONTENT_TYPE,
+                "ok".getBytes(StandardCharsets.UTF_8)));
+        MetricsServer.addContexts(server);
+        server.start();
+        LOGGER.info("Serving invoices on http://" + server.getAddress().getHostString() + ":" + getPort() +
+                INVOICES_PATH + " (at most " + maxConcurrentRequests + " requests at once)");
+    }
+
+    private void handleInvoices(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        REQUESTS.increment();
+        active.incrementAndGet();
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respondError(exchange, STATUS_METHOD_NOT_ALLOWED, "Orders have to be POSTed");
+                return;
+            }
+            if (!admit()) {
+                REJECTED.increment();
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                respondError(exchange, STATUS_UNAVAILABLE, "Too many concurrent requests");
+                return;
+            }
+            try {
+                handleOrders(exchange);
+            } finally {
+                slots.release();
+            }
+        } finally {
+            active.decrementAndGet();
+            REQUEST_SECONDS.observeSince(start);
+        }
+    }
+
+    private boolean admit() {
+        try {
+            return slots.tryAcquire(admissionTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void handleOrders(HttpExchange exchange) throws IOException {
+        List<Order> orders;
+        try {
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respondError(exchange, STATUS_PAYLOAD_TOO_LARGE, "The request body exceeds " + MAX_BODY_BYTES +
+                        " bytes");
+                return;
+            }
+            List<Object> jsonOrders = parseOrders(new String(body, StandardCharsets.UTF_8));
+            // the same schema as for the exports, so that a request gets all errors at once
+            ValidationReport report = validate(jsonOrders);
+            if (!report.isValid()) {
+                respondRejected(exchange, report);
+                return;
+            }
+            orders = deserialize(jsonOrders);
+        } catch (JSONException | IllegalArgumentException | IndexOutOfBoundsException
+                 | DateTimeParseException e) {
+            respondError(exchange, STATUS_BAD_REQUEST, "Invalid orders: " + e.getMessage());
+            return;
+        }
+
+        List<String> query = exchange.getRequestURI().getRawQuery() == null ? List.of()
+                : List.of(exchange.getRequestURI().getRawQuery().split("&"));
+        boolean mail = query.contains(DELIVER_MAIL_QUERY);
+        try {
+            if (tenants == null) {
+                try (Tenant tenant = leases.get()) {
+                    answer(exchange, orders, mail, tenant.getTemplate(), () -> tenantProcessors.apply(tenant));
+                }
+                return;
+            }
+            String name = tenantOf(query);
+            if (name == null || !tenants.contains(name)) {
+                respondError(exchange, STATUS_NOT_FOUND, name == null ? "The tenant query parameter is missing"
+                        : "Unknown tenant: " + name);
+                return;
+            }
+            try (Tenant tenant = tenants.lease(name)) {
+                answer(exchange, orders, mail, tenant.getTemplate(), () -> tenantProcessors.apply(tenant));
+            }
+        } catch (IOException | DocumentException | MessagingException | NotDeserializedYetException
+                 | RuntimeException e) {
+            LOGGER.severe("Could not answer an invoice request: " + e.getMessage());
+            respondError(exchange, STATUS_INTERNAL_ERROR, "Could not create the invoices: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respondError(exchange, STATUS_UNAVAILABLE, "The server is shutting down");
+        }
+    }
+
+    private static void answer(HttpExchange exchange, List<Order> orders, boolean mail, InvoiceTemplate template,
+                               Supplier<InvoiceProcessor> processors)
+            throws IOException, DocumentException, MessagingException, InterruptedException {
+        if (mail) {
+            deliver(exchange, orders, processors.get());
+        } else if (orders.size() == 1) {
+            renderSingle(exchange, orders.get(0), template);
+        } else {
+            renderBatch(exchange, orders, template);
+        }
+    }
+
+    private static String tenantOf(List<String> query) {
+        for (String parameter : query) {
+            if (parameter.startsWith(TENANT_QUERY)) {
+                return URLDecoder.decode(parameter.substring(TENANT_QUERY.length()), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // returns null if the body is larger than allowed
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        return body.length > MAX_BODY_BYTES ? null : body;
+    }
+
+    // accepts a single order object as well as an array of them, both in the WooCommerce export format
+    private static List<Object> parseOrders(String body) {
+        Object value = new JSONTokener(body).nextValue();
+        List<Object> jsonOrders = new ArrayList<>();
+        if (value instanceof JSONObject) {
+            jsonOrders.add(value);
+        } else if (value instanceof JSONArray array) {
+            if (array.length() > MAX_BATCH_ORDERS) {
+                throw new IllegalArgumentException("A batch holds at most " + MAX_BATCH_ORDERS + " orders");
+            }
+            array.forEach(jsonOrders::add);
+        } else {
+            throw new IllegalArgumentException("Expected an order object or an array of orders");
+        }
+        if (jsonOrders.isEmpty()) throw new IllegalArgumentException("The batch holds no orders");
+        return jsonOrders;
+    }
+
+    private static ValidationReport validate(List<Object> jsonOrders) throws IOException {
+        try (OrderValidator validator = new OrderValidator(OrderSchema.WOO_COMMERCE)) {
+            for (Object jsonOrder : jsonOrders) {
+                validator.check(jsonOrder);
+            }
+            return validator.getReport();
+        }
+    }
+
+    private List<Order> deserialize(List<Object> jsonOrders) {
+        List<Order> orders = new ArrayList<>();
+        for (Object jsonOrder : jsonOrders) {
+            orders.add(deserializer.deserializeOrder((JSONObject) jsonOrder));
+        }
+        return orders;
+    }
+
+    private static void renderSingle(HttpExchange exchange, Order order, InvoiceTemplate template)
+            throws IOException, DocumentException {
+        InvoiceGenerator generator = new InvoiceGenerator(template, order, LocalDate.now());
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        generator.generate(pdf);
+
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" +
+                fileName(generator) + "\"");
+        exchange.getResponseHeaders().set("X-Invoice-Id", generator.getId());
+        respond(exchange, STATUS_OK, PDF_CONTENT_TYPE, pdf.toByteArray());
+    }
+
+    // every invoice is rendered before the response starts, so a failure can still be answered with an error
+    private static void renderBatch(HttpExchange exchange, List<Order> orders, InvoiceTemplate template)
+            throws IOException, DocumentException {
+        LocalDate performanceDate = LocalDate.now();
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            for (Order order : orders) {
+                InvoiceGenerator generator = new InvoiceGenerator(template, order, performanceDate);
+                ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+                generator.generate(pdf);
+                out.putNextEntry(new ZipEntry(fileName(generator)));
+                pdf.writeTo(out);
+                out.closeEntry();
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"invoices.zip\"");
+        respond(exchange, STATUS_OK, ZIP_CONTENT_TYPE, zip.toByteArray());
+    }
+
+    // renders and sends the invoices like a run does, the ledger and the outbox of the run apply as well
+    private static void deliver(HttpExchange exchange, List<Order> orders, InvoiceProcessor processor)
+            throws IOException, DocumentException, MessagingException, InterruptedException {
+        JSONArray invoices = new JSONArray();
+        JSONArray skipped = new JSONArray();
+        for (Order order : orders) {
+            RenderedInvoice invoice = processor.render(order);
+            if (invoice == null) {
+                skipped.put(order.orderNumber());
+                continue;
+            }
+            processor.send(invoice);
+            invoices.put(invoice.id());
+        }
+
+        JSONObject result = new JSONObject();
+        result.put(processor.isQueueing() ? "queued" : "sent", invoices);
+        result.put("skipped", skipped);
+        respond(exchange, processor.isQueueing() ? STATUS_ACCEPTED : STATUS_OK, JSON_CONTENT_TYPE,
+                result.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String fileName(InvoiceGenerator generator) {
+        return Path.of(generator.getFileName()).getFileName().toString();
+    }
+
+    private static void respondError(HttpExchange exchange, int status, String message) throws IOException {
+        respondError(exchange, status, new JSONObject().put("error", message));
+    }
+
+    private static void respondError(HttpExchange exchange, int status, JSONObject error) throws IOException {
+        ERRORS.increment();
+        respond(exchange, status, JSON_CONTENT_TYPE, error.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // lists every rejected order of the request, e.g. "Order #2 (1234): billing_postcode is missing"
+    private static void respondRejected(HttpExchange exchange, ValidationReport report) throws IOException {
+        JSONArray rejections = new JSONArray();
+        report.getRejections().forEach(rejection -> rejections.put(rejection.toString()));
+        respondError(exchange, STATUS_BAD_REQUEST, new JSONObject()
+                .put("error", "Invalid orders: " + report.getRejections().size() + " of " +
+                        report.getOrderCount() + " orders fail the validation")
+                .put("rejections", rejections));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public void setCustomerIndex(CustomerIndex customerIndex) {
+        deserializer.setCustomerIndex(customerIndex);
+    }
+
+    // how long a request waits for a free slot before it is answered with 503
+    public void setAdmissionTimeout(long millis) {
+        this.admissionTimeoutMillis = millis;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // stops accepting requests and gives the ones in progress a few seconds to finish; without any, the server
+    // would otherwise wait out the whole delay
+    @Override
+    public void close() {
+        server.stop(active.get() > 0 ? STOP_DELAY_SECONDS : 0);
+        executor.shutdown();
+    }
+}
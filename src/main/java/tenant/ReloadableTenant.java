@@ -0,0 +1,45 @@
+package tenant;
+
+import com.itextpdf.text.DocumentException;
+import data.NotDeserializedYetException;
+
+import java.io.IOException;
+
+// the one shop of a process that runs without a tenants file; its configuration is handed out as a lease like the one
+// of a cached tenant, so a reloaded configuration replaces it for new work while the SMTP connections of the previous
+// one stay open until the work that leased it is done
+public class ReloadableTenant implements AutoCloseable {
+    private final TenantFiles files;
+    private Tenant current;
+
+    public ReloadableTenant(TenantFiles files) throws IOException, DocumentException, NotDeserializedYetException {
+        this.files = files;
+        this.current = Tenant.load(files);
+    }
+
+    // the lease has to be closed
+    public synchronized Tenant lease() {
+        current.retain();
+        return current;
+    }
+
+    // loads outside the lock, requests keep leasing the previous configuration meanwhile
+    public void reload() throws IOException, DocumentException, NotDeserializedYetException {
+        Tenant reloaded = Tenant.load(files);
+        Tenant previous;
+        synchronized (this) {
+            previous = current;
+            current = reloaded;
+        }
+        previous.evict();
+    }
+
+    public TenantFiles getFiles() {
+        return files;
+    }
+
+    @Override
+    public synchronized void close() {
+        current.evict();
+    }
+}
@@ -0,0 +1,111 @@
+package tenant;
+
+import com.itextpdf.text.DocumentException;
+import data.CompanyDataDeserializer;
+import data.InvoiceConfigurationDataDeserializer;
+import data.NotDeserializedYetException;
+import data.NotificationDataDeserializer;
+import document.InvoiceTemplate;
+import notification.EmailService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+// the parsed configuration of one shop, handed out as a lease that is closed when the work is done; the SMTP
+// connections are closed once the tenant has been evicted from the cache and the last lease is closed
+public class Tenant implements AutoCloseable {
+    private final TenantFiles files;
+    private final InvoiceTemplate template;
+    private final EmailService emailService;
+    private final List<FileTime> modified;
+    // the staleness is checked by every lease without a lock, so a lease at worst looks at the files once more
+    private volatile long checkedAt;
+    private volatile boolean stale;
+    private int leases;
+    private boolean evicted;
+
+    private Tenant(TenantFiles files, InvoiceTemplate template, EmailService emailService, List<FileTime> modified) {
+        this.files = files;
+        this.template = template;
+        this.emailService = emailService;
+        this.modified = modified;
+        this.checkedAt = System.nanoTime();
+        this.stale = false;
+        this.leases = 0;
+        this.evicted = false;
+    }
+
+    static Tenant load(TenantFiles files) throws IOException, DocumentException, NotDeserializedYetException {
+        // taken before the files are read, so a change while loading makes the tenant stale right away
+        List<FileTime> modified = modifiedTimes(files);
+
+        CompanyDataDeserializer companyDataDeserializer = new CompanyDataDeserializer(files.companyPath());
+        companyDataDeserializer.deserialize();
+
+        InvoiceConfigurationDataDeserializer invoiceConfigurationDataDeserializer =
+                new InvoiceConfigurationDataDeserializer(files.invoicePath());
+        invoiceConfigurationDataDeserializer.deserialize();
+
+        NotificationDataDeserializer notificationDataDeserializer =
+                new NotificationDataDeserializer(files.notificationPath());
+        notificationDataDeserializer.deserialize();
+
+        InvoiceTemplate template = new InvoiceTemplate(invoiceConfigurationDataDeserializer.getData(),
+                companyDataDeserializer.getData());
+        return new Tenant(files, template, notificationDataDeserializer.getData(), modified);
+    }
+
+    private static List<FileTime> modifiedTimes(TenantFiles files) throws IOException {
+        return List.of(Files.getLastModifiedTime(Path.of(files.companyPath())),
+                Files.getLastModifiedTime(Path.of(files.invoicePath())),
+                Files.getLastModifiedTime(Path.of(files.notificationPath())));
+    }
+
+    // a configuration file changed since the tenant was loaded; the files are looked at once per interval at most
+    boolean isStale(long intervalNanos) {
+        long now = System.nanoTime();
+        if (stale || now - checkedAt < intervalNanos) return stale;
+        checkedAt = now;
+        try {
+            stale = !modified.equals(modifiedTimes(files));
+        } catch (IOException e) {
+            // keeps serving the loaded configuration while a file is being replaced
+        }
+        return stale;
+    }
+
+    synchronized void retain() {
+        leases++;
+    }
+
+    synchronized void evict() {
+        evicted = true;
+        if (leases == 0) emailService.close();
+    }
+
+    public String getName() {
+        return files.name();
+    }
+
+    public TenantFiles getFiles() {
+        return files;
+    }
+
+    public InvoiceTemplate getTemplate() {
+        return template;
+    }
+
+    public EmailService getEmailService() {
+        return emailService;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (leases == 0) throw new IllegalStateException("The tenant " + getName() + " is not leased.");
+        leases--;
+        if (leases == 0 && evicted) emailService.close();
+    }
+}
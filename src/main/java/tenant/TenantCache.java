@@ -0,0 +1,148 @@
+package tenant;
+
+import com.itextpdf.text.DocumentException;
+import data.NotDeserializedYetException;
+import metrics.Counter;
+import metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// keeps the parsed configurations of the most recently used shops of a process, so that several shops share one JVM
+// and its warm fonts, images and styles; a tenant whose configuration files change is loaded again on its next use
+public class TenantCache implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final Counter HITS = MetricRegistry.counter("tenant_cache_hits_total",
+            "Tenant leases served from the loaded configurations");
+    private static final Counter LOADS = MetricRegistry.counter("tenant_cache_loads_total",
+            "Tenant configurations loaded from their files");
+    private static final Counter EVICTIONS = MetricRegistry.counter("tenant_cache_evictions_total",
+            "Tenant configurations dropped because the cache was full or their files changed");
+    // a changed configuration file is noticed this long after the change at the latest
+    private static final long DEFAULT_STALE_CHECK_MILLIS = 1_000;
+
+    private final Map<String, TenantFiles> tenants;
+    private final int capacity;
+    // in access order, the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Tenant> loaded;
+    // completed once the tenant is loaded or could not be loaded, so that other leases of it wait for that load
+    private final Map<String, CompletableFuture<Void>> loading;
+    private long staleCheckNanos;
+
+    public TenantCache(Map<String, TenantFiles> tenants, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("The tenant cache must hold at least one tenant.");
+        this.tenants = tenants;
+        this.capacity = capacity;
+        this.loaded = new LinkedHashMap<>(capacity, 0.75f, true);
+        this.loading = new HashMap<>();
+        this.staleCheckNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STALE_CHECK_MILLIS);
+        MetricRegistry.gauge("tenants_loaded", "Tenant configurations currently held in the cache", this::size);
+    }
+
+    // the lease has to be closed; a tenant is loaded outside the lock, so a miss only delays the leases of that tenant
+    public Tenant lease(String name) throws IOException, DocumentException, NotDeserializedYetException {
+        TenantFiles files = tenants.get(name);
+        if (files == null) throw new IllegalArgumentException("Unknown tenant: " + name);
+
+        while (true) {
+            CompletableFuture<Void> load;
+            boolean loader = false;
+            Tenant leased;
+            synchronized (this) {
+                leased = loaded.get(name);
+                if (leased != null) leased.retain();
+            }
+            if (leased != null) {
+                // the files are looked at outside the lock, so that a slow disk only delays the leases of this tenant
+                if (!leased.isStale(staleCheckNanos)) {
+                    HITS.increment();
+                    return leased;
+                }
+                leased.close();
+                synchronized (this) {
+                    if (loaded.get(name) == leased) {
+                        LOGGER.info("Reloading the configuration of the tenant " + name);
+                        evict(loaded.remove(name));
+                    }
+                }
+            }
+
+            synchronized (this) {
+                if (loaded.containsKey(name)) continue;
+                load = loading.get(name);
+                if (load == null) {
+                    load = new CompletableFuture<>();
+                    loading.put(name, load);
+                    loader = true;
+                }
+            }
+
+            if (!loader) {
+                // leases the loaded tenant, or loads it itself if that load failed
+                load.join();
+                continue;
+            }
+            try {
+                Tenant tenant = Tenant.load(files);
+                LOADS.increment();
+                synchronized (this) {
+                    tenant.retain();
+                    loaded.put(name, tenant);
+                    evictEldest();
+                }
+                return tenant;
+            } finally {
+                synchronized (this) {
+                    loading.remove(name);
+                }
+                load.complete(null);
+            }
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Tenant> iterator = loaded.values().iterator();
+        while (loaded.size() > capacity) {
+            Tenant eldest = iterator.next();
+            iterator.remove();
+            evict(eldest);
+        }
+    }
+
+    private static void evict(Tenant tenant) {
+        EVICTIONS.increment();
+        tenant.evict();
+    }
+
+    // how often the files of a loaded tenant are checked for changes; with 0 every lease checks them
+    public void setStaleCheckInterval(long millis) {
+        this.staleCheckNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public boolean contains(String name) {
+        return tenants.containsKey(name);
+    }
+
+    public Collection<TenantFiles> getTenants() {
+        return tenants.values();
+    }
+
+    public synchronized int size() {
+        return loaded.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Tenant tenant : loaded.values()) {
+            tenant.evict();
+        }
+        loaded.clear();
+    }
+}
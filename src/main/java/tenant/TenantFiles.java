@@ -0,0 +1,6 @@
+package tenant;
+
+// the configuration files of one shop; the orders path is only needed when its export is processed in a run
+public record TenantFiles(String name, String companyPath, String ordersPath, String invoicePath,
+                          String notificationPath) {
+}
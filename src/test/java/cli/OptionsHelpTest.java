@@ -0,0 +1,46 @@
+package cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptionsHelpTest {
+    @Test
+    void knowsEveryOptionOfTheUsage() {
+        for (String option : List.of("stream", "pipeline", "render-workers", "in-memory", "archive", "ledger",
+                "metrics-port", "outbox-drain-timeout", "watch", "serve-concurrency", "virtual-threads", "bundle",
+                "snapshot", "shard", "shard-range", "merge-metrics", "customer-index", "quarantine", "no-validation",
+                "tenants", "tenant-cache-size", "force-render", "dry-run")) {
+            assertTrue(OptionsHelp.isKnown(option), option);
+        }
+        assertFalse(OptionsHelp.isKnown("dry-rn"));
+        assertFalse(OptionsHelp.isKnown("ledger="));
+    }
+
+    @Test
+    void knowsWhichOptionsTakeAValue() {
+        assertTrue(OptionsHelp.takesValue("ledger"));
+        assertTrue(OptionsHelp.takesValue("archive"));
+        assertTrue(OptionsHelp.takesValue("shard-range"));
+        assertFalse(OptionsHelp.takesValue("stream"));
+        assertFalse(OptionsHelp.takesValue("in-memory"));
+        assertFalse(OptionsHelp.takesValue("dry-run"));
+    }
+
+    @Test
+    void reportsAnOptionWithAMalformedNumber() {
+        CommandLineArguments arguments = new CommandLineArguments(new String[]{"--metrics-port=abc", "--pipeline",
+                "orders.json"});
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> arguments.getInt("metrics-port", -1));
+        assertEquals("The option --metrics-port expects an integer but got: abc", e.getMessage());
+        assertEquals(2, arguments.getInt("render-workers", 2));
+        assertEquals(List.of("orders.json"), arguments.getPositionalArguments());
+    }
+}
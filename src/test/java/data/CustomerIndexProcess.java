@@ -0,0 +1,25 @@
+package data;
+
+import model.Address;
+import model.Contact;
+
+import java.nio.file.Path;
+
+// numbers the customers whose email addresses are given from a second process, printing one number per line
+public class CustomerIndexProcess {
+    public static void main(String[] args) throws Exception {
+        try (CustomerIndex index = new CustomerIndex(Path.of(args[0]))) {
+            for (int i = 1; i < args.length; i++) {
+                System.out.println(CustomerIndexTest.resolve(index, args[i]).getCustomerId());
+            }
+        }
+    }
+
+    static Address address() {
+        return new Address("Examplestreet", "12", "10115", "Berlin", "DE");
+    }
+
+    static Contact contact(String email) {
+        return new Contact(email, "");
+    }
+}
@@ -0,0 +1,160 @@
+package data;
+
+import model.Customer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomerIndexTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsTheNumberOfACustomerAcrossRuns() throws Exception {
+        Path path = directory.resolve("customers.tsv");
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(1, resolve(index, "erika@example.org").getCustomerId());
+            assertEquals(2, resolve(index, "max@example.org").getCustomerId());
+            // case and whitespace do not make another customer
+            assertEquals(1, index.resolve("  ERIKA ", "Mustermann", CustomerIndexProcess.address(),
+                    CustomerIndexProcess.contact("Erika@Example.org")).getCustomerId());
+            assertSame(resolve(index, "max@example.org"), resolve(index, "max@example.org"));
+        }
+
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(2, index.size());
+            assertEquals(2, resolve(index, "max@example.org").getCustomerId());
+            assertEquals(3, resolve(index, "zoe@example.org").getCustomerId());
+        }
+    }
+
+    @Test
+    void refusesToOpenTheSameFileTwiceInOneProcess() throws Exception {
+        Path path = directory.resolve("customers.tsv");
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertThrows(IllegalStateException.class,
+                    () -> new CustomerIndex(directory.resolve(".").resolve("customers.tsv")));
+            assertEquals(1, resolve(index, "erika@example.org").getCustomerId());
+        }
+
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(1, resolve(index, "erika@example.org").getCustomerId());
+        }
+    }
+
+    @Test
+    void catchesUpWithTheNumbersThatAnotherProcessAppended() throws Exception {
+        Path path = directory.resolve("customers.tsv");
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(1, resolve(index, "erika@example.org").getCustomerId());
+
+            assertEquals(List.of("2", "1"), run(path, "max@example.org", "erika@example.org").waitForOutput());
+
+            // known from the file, not numbered again
+            assertEquals(2, resolve(index, "max@example.org").getCustomerId());
+            assertEquals(3, resolve(index, "zoe@example.org").getCustomerId());
+        }
+    }
+
+    @Test
+    void appendsAfterATornLineOfAnotherProcess() throws Exception {
+        Path path = directory.resolve("customers.tsv");
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(1, resolve(index, "erika@example.org").getCustomerId());
+            // the other process crashed while appending
+            Files.writeString(path, "2\tmax@exa", StandardOpenOption.APPEND);
+
+            assertEquals(2, resolve(index, "max@example.org").getCustomerId());
+        }
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals("2\tmax@example.org\terika mustermann", lines.get(lines.size() - 1));
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(2, index.size());
+        }
+    }
+
+    @Test
+    void twoProcessesAppendingAtOnceNeverShareANumber() throws Exception {
+        Path path = directory.resolve("customers.tsv");
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            emails.add("customer" + i + "@example.org");
+        }
+        List<String> reversed = new ArrayList<>(emails);
+        Collections.reverse(reversed);
+        List<String> shuffled = new ArrayList<>(emails);
+        Collections.shuffle(shuffled, new Random(1));
+
+        IndexProcess first = run(path, reversed.toArray(new String[0]));
+        IndexProcess second = run(path, shuffled.toArray(new String[0]));
+        Map<String, String> firstIds = ids(reversed, first.waitForOutput());
+        Map<String, String> secondIds = ids(shuffled, second.waitForOutput());
+
+        assertEquals(firstIds, secondIds);
+        assertEquals(100, new HashSet<>(firstIds.values()).size());
+        try (CustomerIndex index = new CustomerIndex(path)) {
+            assertEquals(100, index.size());
+            for (String email : emails) {
+                assertEquals(firstIds.get(email), String.valueOf(resolve(index, email).getCustomerId()));
+            }
+        }
+    }
+
+    static Customer resolve(CustomerIndex index, String email) {
+        return index.resolve("Erika", "Mustermann", CustomerIndexProcess.address(),
+                CustomerIndexProcess.contact(email));
+    }
+
+    private static Map<String, String> ids(List<String> emails, List<String> output) {
+        assertEquals(emails.size(), output.size());
+        Map<String, String> ids = new HashMap<>();
+        for (int i = 0; i < emails.size(); i++) {
+            ids.put(emails.get(i), output.get(i));
+        }
+        return ids;
+    }
+
+    private static IndexProcess run(Path path, String... emails) throws Exception {
+        List<String> command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java")
+                .toString(), "-cp", System.getProperty("java.class.path"), CustomerIndexProcess.class.getName(),
+                path.toString()));
+        command.addAll(List.of(emails));
+        return new IndexProcess(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+    }
+
+    private record IndexProcess(Process process) {
+        List<String> waitForOutput() throws Exception {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+            return lines;
+        }
+    }
+}
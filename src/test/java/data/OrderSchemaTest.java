@@ -0,0 +1,147 @@
+package data;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderSchemaTest {
+    @Test
+    void acceptsEveryOrderOfASyntheticExport() {
+        JSONArray export = WooCommerceOrderStreamTest.syntheticExport(100, new Random(5));
+        for (int i = 0; i < export.length(); i++) {
+            assertEquals(List.of(), validate(export.getJSONObject(i)));
+        }
+    }
+
+    @Test
+    void acceptsWhatTheDeserializerAccepts() {
+        // prices as strings, quantities with signs, an empty phone number
+        JSONObject order = order().put("order_shipping", "4").put("billing_phone", "");
+        order.getJSONArray("products").getJSONObject(0).put("item_price", "12.50").put("qty", "+3");
+
+        assertEquals(List.of(), validate(order));
+        new WooCommerceDataDeserializer().deserializeOrder(order);
+    }
+
+    @Test
+    void reportsAMissingField() {
+        JSONObject order = order();
+        order.remove("billing_postcode");
+
+        assertEquals(List.of("billing_postcode is missing"), validate(order));
+    }
+
+    @Test
+    void reportsAllMissingFieldsOfAnEmptyOrder() {
+        List<String> errors = validate(new JSONObject());
+
+        assertEquals(12, errors.size());
+        assertTrue(errors.stream().allMatch(error -> error.endsWith(" is missing")), errors.toString());
+    }
+
+    @Test
+    void reportsAFieldOfTheWrongType() {
+        assertEquals(List.of("billing_first_name expected a string but got 42"),
+                validate(order().put("billing_first_name", 42)));
+        assertEquals(List.of("billing_email expected a string but got null"),
+                validate(order().put("billing_email", JSONObject.NULL)));
+        assertEquals(List.of("billing_city expected a string but got an object"),
+                validate(order().put("billing_city", new JSONObject())));
+        assertEquals(List.of("order_number expected a string but got 5000"),
+                validate(order().put("order_number", 5000)));
+    }
+
+    @Test
+    void reportsABlankOrderNumber() {
+        assertEquals(List.of("order_number is empty"), validate(order().put("order_number", " ")));
+    }
+
+    @Test
+    void reportsADateInAnotherFormat() {
+        assertEquals(List.of("order_date expected a date like 2022-08-10 18:21 but got \"10.08.2022 18:21\""),
+                validate(order().put("order_date", "10.08.2022 18:21")));
+        assertEquals(List.of("order_date expected a date like 2022-08-10 18:21 but got \"2022-08-10\""),
+                validate(order().put("order_date", "2022-08-10")));
+    }
+
+    @Test
+    void reportsAStreetWithoutANumber() {
+        assertEquals(List.of("billing_address expected a street and a street number separated by a space but " +
+                "got \"Examplestreet\""), validate(order().put("billing_address", "Examplestreet")));
+        assertEquals(List.of("billing_address expected a street and a street number separated by a space but " +
+                "got \"\""), validate(order().put("billing_address", "")));
+    }
+
+    @Test
+    void reportsAnAmountThatIsNotMoney() {
+        assertEquals(List.of("order_shipping expected an amount but got \"4,90\""),
+                validate(order().put("order_shipping", "4,90")));
+        assertEquals(List.of("order_shipping expected an amount but got an array"),
+                validate(order().put("order_shipping", new JSONArray())));
+        JSONObject order = order();
+        order.getJSONArray("products").getJSONObject(0).put("item_price", JSONObject.NULL);
+        assertEquals(List.of("products[0].item_price expected an amount but got null"), validate(order));
+    }
+
+    @Test
+    void reportsAQuantityThatIsNotAWholeNumber() {
+        JSONObject order = order();
+        JSONArray products = order.getJSONArray("products");
+        products.put(new JSONObject().put("name", "Cups").put("qty", "1.5").put("item_price", 3));
+        products.put(new JSONObject().put("name", "Pot").put("qty", 2).put("item_price", 30));
+
+        assertEquals(List.of("products[1].qty expected a whole number but got \"1.5\"",
+                "products[2].qty expected a string but got 2"), validate(order));
+    }
+
+    @Test
+    void reportsProductsThatAreNotAnArrayOfObjects() {
+        assertEquals(List.of("products expected an array but got an object"),
+                validate(order().put("products", new JSONObject())));
+
+        JSONObject order = order();
+        order.getJSONArray("products").put("Cups");
+        JSONObject product = order.getJSONArray("products").getJSONObject(0);
+        product.remove("name");
+        assertEquals(List.of("products[0].name is missing", "products[1] expected an object but got \"Cups\""),
+                validate(order));
+    }
+
+    @Test
+    void reportsAnOrderThatIsNotAnObject() {
+        assertEquals(List.of("expected an order object but got 1"), OrderSchema.WOO_COMMERCE.validate(1));
+        assertEquals(List.of("expected an order object but got an array"),
+                OrderSchema.WOO_COMMERCE.validate(new JSONArray()));
+        assertEquals(List.of("expected an order object but got null"),
+                OrderSchema.WOO_COMMERCE.validate(JSONObject.NULL));
+    }
+
+    @Test
+    void reportsEveryErrorOfAnOrderAtOnce() {
+        JSONObject order = order().put("order_date", "").put("billing_address", "Examplestreet");
+        order.remove("billing_email");
+
+        assertEquals(3, validate(order).size());
+    }
+
+    private static List<String> validate(JSONObject order) {
+        return OrderSchema.WOO_COMMERCE.validate(order);
+    }
+
+    // parsed like the export, so that the values have the types the deserializer gets
+    static JSONObject order() {
+        return new JSONObject("""
+                {"order_number": "5000", "order_date": "2022-08-10 18:21", "billing_first_name": "Erika",
+                 "billing_last_name": "Mustermann", "billing_address": "Examplestreet 12",
+                 "billing_postcode": "10115", "billing_city": "Berlin", "billing_country": "DE",
+                 "billing_email": "erika@example.org", "billing_phone": "+49 30 123456", "order_shipping": "4.90",
+                 "products": [{"name": "Tea", "qty": "3", "item_price": 12.5}]}
+                """);
+    }
+}
@@ -0,0 +1,177 @@
+package data;
+
+import model.Address;
+import model.Contact;
+import model.Customer;
+import model.Order;
+import model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OrderSnapshotTest {
+    // behind the magic number, the version, the hash, the order count and the order offsets position
+    private static final int STRING_COUNT_POSITION = 48;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheOrdersItWrote() throws Exception {
+        List<Order> orders = orders();
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        byte[] hash = hash("export");
+
+        OrderSnapshot.write(snapshot, hash, orders);
+        List<Order> loaded = OrderSnapshot.load(snapshot, hash);
+
+        assertNotNull(loaded);
+        assertEquals(describe(orders), describe(loaded));
+        assertEquals(orders.get(orders.size() - 1).products(), loaded.get(loaded.size() - 1).products());
+        assertNull(loaded.get(0).customer().getContact().phoneNumber());
+        assertThrows(IndexOutOfBoundsException.class, () -> loaded.get(orders.size()));
+    }
+
+    @Test
+    void loadsAnEmptySnapshot() throws Exception {
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        OrderSnapshot.write(snapshot, hash("export"), List.of());
+
+        assertEquals(List.of(), OrderSnapshot.load(snapshot, hash("export")));
+    }
+
+    @Test
+    void recordsTheOrdersThatAreStreamedThroughIt() throws Exception {
+        List<Order> orders = orders();
+        Path snapshot = directory.resolve("orders.json.snapshot");
+
+        List<Order> streamed = new ArrayList<>();
+        try (OrderSnapshot.Writer writer = new OrderSnapshot.Writer(snapshot, hash("export"))) {
+            writer.record(orders.iterator()).forEachRemaining(streamed::add);
+            writer.commit();
+        }
+
+        assertEquals(orders, streamed);
+        assertEquals(describe(orders), describe(OrderSnapshot.load(snapshot, hash("export"))));
+    }
+
+    @Test
+    void ignoresASnapshotOfAnotherExport() throws Exception {
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        OrderSnapshot.write(snapshot, hash("export"), orders());
+
+        assertNull(OrderSnapshot.load(snapshot, hash("changed export")));
+        assertNull(OrderSnapshot.load(directory.resolve("missing.snapshot"), hash("export")));
+        assertThrows(IllegalArgumentException.class, () -> new OrderSnapshot.Writer(snapshot, new byte[20]));
+    }
+
+    @Test
+    void ignoresATruncatedSnapshot() throws Exception {
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        OrderSnapshot.write(snapshot, hash("export"), orders());
+        byte[] bytes = Files.readAllBytes(snapshot);
+
+        for (int length : new int[]{0, 10, 55, 56, bytes.length / 2, bytes.length - 1}) {
+            Path truncated = directory.resolve("truncated-" + length + ".snapshot");
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            assertNull(OrderSnapshot.load(truncated, hash("export")), "cut off after " + length + " bytes");
+        }
+    }
+
+    @Test
+    void ignoresASnapshotWithABrokenHeader() throws Exception {
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        OrderSnapshot.write(snapshot, hash("export"), orders());
+
+        for (int stringCount : new int[]{-1, Integer.MAX_VALUE}) {
+            overwrite(snapshot, STRING_COUNT_POSITION, stringCount);
+            assertNull(OrderSnapshot.load(snapshot, hash("export")), "string count " + stringCount);
+        }
+        // an unknown magic number
+        overwrite(snapshot, 0, 0);
+        assertNull(OrderSnapshot.load(snapshot, hash("export")));
+    }
+
+    @Test
+    void leavesNoFileBehindWithoutACommit() throws Exception {
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        try (OrderSnapshot.Writer writer = new OrderSnapshot.Writer(snapshot, hash("export"))) {
+            for (Order order : orders()) {
+                writer.add(order);
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(), files.toList());
+        }
+    }
+
+    @Test
+    void keepsTheOlderSnapshotWithoutACommit() throws Exception {
+        Path snapshot = directory.resolve("orders.json.snapshot");
+        List<Order> orders = orders();
+        OrderSnapshot.write(snapshot, hash("export"), orders);
+
+        try (OrderSnapshot.Writer writer = new OrderSnapshot.Writer(snapshot, hash("changed export"))) {
+            writer.add(orders.get(0));
+        }
+
+        assertEquals(describe(orders), describe(OrderSnapshot.load(snapshot, hash("export"))));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(snapshot), files.toList());
+        }
+    }
+
+    private static void overwrite(Path snapshot, int position, int value) throws Exception {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(value).flip(), position);
+        }
+    }
+
+    private byte[] hash(String content) throws Exception {
+        Path source = directory.resolve("source");
+        Files.writeString(source, content, StandardCharsets.UTF_8);
+        try {
+            return OrderSnapshot.hash(source);
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    // the synthetic orders share many strings, the first one has no phone number
+    private static List<Order> orders() throws IOException {
+        List<Order> orders = new ArrayList<>();
+        orders.add(new Order("1", new Customer("Zo\u00eb", "Stra\u00dfe", new Address("Hauptstra\u00dfe", "1a",
+                "50667", "K\u00f6ln", "DE"), new Contact("zoe@example.org", null), 7),
+                List.of(new Product("Tea", 1250, 3)), LocalDate.of(1999, 12, 31)));
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer();
+        try (WooCommerceOrderStream stream = deserializer.stream(new StringReader(
+                WooCommerceOrderStreamTest.syntheticExport(50, new Random(13)).toString()))) {
+            stream.forEachRemaining(orders::add);
+        }
+        return orders;
+    }
+
+    private static List<String> describe(List<Order> orders) {
+        return orders.stream().map(WooCommerceOrderStreamTest::describe).toList();
+    }
+}
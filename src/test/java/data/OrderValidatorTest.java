@@ -0,0 +1,160 @@
+package data;
+
+import model.Order;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderValidatorTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void quarantinesTheRejectedOrdersAsTheyAreAndListsTheirErrors() throws Exception {
+        JSONArray export = exportWithTwoRejectedOrders();
+        OrderValidator validator = validator();
+        List<Boolean> valid = new ArrayList<>();
+        try (validator) {
+            for (Object order : export) {
+                valid.add(validator.check(order));
+            }
+        }
+
+        assertEquals(List.of(true, false, true, false, true), valid);
+        ValidationReport report = validator.getReport();
+        assertFalse(report.isValid());
+        assertEquals(5, report.getOrderCount());
+        assertEquals(directory.resolve("quarantine").resolve("orders-1.json"), report.getQuarantine());
+        assertEquals(directory.resolve("quarantine").resolve("orders-1.errors.txt"), report.getErrorFile());
+
+        JSONArray quarantined = new JSONArray(Files.readString(report.getQuarantine(), StandardCharsets.UTF_8));
+        assertEquals(2, quarantined.length());
+        assertTrue(export.getJSONObject(1).similar(quarantined.getJSONObject(0)));
+        assertEquals(1, quarantined.get(1));
+        assertEquals(List.of("Order #2 (3001): billing_postcode is missing",
+                        "Order #4: expected an order object but got 1"),
+                Files.readAllLines(report.getErrorFile(), StandardCharsets.UTF_8));
+        assertEquals(List.of("Order #2 (3001): billing_postcode is missing",
+                "Order #4: expected an order object but got 1"), report.getRejections().stream()
+                .map(ValidationReport.Rejection::toString).toList());
+    }
+
+    @Test
+    void writesNoFilesWhenEveryOrderIsValid() throws Exception {
+        OrderValidator validator = validator();
+        try (validator) {
+            for (Object order : WooCommerceOrderStreamTest.syntheticExport(10, new Random(3))) {
+                assertTrue(validator.check(order));
+            }
+        }
+
+        assertTrue(validator.getReport().isValid());
+        assertEquals(10, validator.getReport().getOrderCount());
+        assertNull(validator.getReport().getQuarantine());
+        assertFalse(Files.exists(directory.resolve("quarantine")));
+    }
+
+    @Test
+    void onlyReportsWithoutAQuarantine() throws Exception {
+        try (OrderValidator validator = new OrderValidator(OrderSchema.WOO_COMMERCE)) {
+            assertFalse(validator.check(new JSONObject()));
+            assertEquals(1, validator.getReport().getRejections().size());
+            assertNull(validator.getReport().getQuarantine());
+            assertNull(validator.getReport().getExport());
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void theDeserializerSkipsTheRejectedOrders() throws Exception {
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer(write(
+                exportWithTwoRejectedOrders()).toString());
+        try (OrderValidator validator = validator()) {
+            deserializer.setValidator(validator);
+            deserializer.deserialize();
+        }
+
+        assertEquals(List.of("3000", "3002", "3004"), deserializer.getData().stream().map(Order::orderNumber)
+                .toList());
+        assertQuarantined();
+    }
+
+    @Test
+    void theStreamSkipsTheRejectedOrders() throws Exception {
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer(write(
+                exportWithTwoRejectedOrders()).toString());
+        List<String> orderNumbers = new ArrayList<>();
+        try (OrderValidator validator = validator()) {
+            deserializer.setValidator(validator);
+            try (WooCommerceOrderStream orders = deserializer.stream()) {
+                orders.forEachRemaining(order -> orderNumbers.add(order.orderNumber()));
+            }
+        }
+
+        assertEquals(List.of("3000", "3002", "3004"), orderNumbers);
+        assertQuarantined();
+    }
+
+    @Test
+    void keepsTheOrdersQuarantinedBeforeTheExportBreaks() throws Exception {
+        String export = exportWithTwoRejectedOrders().toString();
+        // cut into the last order
+        String truncated = export.substring(0, export.lastIndexOf("order_number"));
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer();
+        OrderValidator validator = validator();
+        deserializer.setValidator(validator);
+        try (validator; WooCommerceOrderStream orders = deserializer.stream(new StringReader(truncated))) {
+            assertEquals("3000", orders.next().orderNumber());
+            assertEquals("3002", orders.next().orderNumber());
+            assertThrows(JSONException.class, orders::hasNext);
+        }
+
+        assertEquals(2, new JSONArray(Files.readString(validator.getReport().getQuarantine(),
+                StandardCharsets.UTF_8)).length());
+    }
+
+    private OrderValidator validator() {
+        return new OrderValidator(OrderSchema.WOO_COMMERCE, directory.resolve("orders.json"),
+                directory.resolve("quarantine").resolve("orders-1"));
+    }
+
+    private void assertQuarantined() throws Exception {
+        JSONArray quarantined = new JSONArray(Files.readString(directory.resolve("quarantine")
+                .resolve("orders-1.json"), StandardCharsets.UTF_8));
+        assertEquals(2, quarantined.length());
+        assertEquals("3001", quarantined.getJSONObject(0).getString("order_number"));
+        assertEquals(1, quarantined.get(1));
+    }
+
+    private Path write(JSONArray export) throws Exception {
+        Path path = directory.resolve("orders.json");
+        Files.writeString(path, export.toString(2), StandardCharsets.UTF_8);
+        return path;
+    }
+
+    // the second order misses a field and the fourth is not an object at all
+    private static JSONArray exportWithTwoRejectedOrders() {
+        JSONArray export = WooCommerceOrderStreamTest.syntheticExport(5, new Random(9));
+        export.getJSONObject(1).remove("billing_postcode");
+        export.put(3, 1);
+        return export;
+    }
+}
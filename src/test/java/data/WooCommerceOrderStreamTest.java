@@ -0,0 +1,205 @@
+package data;
+
+import model.Order;
+import model.Product;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WooCommerceOrderStreamTest {
+    private static final Path SAMPLE = Path.of("src/main/resources/data/orders.json");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamsTheSameOrdersAsTheDeserializerFromTheSample() throws Exception {
+        List<String> orders = deserialized(SAMPLE);
+
+        assertEquals(1, orders.size());
+        assertEquals(orders, streamed(SAMPLE));
+    }
+
+    @Test
+    void streamsTheSameOrdersAsTheDeserializerFromASyntheticExport() throws Exception {
+        Path export = directory.resolve("orders.json");
+        Files.writeString(export, syntheticExport(200, new Random(42)).toString(2), StandardCharsets.UTF_8);
+
+        List<String> orders = deserialized(export);
+
+        assertEquals(200, orders.size());
+        assertEquals(orders, streamed(export));
+    }
+
+    @Test
+    void streamsNothingFromAnEmptyArray() throws Exception {
+        Path export = directory.resolve("orders.json");
+        Files.writeString(export, " [ \n ] ");
+
+        try (WooCommerceOrderStream orders = new WooCommerceDataDeserializer(export.toString()).stream()) {
+            assertFalse(orders.hasNext());
+            assertThrows(NoSuchElementException.class, orders::next);
+        }
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer(export.toString());
+        deserializer.deserialize();
+        assertEquals(0, deserializer.getRawData().length());
+        assertThrows(NotDeserializedYetException.class, deserializer::getData);
+    }
+
+    @Test
+    void streamsTheCompleteOrdersOfATruncatedFileAndThenFails() throws Exception {
+        String export = syntheticExport(3, new Random(7)).toString();
+        // cut into the last order
+        String truncated = export.substring(0, export.lastIndexOf("order_number"));
+
+        try (WooCommerceOrderStream orders = new WooCommerceDataDeserializer().stream(new StringReader(truncated))) {
+            orders.next();
+            orders.next();
+            assertThrows(JSONException.class, orders::hasNext);
+        }
+        Path file = directory.resolve("orders.json");
+        Files.writeString(file, truncated);
+        assertThrows(JSONException.class, () -> new WooCommerceDataDeserializer(file.toString()).deserialize());
+    }
+
+    @Test
+    void rejectsATopLevelThatIsNotAnArray() throws Exception {
+        String export = syntheticExport(1, new Random(3)).getJSONObject(0).toString();
+
+        try (WooCommerceOrderStream orders = new WooCommerceDataDeserializer().stream(new StringReader(export))) {
+            JSONException e = assertThrows(JSONException.class, orders::hasNext);
+            assertTrue(e.getMessage().contains("must start with '['"), e.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsAnArrayElementThatIsNotAnObject() throws Exception {
+        try (WooCommerceOrderStream orders = new WooCommerceDataDeserializer().stream(new StringReader("[1]"))) {
+            assertThrows(JSONException.class, orders::hasNext);
+        }
+    }
+
+    @Test
+    void closingBeforeTheEndStopsTheStreamAndClosesTheReader() throws Exception {
+        ClosingReader reader = new ClosingReader(syntheticExport(5, new Random(11)).toString());
+        WooCommerceOrderStream orders = new WooCommerceDataDeserializer().stream(reader);
+
+        orders.next();
+        // an order that was already read ahead is dropped as well
+        assertTrue(orders.hasNext());
+        orders.close();
+
+        assertTrue(reader.closed);
+        assertFalse(orders.hasNext());
+        assertThrows(NoSuchElementException.class, orders::next);
+    }
+
+    private static List<String> deserialized(Path export) throws Exception {
+        WooCommerceDataDeserializer deserializer = new WooCommerceDataDeserializer(export.toString());
+        deserializer.deserialize();
+        List<String> orders = new ArrayList<>();
+        for (Order order : deserializer.getData()) {
+            orders.add(describe(order));
+        }
+        return orders;
+    }
+
+    private static List<String> streamed(Path export) throws IOException {
+        List<String> orders = new ArrayList<>();
+        try (WooCommerceOrderStream stream = new WooCommerceDataDeserializer(export.toString()).stream()) {
+            while (stream.hasNext()) {
+                orders.add(describe(stream.next()));
+            }
+        }
+        return orders;
+    }
+
+    // the customer has no equals, so the orders are compared by everything an invoice shows of them
+    static String describe(Order order) {
+        StringBuilder description = new StringBuilder()
+                .append(order.orderNumber()).append('|')
+                .append(order.orderDate()).append('|')
+                .append(order.customer().getFirstName()).append('|')
+                .append(order.customer().getLastName()).append('|')
+                .append(order.customer().getCustomerId()).append('|')
+                .append(order.customer().getAddress()).append('|')
+                .append(order.customer().getContact());
+        for (Product product : order.products()) {
+            description.append('|').append(product);
+        }
+        return description.toString();
+    }
+
+    static JSONArray syntheticExport(int size, Random random) {
+        String[] firstNames = {"Max", "J\u00f6rg", "Zo\u00eb", "Anna-Lena", "\u0132sbrand"};
+        String[] lastNames = {"Mustermann", "M\u00fcller", "O'Brien", "Stra\u00dfe", "Nguy\u1ec5n"};
+        JSONArray export = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            JSONObject order = new JSONObject();
+            order.put("order_number", String.valueOf(3000 + i));
+            order.put("order_status", "Abgeschlossen");
+            order.put("order_date", String.format("2024-%02d-%02d %02d:%02d", 1 + random.nextInt(12),
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60)));
+            order.put("billing_first_name", firstNames[random.nextInt(firstNames.length)]);
+            order.put("billing_last_name", lastNames[random.nextInt(lastNames.length)]);
+            order.put("billing_address", "Hauptstra\u00dfe " + (1 + random.nextInt(200)));
+            order.put("billing_city", "K\u00f6ln");
+            order.put("billing_postcode", String.format("%05d", random.nextInt(100000)));
+            order.put("billing_country", "DE");
+            order.put("billing_email", "customer" + i + "@example.com");
+            order.put("billing_phone", "+49 221 " + random.nextInt(1000000));
+            // WooCommerce writes the shipping price as a string and the item prices as numbers
+            order.put("order_shipping", String.valueOf(random.nextInt(2000) / 100.0));
+            JSONArray products = new JSONArray();
+            int lines = 1 + random.nextInt(4);
+            for (int line = 1; line <= lines; line++) {
+                JSONObject product = new JSONObject();
+                product.put("line_id", line);
+                product.put("name", "PRODUCT " + (char) ('A' + random.nextInt(26)));
+                product.put("qty", String.valueOf(1 + random.nextInt(9)));
+                product.put("item_price", random.nextInt(10000) / 100.0);
+                products.put(product);
+            }
+            order.put("products", products);
+            export.put(order);
+        }
+        return export;
+    }
+
+    private static final class ClosingReader extends Reader {
+        private final Reader reader;
+        private boolean closed;
+
+        private ClosingReader(String content) {
+            this.reader = new StringReader(content);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return reader.read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
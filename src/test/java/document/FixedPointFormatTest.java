@@ -0,0 +1,69 @@
+package document;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FixedPointFormatTest {
+    private static final List<String> PATTERNS = List.of("0.00", "0", "#,##0.00", "#,##0.##", "#0.###", "0.0",
+            "00.000", "#,##0", "#,####0.00", "0.00 EUR", "EUR 0.00", "0.00;(0.00)", "0%", "#,##0.00 \u00a4",
+            "0.00E0");
+
+    @Test
+    void formatsLikeDecimalFormat() {
+        for (String pattern : PATTERNS) {
+            for (int scale = 0; scale <= 4; scale++) {
+                int formatScale = scale;
+                FixedPointFormat format = new FixedPointFormat(pattern, scale);
+                DecimalFormat reference = new DecimalFormat(pattern);
+                for (long value : values()) {
+                    assertEquals(reference.format(BigDecimal.valueOf(value, scale)), format.format(value),
+                            () -> pattern + " at scale " + formatScale + " for " + value);
+                }
+            }
+        }
+    }
+
+    @Test
+    void roundsTiesHalfEven() {
+        FixedPointFormat format = new FixedPointFormat("0.0", 2);
+
+        assertEquals("0.0", format.format(5));
+        assertEquals("0.2", format.format(15));
+        assertEquals("0.2", format.format(25));
+        assertEquals("-0.2", format.format(-25));
+        assertEquals("-0.0", format.format(-5));
+    }
+
+    @Test
+    void formatsTheConfiguredPatterns() {
+        assertEquals("1234.50", new FixedPointFormat("0.00", 2).format(123_450));
+        assertEquals("0.00", new FixedPointFormat("0.00", 2).format(0));
+        assertEquals("-0.99", new FixedPointFormat("0.00", 2).format(-99));
+        assertEquals("3", new FixedPointFormat("0", 0).format(3));
+    }
+
+    private static List<Long> values() {
+        List<Long> values = new ArrayList<>(List.of(0L, 1L, -1L, 5L, -5L, 15L, -15L, 25L, 50L, 105L, 995L, -995L,
+                1_005L, 12_345L, 99_999L, 100_000L, 1_234_567_890L, -1_234_567_890L, 999_999_999_999_999L,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1));
+        // ties at every rounding position
+        for (long power = 5; power < 1_000_000; power *= 10) {
+            for (long value = power; value < power * 40; value += power * 2) {
+                values.add(value);
+                values.add(-value);
+            }
+        }
+        Random random = new Random(17);
+        for (int i = 0; i < 2_000; i++) {
+            values.add(random.nextLong() >> random.nextInt(64));
+        }
+        return values;
+    }
+}
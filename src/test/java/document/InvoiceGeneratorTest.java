@@ -0,0 +1,87 @@
+package document;
+
+import data.CompanyDataDeserializer;
+import data.InvoiceConfigurationDataDeserializer;
+import model.Address;
+import model.Contact;
+import model.Customer;
+import model.Order;
+import model.Product;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class InvoiceGeneratorTest {
+    private static final Path RESOURCES = Path.of("src/main/resources");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rendersTheSameBytesForTheSameInputs() throws Exception {
+        InvoiceTemplate template = template();
+        Order order = order("5000", 1250);
+        LocalDate performanceDate = LocalDate.of(2022, 8, 12);
+
+        byte[] first = render(new InvoiceGenerator(template, order, performanceDate));
+        // a pause, so that a creation date or identifier taken from the clock would differ
+        Thread.sleep(1100);
+        byte[] second = render(new InvoiceGenerator(template(), order, performanceDate));
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    void rendersDifferentBytesForADifferentOrder() throws Exception {
+        InvoiceTemplate template = template();
+        LocalDate performanceDate = LocalDate.of(2022, 8, 12);
+
+        byte[] first = render(new InvoiceGenerator(template, order("5000", 1250), performanceDate));
+        byte[] second = render(new InvoiceGenerator(template, order("5000", 1350), performanceDate));
+
+        assertFalse(Arrays.equals(first, second));
+    }
+
+    private static byte[] render(InvoiceGenerator generator) throws Exception {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        generator.generate(pdf);
+        return pdf.toByteArray();
+    }
+
+    private static Order order(String orderNumber, long price) {
+        Customer customer = new Customer("Erika", "Mustermann",
+                new Address("Examplestreet", "12", "10115", "Berlin", "DE"),
+                new Contact("erika@example.org", "+49 170 1234567"), 42);
+        return new Order(orderNumber, customer, List.of(new Product("Tea", price, 3)), LocalDate.of(2022, 8, 10));
+    }
+
+    // the shipped invoice.json only holds placeholder paths, so point it at the bundled images
+    private InvoiceTemplate template() throws Exception {
+        JSONObject config = new JSONObject(Files.readString(RESOURCES.resolve("data/invoice.json")));
+        config.put("outputPath", directory.toAbsolutePath() + "/");
+        config.put("logoPath", RESOURCES.resolve("images/logo.png").toString());
+        config.put("letteringPath", RESOURCES.resolve("images/lettering.png").toString());
+        config.put("signaturePath", RESOURCES.resolve("images/logo.png").toString());
+        Path configFile = directory.resolve("invoice.json");
+        Files.writeString(configFile, config.toString(), StandardCharsets.UTF_8);
+
+        InvoiceConfigurationDataDeserializer configDeserializer =
+                new InvoiceConfigurationDataDeserializer(configFile.toString());
+        configDeserializer.deserialize();
+        CompanyDataDeserializer companyDeserializer =
+                new CompanyDataDeserializer(RESOURCES.resolve("data/company.json").toString());
+        companyDeserializer.deserialize();
+        return new InvoiceTemplate(configDeserializer.getData(), companyDeserializer.getData());
+    }
+}
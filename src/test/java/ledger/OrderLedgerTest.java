@@ -0,0 +1,109 @@
+package ledger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderLedgerTest {
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String OTHER_HASH = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsTheLatestStateOfEveryOrderAcrossRuns() throws Exception {
+        Path path = directory.resolve("ledger.tsv");
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            ledger.markRendered("1", HASH);
+            ledger.markSent("1", HASH);
+            ledger.markRendered("2", HASH);
+            ledger.markQueued("3", HASH);
+        }
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            assertEquals(3, ledger.size());
+            assertTrue(ledger.isSent("1", HASH));
+            assertTrue(ledger.isRendered("1", HASH));
+            assertFalse(ledger.isSent("2", HASH));
+            assertTrue(ledger.isRendered("2", HASH));
+            assertTrue(ledger.isQueued("3", HASH));
+            assertTrue(ledger.isRendered("3", HASH));
+        }
+    }
+
+    @Test
+    void ignoresATornLastLineAndAppendsAfterIt() throws Exception {
+        Path path = directory.resolve("ledger.tsv");
+        // the crash cut the hash of the last record short, so it still has all its fields
+        Files.writeString(path, "RENDERED\t1\t" + HASH + "\nSENT\t1\t" + HASH.substring(0, 20),
+                StandardCharsets.UTF_8);
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            assertEquals(1, ledger.size());
+            assertTrue(ledger.isRendered("1", HASH));
+            assertFalse(ledger.isSent("1", HASH));
+            assertFalse(ledger.isSent("1", HASH.substring(0, 20)));
+            ledger.markSent("2", HASH);
+        }
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals("SENT\t2\t" + HASH, lines.get(lines.size() - 1));
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            assertTrue(ledger.isRendered("1", HASH));
+            assertTrue(ledger.isSent("2", HASH));
+        }
+    }
+
+    @Test
+    void ignoresATornLastLineWithMissingFields() throws Exception {
+        Path path = directory.resolve("ledger.tsv");
+        Files.writeString(path, "SENT\t1\t" + HASH + "\nSEN", StandardCharsets.UTF_8);
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            assertEquals(1, ledger.size());
+            assertTrue(ledger.isSent("1", HASH));
+        }
+    }
+
+    @Test
+    void compactsALedgerWithManySupersededLinesOnLoad() throws Exception {
+        Path path = directory.resolve("ledger.tsv");
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            for (int run = 0; run < 3; run++) {
+                ledger.markRendered("1", HASH);
+                ledger.markSent("1", HASH);
+                ledger.markRendered("2", OTHER_HASH);
+            }
+        }
+        assertEquals(9, Files.readAllLines(path).size());
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            assertEquals(2, ledger.size());
+        }
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.contains("SENT\t1\t" + HASH));
+        assertTrue(lines.contains("RENDERED\t2\t" + OTHER_HASH));
+        assertFalse(Files.exists(directory.resolve("ledger.tsv.compact")));
+    }
+
+    @Test
+    void treatsAChangedHashAsNotRenderedAndNotSent() throws Exception {
+        try (OrderLedger ledger = new OrderLedger(directory.resolve("ledger.tsv"))) {
+            ledger.markSent("1", HASH);
+
+            assertFalse(ledger.isSent("1", OTHER_HASH));
+            assertFalse(ledger.isRendered("1", OTHER_HASH));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+    @Test
+    void parsesPrices() {
+        assertEquals(1200, Money.parseCents("12"));
+        assertEquals(1250, Money.parseCents("12.5"));
+        assertEquals(1250, Money.parseCents("12.50"));
+        assertEquals(-99, Money.parseCents("-0.99"));
+        assertEquals(99, Money.parseCents("+0.99"));
+        assertEquals(50, Money.parseCents(".5"));
+        assertEquals(1200, Money.parseCents("12."));
+        assertEquals(1200, Money.parseCents(" 12 "));
+        assertEquals(0, Money.parseCents("-0"));
+    }
+
+    @Test
+    void roundsMoreThanTwoDecimalsHalfUp() {
+        assertEquals(1, Money.parseCents("0.005"));
+        assertEquals(0, Money.parseCents("0.0049999"));
+        assertEquals(200, Money.parseCents("1.995"));
+        assertEquals(-1, Money.parseCents("-0.005"));
+        assertEquals(-200, Money.parseCents("-1.995"));
+        assertEquals(1235, Money.parseCents("12.34999999999999999999"));
+    }
+
+    @Test
+    void parsesExponents() {
+        assertEquals(150_000, Money.parseCents("1.5e3"));
+        assertEquals(150_000, Money.parseCents("1.5E+3"));
+        assertEquals(13, Money.parseCents("125E-3"));
+        assertEquals(-150_000, Money.parseCents("-1.5e3"));
+    }
+
+    @Test
+    void parsesLikeBigDecimal() {
+        Random random = new Random(23);
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder amount = new StringBuilder();
+            if (random.nextInt(4) == 0) amount.append(random.nextBoolean() ? '-' : '+');
+            amount.append(Math.abs(random.nextLong()) % (long) Math.pow(10, random.nextInt(17)));
+            if (random.nextBoolean()) {
+                amount.append('.');
+                for (int digits = random.nextInt(6); digits > 0; digits--) amount.append(random.nextInt(10));
+            }
+            String value = amount.toString();
+            long expected = new BigDecimal(value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            assertEquals(expected, Money.parseCents(value), value);
+        }
+    }
+
+    @Test
+    void rejectsMalformedAmounts() {
+        for (String amount : List.of("", " ", "-", "+", ".", "1.2.3", "12a", "a12", "1,50", "--1", "+-1", "1e",
+                "e3", "1 000", "99999999999999999999")) {
+            assertThrows(IllegalArgumentException.class, () -> Money.parseCents(amount), amount);
+        }
+    }
+}
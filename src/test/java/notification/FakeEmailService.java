@@ -0,0 +1,51 @@
+package notification;
+
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// fails the first attempts with the given error and records the invoice ids of the emails it would have sent
+class FakeEmailService extends EmailService {
+    private final int failingAttempts;
+    private final Supplier<MessagingException> error;
+    private final AtomicInteger attempts;
+    private final List<Long> attemptMillis;
+    private final List<String> sent;
+
+    FakeEmailService() {
+        this(0, () -> null);
+    }
+
+    FakeEmailService(int failingAttempts, Supplier<MessagingException> error) {
+        super("shop@example.com", "", "127.0.0.1", "25", false, false, false, "TLSv1.2", "*", "Shop",
+                "Invoice", "Dear", "Thank you for your order.", "Regards", "Shop");
+        this.failingAttempts = failingAttempts;
+        this.error = error;
+        this.attempts = new AtomicInteger();
+        this.attemptMillis = new CopyOnWriteArrayList<>();
+        this.sent = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public void sendAttachedMimeMessage(String to, String lastName, String id, DataSource attachment)
+            throws MessagingException {
+        attemptMillis.add(System.currentTimeMillis());
+        if (attempts.incrementAndGet() <= failingAttempts) throw error.get();
+        sent.add(id);
+    }
+
+    int getAttempts() {
+        return attempts.get();
+    }
+
+    List<Long> getAttemptMillis() {
+        return attemptMillis;
+    }
+
+    List<String> getSent() {
+        return sent;
+    }
+}
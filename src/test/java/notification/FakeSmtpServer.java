@@ -0,0 +1,111 @@
+package notification;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// a plain SMTP stand-in on an ephemeral loopback port that records the messages it receives
+class FakeSmtpServer implements AutoCloseable {
+    enum Behavior {
+        // answers every command like a healthy server
+        ACCEPT,
+        // accepts a message, then closes the connection as an idle timeout would
+        CLOSE_AFTER_MESSAGE,
+        // reads the whole message, then closes the connection without confirming it
+        CLOSE_BEFORE_CONFIRMING
+    }
+
+    private final ServerSocket socket;
+    private final Behavior behavior;
+    private final List<String> messages;
+    private final AtomicInteger connections;
+    private final Thread acceptor;
+
+    FakeSmtpServer(Behavior behavior) throws IOException {
+        this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.behavior = behavior;
+        this.messages = new CopyOnWriteArrayList<>();
+        this.connections = new AtomicInteger();
+        this.acceptor = new Thread(this::accept, "fake-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Socket connection = socket.accept();
+                connections.incrementAndGet();
+                Thread handler = new Thread(() -> handle(connection), "fake-smtp-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket connection) {
+        try (connection) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            OutputStream out = connection.getOutputStream();
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(out, "250-localhost");
+                    reply(out, "250 OK");
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 go ahead");
+                    StringBuilder message = new StringBuilder();
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        message.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n");
+                    }
+                    messages.add(message.toString());
+                    if (behavior == Behavior.CLOSE_BEFORE_CONFIRMING) return;
+                    reply(out, "250 queued");
+                    if (behavior == Behavior.CLOSE_AFTER_MESSAGE) return;
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    private static void reply(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
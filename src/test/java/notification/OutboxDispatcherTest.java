@@ -0,0 +1,138 @@
+package notification;
+
+import ledger.OrderLedger;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxDispatcherTest {
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final byte[] PDF = "%PDF-1.4 invoice".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void retriesAfterABackoffAndSendsOnceTheServerRecovers() throws Exception {
+        FakeEmailService emailService = new FakeEmailService(1,
+                () -> new MessagingException("421 Service not available"));
+        try (OrderLedger ledger = new OrderLedger(directory.resolve("ledger.tsv"))) {
+            Outbox outbox = new Outbox(directory.resolve("outbox"));
+            outbox.enqueue(entry("2022-08-12-5000", "5000"), PDF, PDF.length);
+
+            try (OutboxDispatcher dispatcher = new OutboxDispatcher(outbox, emailService, ledger, 1, 0, 3)) {
+                dispatcher.start();
+                assertTrue(dispatcher.awaitDrained(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(2, emailService.getAttempts());
+            assertEquals(List.of("2022-08-12-5000"), emailService.getSent());
+            // the first retry waits between half and all of the initial backoff of two seconds
+            long backoff = emailService.getAttemptMillis().get(1) - emailService.getAttemptMillis().get(0);
+            assertTrue(backoff >= 1_000 && backoff < 4_000, "backoff of " + backoff + "ms");
+            assertTrue(ledger.isSent("5000", HASH));
+            assertEquals(List.of(), files(directory.resolve("outbox/pending")));
+        }
+    }
+
+    @Test
+    void givesUpAfterTheLastAttemptAndKeepsTheEmailInTheFailedDirectory() throws Exception {
+        FakeEmailService emailService = new FakeEmailService(Integer.MAX_VALUE,
+                () -> new MessagingException("421 Service not available"));
+        try (OrderLedger ledger = new OrderLedger(directory.resolve("ledger.tsv"))) {
+            Outbox outbox = new Outbox(directory.resolve("outbox"));
+            outbox.enqueue(entry("2022-08-12-5000", "5000"), PDF, PDF.length);
+
+            try (OutboxDispatcher dispatcher = new OutboxDispatcher(outbox, emailService, ledger, 1, 0, 2)) {
+                dispatcher.start();
+                assertTrue(dispatcher.awaitDrained(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(2, emailService.getAttempts());
+            assertEquals(List.of(), emailService.getSent());
+            assertEquals(List.of(), files(directory.resolve("outbox/pending")));
+            Path failed = directory.resolve("outbox/failed");
+            assertEquals(List.of("2022-08-12-5000.json", "2022-08-12-5000.pdf"), files(failed));
+            OutboxEntry entry = OutboxEntry.fromJson(new JSONObject(
+                    Files.readString(failed.resolve("2022-08-12-5000.json"))));
+            assertEquals(2, entry.attempts());
+            assertEquals("421 Service not available", entry.lastError());
+            assertEquals(failed.resolve("2022-08-12-5000.pdf"), entry.attachment());
+            // a later run renders and sends the invoice again
+            assertTrue(ledger.isRendered("5000", HASH));
+            assertFalse(ledger.isSent("5000", HASH));
+        }
+    }
+
+    @Test
+    void givesUpAtOnceWhenTheServerRejectsTheRecipient() throws Exception {
+        FakeEmailService emailService = new FakeEmailService(Integer.MAX_VALUE,
+                () -> new SendFailedException("550 No such user"));
+        Outbox outbox = new Outbox(directory.resolve("outbox"));
+        outbox.enqueue(entry("2022-08-12-5000", "5000"), PDF, PDF.length);
+
+        try (OutboxDispatcher dispatcher = new OutboxDispatcher(outbox, emailService, null, 1, 0, 5)) {
+            dispatcher.start();
+            assertTrue(dispatcher.awaitDrained(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, emailService.getAttempts());
+        assertEquals(List.of("2022-08-12-5000.json", "2022-08-12-5000.pdf"),
+                files(directory.resolve("outbox/failed")));
+    }
+
+    @Test
+    void sendsThePendingEmailsOfAnEarlierRunAfterARestart() throws Exception {
+        Path outboxDirectory = directory.resolve("outbox");
+        Path invoice = Files.write(directory.resolve("2022-08-12-5001.pdf"), PDF);
+        Outbox crashed = new Outbox(outboxDirectory);
+        crashed.enqueue(entry("2022-08-12-5000", "5000"), PDF, PDF.length);
+        crashed.enqueue(OutboxEntry.create("2022-08-12-5001", "5001", HASH, "customer@example.com", "Mustermann",
+                invoice));
+        // the earlier run stopped without a dispatcher, e.g. it crashed right after rendering
+
+        FakeEmailService emailService = new FakeEmailService();
+        try (OrderLedger ledger = new OrderLedger(directory.resolve("ledger.tsv"))) {
+            Outbox outbox = new Outbox(outboxDirectory);
+            assertEquals(2, outbox.getPendingCount());
+            // enqueued again by the restarted run, it is still only sent once
+            outbox.enqueue(entry("2022-08-12-5000", "5000"), PDF, PDF.length);
+
+            try (OutboxDispatcher dispatcher = new OutboxDispatcher(outbox, emailService, ledger, 2, 0, 3)) {
+                dispatcher.start();
+                assertTrue(dispatcher.awaitDrained(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(List.of("2022-08-12-5000", "2022-08-12-5001"), emailService.getSent().stream().sorted()
+                    .toList());
+            assertTrue(ledger.isSent("5000", HASH));
+            assertTrue(ledger.isSent("5001", HASH));
+        }
+        assertEquals(List.of(), files(outboxDirectory.resolve("pending")));
+        // the outbox only deletes the attachments it made a copy of
+        assertTrue(Files.exists(invoice));
+    }
+
+    private static OutboxEntry entry(String id, String orderNumber) {
+        return OutboxEntry.create(id, orderNumber, HASH, "customer@example.com", "Mustermann", Path.of("unused.pdf"));
+    }
+
+    private static List<String> files(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}
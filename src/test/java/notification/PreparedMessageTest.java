@@ -0,0 +1,145 @@
+package notification;
+
+import org.junit.jupiter.api.Test;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.ByteArrayDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// a prepared message has to read exactly like the one JavaMail builds from scratch, only its bytes may differ
+class PreparedMessageTest {
+    private static final String SHOP = "Feinkost M\u00fcller & S\u00f6hne \u2013 Gew\u00fcrze, Tee und " +
+            "Kaffee aus aller Welt seit 1887";
+
+    @Test
+    void readsLikeTheMessageBuiltFromScratch() throws Exception {
+        assertSameMessage("erika@example.org", "Mustermann", "2024-01-31-5000", SHOP,
+                "Thank you for your order.");
+    }
+
+    @Test
+    void readsLikeTheMessageBuiltFromScratchWithNonAsciiNames() throws Exception {
+        assertSameMessage("joerg@example.org", "Nguy\u1ec5n-M\u00fcller \u738b", "2024-01-31-5001",
+                "\u00c9picerie Fran\u00e7aise", "Vielen Dank f\u00fcr Ihre Bestellung \u2013 " +
+                        "die Rechnung liegt bei. \u00dcbrigens: \u20ac-Betr\u00e4ge sind gerundet.");
+    }
+
+    @Test
+    void readsLikeTheMessageBuiltFromScratchWithLongHeadersAndBody() throws Exception {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            recipients.add("\"Buchhaltung, Filiale " + i + "\" <filiale" + i + "@example.org>");
+        }
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            message.append("Zeile ").append(i).append(": Stra\u00dfe = Stra\u00dfe, 100% sicher ");
+        }
+        // a line that ends on a space and a long word are where quoted-printable breaks lines
+        message.append("Ende ").append("x".repeat(300)).append(" ");
+
+        assertSameMessage(String.join(", ", recipients), "Mustermann", "2024-01-31-" + "9".repeat(80), SHOP,
+                message.toString());
+    }
+
+    private static void assertSameMessage(String to, String lastName, String id, String from, String message)
+            throws Exception {
+        byte[] attachment = new byte[50_000];
+        new Random(1).nextBytes(attachment);
+
+        MimeMessage plain = written(emailService(from, message, false), to, lastName, id, attachment);
+        MimeMessage prepared = written(emailService(from, message, true), to, lastName, id, attachment);
+
+        assertAddresses(plain.getFrom(), prepared.getFrom());
+        assertAddresses(plain.getRecipients(Message.RecipientType.TO), prepared.getRecipients(Message.RecipientType.TO));
+        assertAddresses(plain.getRecipients(Message.RecipientType.BCC),
+                prepared.getRecipients(Message.RecipientType.BCC));
+        assertEquals(plain.getSubject(), prepared.getSubject());
+        assertEquals("Invoice " + id, prepared.getSubject());
+        assertEquals(from, ((InternetAddress) prepared.getFrom()[0]).getPersonal());
+
+        Multipart plainParts = (Multipart) plain.getContent();
+        Multipart preparedParts = (Multipart) prepared.getContent();
+        assertEquals(2, preparedParts.getCount());
+        assertSamePart(plainParts.getBodyPart(0), preparedParts.getBodyPart(0));
+        assertEquals("Dear " + lastName + ",<br/><br/>" + message + "<br/><br/>Regards<br/>Shop",
+                preparedParts.getBodyPart(0).getContent());
+        assertSamePart(plainParts.getBodyPart(1), preparedParts.getBodyPart(1));
+        assertEquals("invoice.pdf", preparedParts.getBodyPart(1).getFileName());
+        assertArrayEquals(attachment, bytes(preparedParts.getBodyPart(1)));
+    }
+
+    private static EmailService emailService(String from, String message, boolean prepared) {
+        return new EmailService("shop@example.com", "", "127.0.0.1", "25", false, false, false, "TLSv1.2", "*",
+                from, "Invoice ", "Dear ", message, "Regards", "Shop", 0, prepared);
+    }
+
+    // as the SMTP server gets it
+    private static MimeMessage written(EmailService emailService, String to, String lastName, String id,
+                                       byte[] attachment) throws Exception {
+        ByteArrayDataSource dataSource = new ByteArrayDataSource(attachment, "application/pdf");
+        dataSource.setName("invoice.pdf");
+        Message message = emailService.createAttachedMimeMessage(to, lastName, id, dataSource);
+        message.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+
+        byte[] bytes = out.toByteArray();
+        assertTrue(isSevenBit(bytes), "the message is not 7 bit clean");
+        return new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(bytes));
+    }
+
+    // the encoded names may be folded differently
+    private static void assertAddresses(Address[] expected, Address[] actual) {
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(((InternetAddress) expected[i]).getPersonal(), ((InternetAddress) actual[i]).getPersonal());
+        }
+    }
+
+    private static void assertSamePart(Part expected, Part actual) throws Exception {
+        assertTrue(new ContentType(expected.getContentType()).match(actual.getContentType()),
+                expected.getContentType() + " != " + actual.getContentType());
+        assertEquals(new ContentType(expected.getContentType()).getParameter("charset"),
+                new ContentType(actual.getContentType()).getParameter("charset"));
+        assertEquals(expected.getFileName(), actual.getFileName());
+        assertArrayEquals(bytes(expected), bytes(actual));
+    }
+
+    // readAllBytes() stops after its first buffer on the base64 decoder of this JavaMail version
+    private static byte[] bytes(Part part) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = part.getInputStream()) {
+            in.transferTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    // no line may be longer than SMTP allows either
+    private static boolean isSevenBit(byte[] bytes) {
+        int lineLength = 0;
+        for (byte b : bytes) {
+            if (b < 0) return false;
+            lineLength = b == '\n' ? 0 : lineLength + 1;
+            if (lineLength > 998) return false;
+        }
+        return true;
+    }
+}
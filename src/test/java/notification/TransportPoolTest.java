@@ -0,0 +1,80 @@
+package notification;
+
+import org.junit.jupiter.api.Test;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransportPoolTest {
+    @Test
+    void reusesOneConnectionForConsecutiveSends() throws Exception {
+        try (FakeSmtpServer server = new FakeSmtpServer(FakeSmtpServer.Behavior.ACCEPT);
+             TransportPool pool = new TransportPool(session(server), 1)) {
+            for (int i = 0; i < 3; i++) {
+                pool.send(message(i));
+            }
+
+            assertEquals(3, server.getMessages().size());
+            assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    void reconnectsWhenTheServerClosedAnIdleConnection() throws Exception {
+        try (FakeSmtpServer server = new FakeSmtpServer(FakeSmtpServer.Behavior.CLOSE_AFTER_MESSAGE);
+             TransportPool pool = new TransportPool(session(server), 1)) {
+            pool.send(message(1));
+            pool.send(message(2));
+
+            assertEquals(2, server.getMessages().size());
+            assertEquals(2, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    void doesNotSendAgainWhenTheServerDroppedTheConnectionDuringTheSend() throws Exception {
+        try (FakeSmtpServer server = new FakeSmtpServer(FakeSmtpServer.Behavior.CLOSE_BEFORE_CONFIRMING);
+             TransportPool pool = new TransportPool(session(server), 1)) {
+            assertThrows(MessagingException.class, () -> pool.send(message(1)));
+
+            assertEquals(1, server.getMessages().size());
+            assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    void failsWhenNoServerIsListening() throws Exception {
+        Session session;
+        try (FakeSmtpServer server = new FakeSmtpServer(FakeSmtpServer.Behavior.ACCEPT)) {
+            session = session(server);
+        }
+        try (TransportPool pool = new TransportPool(session, 1)) {
+            assertThrows(MessagingException.class, () -> pool.send(message(1)));
+        }
+    }
+
+    private static Session session(FakeSmtpServer server) {
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", "127.0.0.1");
+        properties.put("mail.smtp.port", String.valueOf(server.getPort()));
+        properties.put("mail.smtp.connectiontimeout", "5000");
+        properties.put("mail.smtp.timeout", "5000");
+        return Session.getInstance(properties);
+    }
+
+    private static Message message(int number) throws MessagingException {
+        MimeMessage message = new MimeMessage((Session) null);
+        message.setFrom(new InternetAddress("shop@example.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("customer@example.com"));
+        message.setSubject("Invoice No. " + number);
+        message.setText("Invoice " + number);
+        return message;
+    }
+}
@@ -0,0 +1,50 @@
+package processing;
+
+import data.CompanyDataDeserializer;
+import data.InvoiceConfigurationDataDeserializer;
+import document.InvoiceTemplate;
+import model.Address;
+import model.Contact;
+import model.Customer;
+import model.Order;
+import model.Product;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+final class Fixtures {
+    private static final Path RESOURCES = Path.of("src/main/resources");
+
+    private Fixtures() {
+    }
+
+    static Order order(String orderNumber, long price) {
+        Customer customer = new Customer("Erika", "Mustermann",
+                new Address("Examplestreet", "12", "10115", "Berlin", "DE"),
+                new Contact("erika@example.org", "+49 170 1234567"), 42);
+        return new Order(orderNumber, customer, List.of(new Product("Tea", price, 3)), LocalDate.of(2022, 8, 10));
+    }
+
+    // the shipped invoice.json only holds placeholder paths, so point it at the bundled images
+    static InvoiceTemplate template(Path directory) throws Exception {
+        JSONObject config = new JSONObject(Files.readString(RESOURCES.resolve("data/invoice.json")));
+        config.put("outputPath", directory.toAbsolutePath() + "/");
+        config.put("logoPath", RESOURCES.resolve("images/logo.png").toString());
+        config.put("letteringPath", RESOURCES.resolve("images/lettering.png").toString());
+        config.put("signaturePath", RESOURCES.resolve("images/logo.png").toString());
+        Path configFile = directory.resolve("invoice.json");
+        Files.writeString(configFile, config.toString(), StandardCharsets.UTF_8);
+
+        InvoiceConfigurationDataDeserializer configDeserializer =
+                new InvoiceConfigurationDataDeserializer(configFile.toString());
+        configDeserializer.deserialize();
+        CompanyDataDeserializer companyDeserializer =
+                new CompanyDataDeserializer(RESOURCES.resolve("data/company.json").toString());
+        companyDeserializer.deserialize();
+        return new InvoiceTemplate(configDeserializer.getData(), companyDeserializer.getData());
+    }
+}
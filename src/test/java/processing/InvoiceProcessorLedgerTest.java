@@ -0,0 +1,106 @@
+package processing;
+
+import data.ContentDigest;
+import document.InvoiceTemplate;
+import ledger.OrderLedger;
+import model.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvoiceProcessorLedgerTest {
+    private static final LocalDate PERFORMANCE_DATE = LocalDate.of(2022, 8, 12);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sendsAnOrderThatWasRenderedButNotSentOnTheNextRun() throws Exception {
+        InvoiceTemplate template = Fixtures.template(directory);
+        Order order = Fixtures.order("5000", 1250);
+        String hash = ContentDigest.of(order);
+        Path path = directory.resolve("ledger.tsv");
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            InvoiceProcessor failing = processor(template, new RecordingEmailService(id -> true), ledger);
+            assertThrows(MessagingException.class, () -> failing.process(order));
+            assertTrue(ledger.isRendered("5000", hash));
+            assertFalse(ledger.isSent("5000", hash));
+        }
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            RecordingEmailService emailService = new RecordingEmailService();
+            InvoiceProcessor processor = processor(template, emailService, ledger);
+            processor.process(order);
+
+            assertEquals(1, emailService.getSent().size());
+            assertEquals(0, processor.getSkippedCount());
+            assertTrue(ledger.isSent("5000", hash));
+        }
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            RecordingEmailService emailService = new RecordingEmailService();
+            InvoiceProcessor processor = processor(template, emailService, ledger);
+            processor.process(order);
+
+            assertEquals(List.of(), emailService.getSent());
+            assertEquals(1, processor.getSkippedCount());
+        }
+    }
+
+    @Test
+    void rendersAndSendsAnOrderAgainWhoseContentChanged() throws Exception {
+        InvoiceTemplate template = Fixtures.template(directory);
+        Order order = Fixtures.order("5000", 1250);
+        Order changed = Fixtures.order("5000", 1350);
+        Path path = directory.resolve("ledger.tsv");
+
+        byte[] first;
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            RecordingEmailService emailService = new RecordingEmailService();
+            processor(template, emailService, ledger).process(order);
+            assertEquals(1, emailService.getSent().size());
+            first = Files.readAllBytes(invoice());
+        }
+
+        try (OrderLedger ledger = new OrderLedger(path)) {
+            RecordingEmailService emailService = new RecordingEmailService();
+            InvoiceProcessor processor = processor(template, emailService, ledger);
+            processor.process(changed);
+
+            assertEquals(1, emailService.getSent().size());
+            assertEquals(0, processor.getSkippedCount());
+            assertFalse(Arrays.equals(first, Files.readAllBytes(invoice())));
+            assertTrue(ledger.isSent("5000", ContentDigest.of(changed)));
+            assertFalse(ledger.isSent("5000", ContentDigest.of(order)));
+        }
+    }
+
+    private static InvoiceProcessor processor(InvoiceTemplate template, RecordingEmailService emailService,
+                                              OrderLedger ledger) {
+        InvoiceProcessor processor = new InvoiceProcessor(template, emailService, PERFORMANCE_DATE);
+        processor.setLedger(ledger);
+        return processor;
+    }
+
+    private Path invoice() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> invoices = files.filter(file -> file.toString().endsWith(".pdf")).toList();
+            assertEquals(1, invoices.size());
+            return invoices.get(0);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package processing;
+
+import notification.EmailService;
+
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+// records the invoice ids it is asked to send instead of sending them, and fails for the ids the predicate matches
+class RecordingEmailService extends EmailService {
+    private final List<String> sent;
+    private final Predicate<String> failing;
+
+    RecordingEmailService() {
+        this(id -> false);
+    }
+
+    RecordingEmailService(Predicate<String> failing) {
+        super("shop@example.com", "", "127.0.0.1", "25", false, false, false, "TLSv1.2", "*", "Shop",
+                "Invoice", "Dear", "Thank you for your order.", "Regards", "Shop");
+        this.sent = new CopyOnWriteArrayList<>();
+        this.failing = failing;
+    }
+
+    @Override
+    public void sendAttachedMimeMessage(String to, String lastName, String id, DataSource attachment)
+            throws MessagingException {
+        if (failing.test(id)) throw new MessagingException("The SMTP server rejected " + id);
+        sent.add(id);
+    }
+
+    List<String> getSent() {
+        return sent;
+    }
+}
@@ -0,0 +1,97 @@
+package processing;
+
+import document.InvoiceTemplate;
+import ledger.OrderLedger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// without an outbox, an email that could not be sent fails its own order but not the export
+class SendFailureTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void continuesSequentiallyAfterAFailedSend() throws Exception {
+        assertOnlyTheFailedOrderIsMissing(new ExportProcessor(null, ledger(), null, null, null, null));
+    }
+
+    @Test
+    void continuesThePipelineAfterAFailedSend() throws Exception {
+        ExportProcessor exportProcessor = new ExportProcessor(null, ledger(), null, null, null, null);
+        exportProcessor.setPipeline(2, 2, 4);
+        assertOnlyTheFailedOrderIsMissing(exportProcessor);
+    }
+
+    @Test
+    void continuesOnVirtualThreadsAfterAFailedSend() throws Exception {
+        assumeTrue(Threads.isVirtualThreadsSupported(), "virtual threads need Java 21 or later");
+        ExportProcessor exportProcessor = new ExportProcessor(null, ledger(), null, null, null, null);
+        exportProcessor.setVirtualThreads(2, 2, 2, 4);
+        assertOnlyTheFailedOrderIsMissing(exportProcessor);
+    }
+
+    private OrderLedger ledger() throws Exception {
+        return new OrderLedger(directory.resolve("ledger.tsv"));
+    }
+
+    private void assertOnlyTheFailedOrderIsMissing(ExportProcessor exportProcessor) throws Exception {
+        InvoiceTemplate template = Fixtures.template(directory);
+        RecordingEmailService emailService = new RecordingEmailService(id -> id.endsWith("-5001"));
+        exportProcessor.setValidate(false);
+
+        try (OrderLedger ledger = exportProcessor.getLedger()) {
+            exportProcessor.process(export(5000, 5001, 5002), template, emailService);
+
+            assertEquals(List.of("5000", "5002"), emailService.getSent().stream()
+                    .map(id -> id.substring(id.lastIndexOf('-') + 1)).sorted().toList());
+            // the next run sends it again
+            String hash = hash(ledger, "5001");
+            assertTrue(ledger.isRendered("5001", hash));
+            assertFalse(ledger.isSent("5001", hash));
+        }
+    }
+
+    private static String hash(OrderLedger ledger, String orderNumber) throws Exception {
+        for (String line : Files.readAllLines(ledger.getPath())) {
+            String[] fields = line.split("\t");
+            if (fields[1].equals(orderNumber)) return fields[2];
+        }
+        return null;
+    }
+
+    private Path export(int... orderNumbers) throws Exception {
+        JSONArray orders = new JSONArray();
+        for (int orderNumber : orderNumbers) {
+            JSONObject order = new JSONObject();
+            order.put("order_number", String.valueOf(orderNumber));
+            order.put("order_date", "2022-08-10 18:21");
+            order.put("billing_first_name", "Erika");
+            order.put("billing_last_name", "Mustermann");
+            order.put("billing_address", "Examplestreet 12");
+            order.put("billing_postcode", "10115");
+            order.put("billing_city", "Berlin");
+            order.put("billing_country", "DE");
+            order.put("billing_email", "erika@example.org");
+            order.put("billing_phone", "");
+            order.put("order_shipping", "4.90");
+            order.put("products", new JSONArray().put(new JSONObject().put("name", "Tea").put("qty", "3")
+                    .put("item_price", 12.5)));
+            orders.put(order);
+        }
+        Path export = directory.resolve("orders.json");
+        Files.writeString(export, orders.toString(), StandardCharsets.UTF_8);
+        return export;
+    }
+}
@@ -0,0 +1,136 @@
+package processing;
+
+import model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardTest {
+    private static final int ORDERS = 10_000;
+
+    @Test
+    void everyOrderIsInExactlyOneShardOfTheHash() {
+        List<String> orderNumbers = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            orderNumbers.add(String.valueOf(100_000 + i));
+        }
+        orderNumbers.addAll(List.of("", "A-17", "0017", " 17"));
+
+        for (int count : new int[]{1, 2, 3, 4, 7, 16}) {
+            List<Shard> shards = new ArrayList<>();
+            for (int index = 1; index <= count; index++) {
+                shards.add(Shard.ofIndex(index + "/" + count));
+            }
+            int[] sizes = new int[count];
+            for (String orderNumber : orderNumbers) {
+                int containing = 0;
+                for (int index = 0; index < count; index++) {
+                    if (shards.get(index).contains(orderNumber)) {
+                        containing++;
+                        sizes[index]++;
+                    }
+                }
+                assertEquals(1, containing, "order " + orderNumber + " in " + containing + " of " + count);
+            }
+            // consecutive order numbers are spread about evenly
+            for (int size : sizes) {
+                assertTrue(Math.abs(size - ORDERS / count) < ORDERS / count / 5,
+                        "a shard of " + count + " holds " + size + " orders");
+            }
+        }
+    }
+
+    @Test
+    void putsAnOrderIntoTheSameShardInEveryProcess() {
+        // String.hashCode is specified, so these hold on every JVM
+        assertTrue(Shard.ofIndex("4/4").contains("100000"));
+        assertTrue(Shard.ofIndex("2/4").contains("100001"));
+        assertTrue(Shard.ofIndex("3/4").contains("100002"));
+    }
+
+    @Test
+    void filtersTheOrdersOfTheShardInTheirOrder() {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(Fixtures.order(String.valueOf(5000 + i), 1250));
+        }
+
+        List<Order> merged = new ArrayList<>();
+        for (int index = 1; index <= 3; index++) {
+            List<Order> shardOrders = new ArrayList<>();
+            Shard.ofIndex(index + "/3").filter(orders.iterator()).forEachRemaining(shardOrders::add);
+            assertEquals(orders.stream().filter(shardOrders::contains).toList(), shardOrders);
+            merged.addAll(shardOrders);
+        }
+        assertEquals(orders.size(), merged.size());
+        assertTrue(merged.containsAll(orders));
+    }
+
+    @Test
+    void containsTheOrderNumbersOfTheRangeIncludingItsEnds() {
+        Shard shard = Shard.ofRange("1000-1999");
+
+        assertTrue(shard.contains("1000"));
+        assertTrue(shard.contains("1999"));
+        assertTrue(shard.contains(" 1500 "));
+        assertTrue(shard.contains("001500"));
+        assertFalse(shard.contains("999"));
+        assertFalse(shard.contains("2000"));
+        assertFalse(shard.contains("1500a"));
+        assertFalse(shard.contains(""));
+        assertEquals("orders-1000-1999", shard.getName());
+
+        Shard single = Shard.ofRange("1500-1500");
+        assertTrue(single.contains("1500"));
+        assertFalse(single.contains("1501"));
+        assertFalse(single.contains("1499"));
+    }
+
+    @Test
+    void leavesAnEndOfTheRangeOpen() {
+        Shard from = Shard.ofRange("1000-");
+        assertTrue(from.contains("1000"));
+        assertTrue(from.contains(String.valueOf(Long.MAX_VALUE)));
+        assertFalse(from.contains("999"));
+        assertEquals("orders-from-1000", from.getName());
+
+        Shard to = Shard.ofRange(" -1999");
+        assertTrue(to.contains("1999"));
+        assertTrue(to.contains("0"));
+        assertTrue(to.contains(String.valueOf(Long.MIN_VALUE)));
+        assertFalse(to.contains("2000"));
+        assertEquals("orders-to-1999", to.getName());
+
+        // beyond what a long holds
+        assertFalse(from.contains("99999999999999999999"));
+    }
+
+    @Test
+    void rejectsMalformedShards() {
+        for (String shard : List.of("0/4", "5/4", "1/0", "-1/4", "2", "2/4/8", "a/b", "")) {
+            assertThrows(IllegalArgumentException.class, () -> Shard.ofIndex(shard), shard);
+        }
+        for (String range : List.of("1999-1000", "1000", "1000-x", "x-1000", "")) {
+            assertThrows(IllegalArgumentException.class, () -> Shard.ofRange(range), range);
+        }
+    }
+
+    @Test
+    void qualifiesTheFilesOfTheShard() {
+        Shard shard = Shard.ofIndex("2/4");
+
+        assertEquals("shard-2-of-4", shard.getName());
+        assertEquals(Path.of("out/ledger.shard-2-of-4.tsv"), shard.qualify(Path.of("out/ledger.tsv")));
+        assertEquals(Path.of("ledger.shard-2-of-4"), shard.qualify(Path.of("ledger")));
+        assertEquals(Path.of(".ledger.shard-2-of-4"), shard.qualify(Path.of(".ledger")));
+        assertEquals(Path.of("customers.orders-1000-1999.tsv"),
+                Shard.ofRange("1000-1999").qualify(Path.of("customers.tsv")));
+    }
+}
@@ -0,0 +1,197 @@
+package server;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tenant.ReloadableTenant;
+import tenant.Tenant;
+import tenant.TenantFiles;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// every server listens on an ephemeral loopback port
+class InvoiceServerTest {
+    private static final Path RESOURCES = Path.of("src/main/resources");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void answersASingleOrderWithItsPdf() throws Exception {
+        try (ReloadableTenant shop = shop(); InvoiceServer server = new InvoiceServer(0, 1, shop::lease,
+                tenant -> null)) {
+            HttpResponse<byte[]> response = post(server, "", order("5000").toString(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+
+            assertEquals(200, response.statusCode());
+            assertEquals("application/pdf", response.headers().firstValue("Content-Type").orElseThrow());
+            String id = response.headers().firstValue("X-Invoice-Id").orElseThrow();
+            assertTrue(id.endsWith("-5000"), id);
+            assertTrue(new String(response.body(), 0, 5, StandardCharsets.US_ASCII).startsWith("%PDF-"));
+        }
+    }
+
+    @Test
+    void answersABatchWithAZipOfAllPdfs() throws Exception {
+        JSONArray orders = new JSONArray().put(order("5000")).put(order("5001")).put(order("5002"));
+        try (ReloadableTenant shop = shop(); InvoiceServer server = new InvoiceServer(0, 2, shop::lease,
+                tenant -> null)) {
+            HttpResponse<byte[]> response = post(server, "", orders.toString(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+
+            assertEquals(200, response.statusCode());
+            assertEquals("application/zip", response.headers().firstValue("Content-Type").orElseThrow());
+            List<String> names = new ArrayList<>();
+            try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response.body()))) {
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    names.add(entry.getName());
+                    assertTrue(new String(zip.readAllBytes(), 0, 5, StandardCharsets.US_ASCII).startsWith("%PDF-"));
+                }
+            }
+            assertEquals(3, names.size());
+            for (int i = 0; i < names.size(); i++) {
+                assertTrue(names.get(i).contains("500" + i), names.get(i));
+            }
+        }
+    }
+
+    @Test
+    void turnsARequestAwayWhenNoSlotFreesUpInTime() throws Exception {
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ReloadableTenant shop = shop(); InvoiceServer server = new InvoiceServer(0, 1, shop::lease, tenant -> {
+            // holds the only slot until the second request was turned away
+            admitted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Not sending in this test");
+        })) {
+            server.setAdmissionTimeout(100);
+            CompletableFuture<HttpResponse<String>> first = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return post(server, "?deliver=mail", order("5000").toString());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(admitted.await(30, TimeUnit.SECONDS));
+
+            HttpResponse<String> second = post(server, "", order("5001").toString());
+            release.countDown();
+
+            assertEquals(503, second.statusCode());
+            assertEquals("1", second.headers().firstValue("Retry-After").orElseThrow());
+            assertEquals("Too many concurrent requests", new JSONObject(second.body()).getString("error"));
+            assertEquals(500, first.get(30, TimeUnit.SECONDS).statusCode());
+        }
+    }
+
+    @Test
+    void rejectsAMalformedBody() throws Exception {
+        try (InvoiceServer server = new InvoiceServer(0, 1, InvoiceServerTest::noLease, tenant -> null)) {
+            for (String body : List.of("{\"order_number\": ", "not json", "")) {
+                HttpResponse<String> response = post(server, "", body);
+                assertEquals(400, response.statusCode(), body);
+                assertTrue(new JSONObject(response.body()).getString("error").startsWith("Invalid orders: "), body);
+            }
+            assertEquals("Invalid orders: Expected an order object or an array of orders",
+                    error(post(server, "", "42"), 400));
+            assertEquals("Invalid orders: The batch holds no orders", error(post(server, "", "[]"), 400));
+
+            HttpRequest get = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() +
+                    "/invoices")).GET().build();
+            assertEquals("Orders have to be POSTed", error(HttpClient.newHttpClient().send(get,
+                    HttpResponse.BodyHandlers.ofString()), 405));
+        }
+    }
+
+    @Test
+    void rejectsOrdersThatFailTheValidationWithAllTheirErrors() throws Exception {
+        JSONArray orders = new JSONArray().put(order("5000"))
+                .put(order("5001").put("billing_address", "Examplestreet"))
+                .put(order("5002").put("order_date", "yesterday"));
+
+        try (InvoiceServer server = new InvoiceServer(0, 1, InvoiceServerTest::noLease, tenant -> null)) {
+            HttpResponse<String> response = post(server, "", orders.toString());
+
+            assertEquals("Invalid orders: 2 of 3 orders fail the validation", error(response, 400));
+            assertEquals(List.of("Order #2 (5001): billing_address expected a street and a street number " +
+                    "separated by a space but got \"Examplestreet\"", "Order #3 (5002): order_date expected a " +
+                    "date like 2022-08-10 18:21 but got \"yesterday\""),
+                    new JSONObject(response.body()).getJSONArray("rejections").toList());
+        }
+    }
+
+    // nothing is rendered for an invalid request, so no configuration is leased
+    private static Tenant noLease() {
+        throw new AssertionError("An invalid request leased the configuration");
+    }
+
+    private static String error(HttpResponse<String> response, int status) {
+        assertEquals(status, response.statusCode(), response.body());
+        return new JSONObject(response.body()).getString("error");
+    }
+
+    private static HttpResponse<String> post(InvoiceServer server, String query, String body) throws Exception {
+        return post(server, query, body, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static <T> HttpResponse<T> post(InvoiceServer server, String query, String body,
+                                            HttpResponse.BodyHandler<T> bodyHandler) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() +
+                "/invoices" + query)).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return HttpClient.newHttpClient().send(request, bodyHandler);
+    }
+
+    // the shipped invoice.json only holds placeholder paths, so point it at the bundled images
+    private ReloadableTenant shop() throws Exception {
+        JSONObject invoice = new JSONObject(Files.readString(RESOURCES.resolve("data/invoice.json")));
+        invoice.put("outputPath", directory.toAbsolutePath() + "/");
+        invoice.put("logoPath", RESOURCES.resolve("images/logo.png").toString());
+        invoice.put("letteringPath", RESOURCES.resolve("images/lettering.png").toString());
+        invoice.put("signaturePath", RESOURCES.resolve("images/logo.png").toString());
+        Path invoiceFile = directory.resolve("invoice.json");
+        Files.writeString(invoiceFile, invoice.toString(), StandardCharsets.UTF_8);
+
+        return new ReloadableTenant(new TenantFiles("shop", RESOURCES.resolve("data/company.json").toString(), null,
+                invoiceFile.toString(), RESOURCES.resolve("data/notification.json").toString()));
+    }
+
+    private static JSONObject order(String orderNumber) {
+        return new JSONObject()
+                .put("order_number", orderNumber)
+                .put("order_date", "2022-08-10 18:21")
+                .put("billing_first_name", "Erika")
+                .put("billing_last_name", "Mustermann")
+                .put("billing_address", "Examplestreet 12")
+                .put("billing_postcode", "10115")
+                .put("billing_city", "Berlin")
+                .put("billing_country", "DE")
+                .put("billing_email", "erika@example.org")
+                .put("billing_phone", "")
+                .put("order_shipping", "4.90")
+                .put("products", new JSONArray().put(new JSONObject().put("name", "Tea").put("qty", "3")
+                        .put("item_price", 12.5)));
+    }
+}
@@ -0,0 +1,132 @@
+package tenant;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TenantCacheTest {
+    private static final Path RESOURCES = Path.of("src/main/resources");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void evictsTheLeastRecentlyUsedTenantWhileItIsStillLeased() throws Exception {
+        try (TenantCache cache = new TenantCache(tenants("a", "b", "c"), 2)) {
+            Tenant a = cache.lease("a");
+            Tenant b = lease(cache, "b");
+            lease(cache, "c");
+
+            // a is the least recently used one even though it is still leased
+            assertEquals(2, cache.size());
+            assertNotNull(a.getTemplate());
+            assertNotNull(a.getEmailService());
+            a.close();
+            assertThrows(IllegalStateException.class, a::close);
+
+            assertSame(b, lease(cache, "b"));
+            Tenant reloaded = lease(cache, "a");
+            assertNotSame(a, reloaded);
+            // c was used before b, so c made room for a
+            assertSame(b, lease(cache, "b"));
+            assertSame(reloaded, lease(cache, "a"));
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    void reloadsATenantWhoseFileChanged() throws Exception {
+        Map<String, TenantFiles> tenants = tenants("a");
+        try (TenantCache cache = new TenantCache(tenants, 1)) {
+            cache.setStaleCheckInterval(0);
+            Tenant leased = cache.lease("a");
+            assertSame(leased, lease(cache, "a"));
+
+            rename(tenants.get("a"), "Renamed Shop");
+            Tenant reloaded = lease(cache, "a");
+
+            assertNotSame(leased, reloaded);
+            assertEquals("Renamed Shop", reloaded.getTemplate().getCompany().name());
+            // the lease taken before the change keeps its configuration until it is closed
+            assertEquals("Shop a", leased.getTemplate().getCompany().name());
+            leased.close();
+            assertSame(reloaded, lease(cache, "a"));
+        }
+    }
+
+    @Test
+    void looksAtTheFilesOncePerInterval() throws Exception {
+        Map<String, TenantFiles> tenants = tenants("a");
+        try (TenantCache cache = new TenantCache(tenants, 1)) {
+            cache.setStaleCheckInterval(60_000);
+            Tenant loaded = lease(cache, "a");
+
+            rename(tenants.get("a"), "Renamed Shop");
+
+            assertSame(loaded, lease(cache, "a"));
+            cache.setStaleCheckInterval(0);
+            assertNotSame(loaded, lease(cache, "a"));
+        }
+    }
+
+    @Test
+    void refusesAnUnknownTenant() throws Exception {
+        try (TenantCache cache = new TenantCache(tenants("a"), 1)) {
+            assertThrows(IllegalArgumentException.class, () -> cache.lease("b"));
+        }
+    }
+
+    // the lease is closed right away, the tenant stays in the cache
+    private static Tenant lease(TenantCache cache, String name) throws Exception {
+        try (Tenant tenant = cache.lease(name)) {
+            return tenant;
+        }
+    }
+
+    // the modification time is moved on, since a file system may only keep whole seconds
+    private static void rename(TenantFiles files, String name) throws Exception {
+        Path company = Path.of(files.companyPath());
+        FileTime modified = Files.getLastModifiedTime(company);
+        JSONObject config = new JSONObject(Files.readString(company, StandardCharsets.UTF_8));
+        Files.writeString(company, config.put("name", name).toString(), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(company, FileTime.from(modified.toInstant().plusSeconds(10)));
+    }
+
+    private Map<String, TenantFiles> tenants(String... names) throws Exception {
+        Map<String, TenantFiles> tenants = new HashMap<>();
+        for (String name : names) {
+            Path tenantDirectory = Files.createDirectories(directory.resolve(name));
+            JSONObject company = new JSONObject(Files.readString(RESOURCES.resolve("data/company.json")));
+            Path companyFile = tenantDirectory.resolve("company.json");
+            Files.writeString(companyFile, company.put("name", "Shop " + name).toString(), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(companyFile, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+
+            // the shipped invoice.json only holds placeholder paths, so point it at the bundled images
+            JSONObject invoice = new JSONObject(Files.readString(RESOURCES.resolve("data/invoice.json")));
+            invoice.put("outputPath", tenantDirectory.toAbsolutePath() + "/");
+            invoice.put("logoPath", RESOURCES.resolve("images/logo.png").toString());
+            invoice.put("letteringPath", RESOURCES.resolve("images/lettering.png").toString());
+            invoice.put("signaturePath", RESOURCES.resolve("images/logo.png").toString());
+            Path invoiceFile = tenantDirectory.resolve("invoice.json");
+            Files.writeString(invoiceFile, invoice.toString(), StandardCharsets.UTF_8);
+
+            tenants.put(name, new TenantFiles(name, companyFile.toString(), null, invoiceFile.toString(),
+                    RESOURCES.resolve("data/notification.json").toString()));
+        }
+        return tenants;
+    }
+}